@@ -26,7 +26,16 @@ package ail.mas;
 
 import ail.util.AILConfig;
 import ail.semantics.AILAgent;
+import ail.semantics.ReasoningCycleStats;
+import ail.semantics.SuspensionIndex;
+import ail.syntax.BeliefBase;
+import ail.syntax.PlanLibrary;
+import ail.syntax.EvaluationAndRuleBaseIterator;
+import ail.syntax.Unifier;
+import ail.syntax.TermInterner;
+import ail.syntax.Guard;
 import ajpf.MCAPLcontroller;
+import ajpf.monitor.RuntimeMonitor;
 import ajpf.util.AJPFException;
 import ajpf.util.AJPFLogger;
 
@@ -62,6 +71,7 @@ public class AIL {
 		
 		// Set up a controller
 		MCAPLcontroller mccontrol = new MCAPLcontroller(mas, "", 1);
+		configureMonitor(config, mccontrol);
 		
 		// Begin!
 		mccontrol.begin(); 
@@ -75,6 +85,7 @@ public class AIL {
 	 * @return
 	 */
 	public static MAS AILSetup(AILConfig config) {
+		configureRuntime(config);
 		
 		// First we need to build the multi-agent system
 		MAS mas = buildMAS(config);
@@ -166,6 +177,93 @@ public class AIL {
 		return "mas.agent." + i;
 	}
 	
+	/**
+	 * Monitor the properties in the configuration, if any, as the system runs.  Properties
+	 * are separated by semi-colons.  Any that can not be parsed are logged and skipped.
+	 * @param config
+	 * @param c
+	 */
+	public static void configureMonitor(AILConfig config, MCAPLcontroller c) {
+		if (config.containsKey("ajpf.monitor")) {
+			RuntimeMonitor monitor = new RuntimeMonitor(c.getMAS());
+			boolean monitoring = false;
+			for (String p: config.getProperty("ajpf.monitor").split(";")) {
+				if (! p.trim().isEmpty()) {
+					try {
+						monitor.addProperty(p.trim());
+						monitoring = true;
+					} catch (IllegalArgumentException e) {
+						AJPFLogger.warning("ail.mas.AIL", "Not monitoring " + p.trim() + ": " + e.getMessage());
+					}
+				}
+			}
+			if (monitoring) {
+				c.setMonitor(monitor);
+			}
+		}
+	}
+	
+	/**
+	 * Set up the data structures used by the reasoning engine.  The defaults are
+	 * suitable for model checking, other options may be faster outside JPF.
+	 * @param config
+	 */
+	public static void configureRuntime(AILConfig config) {
+		if (config.containsKey("ail.unifier.store")) {
+			String store = config.getProperty("ail.unifier.store");
+			if (store.equals("hash")) {
+				Unifier.setBindingStore(Unifier.HASH_STORE);
+			} else {
+				Unifier.setBindingStore(Unifier.VERIFY_STORE);
+			}
+		}
+		if (config.containsKey("ail.unifier.share")) {
+			Unifier.setSharing(Boolean.parseBoolean(config.getProperty("ail.unifier.share")));
+		}
+		if (config.containsKey("ail.beliefbase.index")) {
+			BeliefBase.setFirstArgIndexing(Boolean.parseBoolean(config.getProperty("ail.beliefbase.index")));
+		}
+		if (config.containsKey("ail.planlibrary.index")) {
+			PlanLibrary.setTriggerIndexing(Boolean.parseBoolean(config.getProperty("ail.planlibrary.index")));
+		}
+		if (config.containsKey("ail.planlibrary.lazy")) {
+			PlanLibrary.setLazyInstantiation(Boolean.parseBoolean(config.getProperty("ail.planlibrary.lazy")));
+		}
+		if (config.containsKey("ail.rules.tabling")) {
+			EvaluationAndRuleBaseIterator.setTabling(Boolean.parseBoolean(config.getProperty("ail.rules.tabling")));
+		}
+		if (config.containsKey("ail.perception.delta")) {
+			DefaultEnvironment.setDeltaPerception(Boolean.parseBoolean(config.getProperty("ail.perception.delta")));
+		}
+		if (config.containsKey("ail.guards.compile")) {
+			Guard.setCompiling(Boolean.parseBoolean(config.getProperty("ail.guards.compile")));
+		}
+		if (config.containsKey("ail.terms.intern")) {
+			TermInterner.setInterning(Boolean.parseBoolean(config.getProperty("ail.terms.intern")));
+		}
+		if (config.containsKey("ail.intentions.index")) {
+			SuspensionIndex.setIndexing(Boolean.parseBoolean(config.getProperty("ail.intentions.index")));
+		}
+		if (config.containsKey("ail.image.cache")) {
+			MASImageCache.setDirectory(config.getProperty("ail.image.cache"));
+		}
+		if (config.containsKey("ail.stats")) {
+			ReasoningCycleStats.setEnabled(Boolean.parseBoolean(config.getProperty("ail.stats")));
+		}
+		if (config.containsKey("ail.stats.dump")) {
+			ReasoningCycleStats.dumpEvery(Long.parseLong(config.getProperty("ail.stats.dump")));
+		}
+		if (config.containsKey("ajpf.scheduler.blocking")) {
+			MCAPLcontroller.setBlocking(Boolean.parseBoolean(config.getProperty("ajpf.scheduler.blocking")));
+		}
+		if (config.containsKey("ajpf.scheduler.parallel")) {
+			MCAPLcontroller.setParallel(Boolean.parseBoolean(config.getProperty("ajpf.scheduler.parallel")));
+		}
+		if (config.containsKey("ajpf.scheduler.poll")) {
+			MCAPLcontroller.setPollInterval(Long.parseLong(config.getProperty("ajpf.scheduler.poll")));
+		}
+	}
+	
 	/**
 	 * Set up the loggers appropriately.
 	 */
@@ -80,6 +80,17 @@ public interface AILEnv {
      */
     public Set<Predicate> getPercepts(String agName, boolean update);
     
+    /**
+     * Returns the changes to what the agent perceives since it last collected its 
+     * percepts and marks the agent as up to date.  Returns null if the environment
+     * is not keeping track of the agent's percepts, in which case getPercepts should
+     * be used.
+     * 
+     * @param agName the name of the agent doing the perceiving.
+     * @return the changes to the agent's percepts, or null.
+     */
+    public PerceptDelta getPerceptDelta(String agName);
+    
     /**
      * Returns a list of messages sent to the agent since it last checked.
      * 
@@ -25,6 +25,7 @@
 package ail.mas;
 
 import java.util.TreeMap;
+import java.util.ArrayList;
 import java.util.List;
 
 import ajpf.util.VerifyList;
@@ -62,7 +63,7 @@ public class ActionScheduler implements MCAPLScheduler, PerceptListener {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#getActiveAgents()
 	 */
-	public List<MCAPLJobber> getActiveJobbers() {
+	public synchronized List<MCAPLJobber> getActiveJobbers() {
 		List<MCAPLJobber> ags = new VerifyList<MCAPLJobber>();
 		if (somethinghaschanged) {
 			// Got a Concurrent Modification Error here in the Sticky Wheel example.
@@ -82,7 +83,7 @@ public class ActionScheduler implements MCAPLScheduler, PerceptListener {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#getActiveJobberNames()
 	 */
-	public List<String> getActiveJobberNames() {
+	public synchronized List<String> getActiveJobberNames() {
 		List<String> ags = new VerifyList<String>();
 		for (String s: activeAgents) {
 			ags.add(s);
@@ -95,7 +96,7 @@ public class ActionScheduler implements MCAPLScheduler, PerceptListener {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#notActive(java.lang.String)
 	 */
-	public void notActive(String agName) {
+	public synchronized void notActive(String agName) {
 		activeAgents.remove(agName);
 		if (!inactiveAgents.contains(agName)) {
 			inactiveAgents.put(agName);
@@ -107,7 +108,7 @@ public class ActionScheduler implements MCAPLScheduler, PerceptListener {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#isActive(ajpf.MCAPLAgent)
 	 */
-	public void isActive(String a) {
+	public synchronized void isActive(String a) {
 		if (!activeAgents.contains(a)) {
 			activeAgents.put(a);
 		}
@@ -115,11 +116,19 @@ public class ActionScheduler implements MCAPLScheduler, PerceptListener {
 		somethinghaschanged = true;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see ajpf.MCAPLScheduler#getJobbers()
+	 */
+	public synchronized List<MCAPLJobber> getJobbers() {
+		return new ArrayList<MCAPLJobber>(agnames.values());
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#addAg(ajpf.MCAPLAgent)
 	 */
-	public void addJobber(MCAPLJobber a) {
+	public synchronized void addJobber(MCAPLJobber a) {
 		agnames.put(a.getName(), a);
 		activeAgents.put(a.getName());
 	}
@@ -128,7 +137,7 @@ public class ActionScheduler implements MCAPLScheduler, PerceptListener {
 	 * (non-Javadoc)
 	 * @see ajpf.PerceptListener#perceptChanged()
 	 */
-	public void perceptChanged() {
+	public synchronized void perceptChanged() {
 		somethinghaschanged = true;
 	}
 	
@@ -136,7 +145,7 @@ public class ActionScheduler implements MCAPLScheduler, PerceptListener {
 	 * (non-Javadoc)
 	 * @see ajpf.PerceptListener#perceptChanged(java.lang.String)
 	 */
-	public void perceptChanged(String s) {
+	public synchronized void perceptChanged(String s) {
 		somethinghaschanged = true;
 	}
 
@@ -32,6 +32,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.Map;
 import java.util.HashSet;
+import java.util.HashMap;
+import java.util.TreeSet;
 
 import gov.nasa.jpf.annotation.FilterField;
 
@@ -41,6 +43,7 @@ import ail.semantics.AILAgent;
 import ail.syntax.Unifier;
 import ail.syntax.Message;
 import ail.syntax.Action;
+import ail.syntax.TermInterner;
 import ail.syntax.SendAction;
 import ail.syntax.BroadcastSendAction;
 import ail.syntax.Term;
@@ -62,6 +65,10 @@ import ajpf.util.AJPFLogger;
  * A more or less straightforward implementation of AILEnv.  Intended for use in languages 
  * which don't require a specific environment and sub-classable for specific applications.
  * 
+ * The methods which read or change percepts and messages are synchronized since the agents
+ * may be run in parallel, in which case they collect percepts and messages while the
+ * environment and other agents are publishing them.
+ * 
  * @author louiseadennis
  *
  */
@@ -80,6 +87,21 @@ public class DefaultEnvironment implements AILEnv {
 	 */
 	protected VerifySet<String> uptodateAgs = new VerifySet<String>();
 	
+	/**
+	 * Whether the environment should keep track of changes to each agent's percepts
+	 * so they can collect them as a PerceptDelta.
+	 */
+	@FilterField
+	private static boolean deltaPerception = false;
+	
+	/**
+	 * For each agent whose changes are being tracked, the percepts which may have changed
+	 * since it last collected them.  If there is no entry for an agent then it has to
+	 * collect all its percepts.
+	 */
+	@FilterField
+	private Map<String, TreeSet<Predicate>> perceptChanges = new HashMap<String, TreeSet<Predicate>>();
+	
 	/**
 	 * A map of agents to their pending messages.
 	 */
@@ -128,7 +150,7 @@ public class DefaultEnvironment implements AILEnv {
 	 * Add an agent to the list the environment knows about.
 	 * @param a
 	 */
-	public void addAgent(AILAgent a) {
+	public synchronized void addAgent(AILAgent a) {
 		agentmap.put(a.getAgName(), a);
 		VerifySet<Message> msgl = new VerifySet<Message>();
 		if (agMessages.get(a.getAgName()) == null) {
@@ -300,7 +322,7 @@ public class DefaultEnvironment implements AILEnv {
      * (non-Javadoc)
      * @see ail.others.AILEnv#getPercepts(java.lang.String)
      */
-    public Set<Predicate> getPercepts(String agName, boolean update) {
+    public synchronized Set<Predicate> getPercepts(String agName, boolean update) {
 		// check whether this agent needs to access the perception lists
     	// or whether it is uptodate
     	if (uptodateAgs.contains(agName)) {
@@ -311,6 +333,7 @@ public class DefaultEnvironment implements AILEnv {
     	// only happens if its the agent checking - not the property automata
     	if (update) {
     		uptodateAgs.add(agName);
+    		trackPerceptChanges(agName);
     	}
     		
     	Set<Predicate> agl = agPercepts.get(agName);
@@ -328,12 +351,110 @@ public class DefaultEnvironment implements AILEnv {
      	return p;
      }
     
+    /**
+     * Turn the tracking of changes to agents' percepts on or off.  
+     * @param b
+     */
+    public static void setDeltaPerception(boolean b) {
+    	deltaPerception = b;
+    }
+    
+    /**
+     * Are changes to agents' percepts being tracked?
+     * @return
+     */
+    public static boolean deltaPerception() {
+    	return deltaPerception;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see ail.mas.AILEnv#getPerceptDelta(java.lang.String)
+     */
+    public synchronized PerceptDelta getPerceptDelta(String agName) {
+    	TreeSet<Predicate> changes = perceptChanges.get(agName);
+    	if (! deltaPerception || changes == null) {
+    		return null;
+    	}
+    	
+    	PerceptDelta delta = new PerceptDelta();
+    	if (uptodateAgs.contains(agName)) {
+    		return delta;
+    	}
+    	uptodateAgs.add(agName);
+    	trackPerceptChanges(agName);
+    	
+    	for (Predicate per: changes) {
+    		if (perceives(agName, per)) {
+    			delta.add(per.clone());
+    		} else {
+    			delta.remove(per);
+    		}
+    	}
+    	return delta;
+    }
+    
+    /**
+     * Does this agent currently perceive per?  Should agree with getPercepts.
+     * @param agName
+     * @param per
+     * @return
+     */
+    protected boolean perceives(String agName, Predicate per) {
+    	if (percepts.contains(per)) {
+    		return true;
+    	}
+    	Set<Predicate> agl = agPercepts.get(agName);
+    	return agl != null && agl.contains(per);
+    }
+    
+    /**
+     * Start keeping track of changes to the agent's percepts from now.
+     * @param agName
+     */
+    protected void trackPerceptChanges(String agName) {
+    	if (deltaPerception) {
+    		perceptChanges.put(agName, new TreeSet<Predicate>());
+    	}
+    }
+    
+    /**
+     * Stop keeping track of changes to the agent's percepts, so next time it must collect
+     * all of them.
+     * @param agName
+     */
+    protected void forgetPerceptChanges(String agName) {
+    	perceptChanges.remove(agName);
+    }
+    
+    /**
+     * Note that whether the agent perceives per may have changed.
+     * @param agName
+     * @param per
+     */
+    protected void perceptChanged(String agName, Predicate per) {
+    	TreeSet<Predicate> changes = perceptChanges.get(agName);
+    	if (changes != null) {
+    		changes.add(per);
+    	}
+    }
+    
+    /**
+     * Note that whether all agents perceive per may have changed.
+     * @param per
+     */
+    protected void perceptChanged(Predicate per) {
+    	for (TreeSet<Predicate> changes: perceptChanges.values()) {
+    		changes.add(per);
+    	}
+    }
+    
     
     /*
      * (non-Javadoc)
      * @see ail.others.AILEnv#getMessages(java.lang.String)
      */
-    public Set<Message> getMessages(String agName) {
+    public synchronized Set<Message> getMessages(String agName) {
     	if (agMessages.get(agName).isEmpty()) {
 			return new VerifySet<Message>();
 		}
@@ -382,11 +503,13 @@ public class DefaultEnvironment implements AILEnv {
      * Add a general percept
      * @param per
      */
-  	public void addPercept(Predicate per) {
+  	public synchronized void addPercept(Predicate per) {
+  		per = TermInterner.intern(per);
   		if (per != null) {
   			if (! percepts.contains(per)) {
   				percepts.add(per);
   				uptodateAgs.clear();
+  				perceptChanged(per);
   			}
   		}
 		notifyListeners();
@@ -396,7 +519,7 @@ public class DefaultEnvironment implements AILEnv {
   	 * (non-Javadoc)
   	 * @see ail.mas.AILEnv#agentIsUpToDate(java.lang.String)
   	 */
-  	public boolean agentIsUpToDate(String agName) {
+  	public synchronized boolean agentIsUpToDate(String agName) {
   		return (uptodateAgs.contains(agName) && agMessages.get(agName).isEmpty());
   	}
 
@@ -406,10 +529,13 @@ public class DefaultEnvironment implements AILEnv {
   	 * @param per
   	 * @return
   	 */
-  	public boolean removePercept(Predicate per) {
+  	public synchronized boolean removePercept(Predicate per) {
   		if (per != null) {
   			uptodateAgs.clear();
   			boolean b =  percepts.remove(per);
+  			if (b) {
+  				perceptChanged(per);
+  			}
   			notifyListeners();
   			return b;
   		} 
@@ -422,7 +548,7 @@ public class DefaultEnvironment implements AILEnv {
   	 * @param per
   	 * @return
   	 */
-	public boolean removeUnifiesPercept(String agName, Predicate per) {
+	public synchronized boolean removeUnifiesPercept(String agName, Predicate per) {
 		boolean b = false;
 		Predicate rper = null;
 		if (per != null && agName != null) {
@@ -438,6 +564,7 @@ public class DefaultEnvironment implements AILEnv {
 				if (rper != null) {
 					notifyListeners(agName);
 					b = agl.remove(rper);
+					perceptChanged(agName, rper);
 				}
 			return b;
 			}
@@ -450,7 +577,7 @@ public class DefaultEnvironment implements AILEnv {
   	 * @param per
   	 * @return
   	 */
-	public boolean removeUnifiesPercept(Predicate per) {
+	public synchronized boolean removeUnifiesPercept(Predicate per) {
 		boolean b = false;
 		Predicate rper = null;
 		if (per != null) {
@@ -463,6 +590,7 @@ public class DefaultEnvironment implements AILEnv {
 				
 			if (rper != null) {
 				b = percepts.remove(rper);
+				perceptChanged(rper);
 			}
 			notifyListeners();
 			return b;
@@ -474,13 +602,16 @@ public class DefaultEnvironment implements AILEnv {
 	public synchronized void clearPercepts() {
 		if (!percepts.isEmpty()) {
 			uptodateAgs.clear();
+			for (Predicate per: percepts) {
+				perceptChanged(per);
+			}
 			percepts.clear();
 		}
 	}
 	
 	
 	/** Adds a perception for a specific agent */
-	public void addMessage(String agName, Message msg) {
+	public synchronized void addMessage(String agName, Message msg) {
 		if (msg != null && agName != null) {
 			VerifySet<Message> msgl = agMessages.get(agName);
 			if (msgl == null) {
@@ -505,7 +636,8 @@ public class DefaultEnvironment implements AILEnv {
 
 	
 	/** Adds a perception for a specific agent */
-	public void addPercept(String agName, Predicate per) {
+	public synchronized void addPercept(String agName, Predicate per) {
+		per = TermInterner.intern(per);
 		if (per != null && agName != null) {
 			VerifySet<Predicate> agl = agPercepts.get(agName);
 			if (agl == null) {
@@ -513,10 +645,12 @@ public class DefaultEnvironment implements AILEnv {
 				uptodateAgs.remove(agName);
 				agl.add(per);
 				agPercepts.put( agName, agl);
+				perceptChanged(agName, per);
 			} else {
 				if (! agl.contains(per)) {
 					uptodateAgs.remove(agName);
 					agl.add(per);
+					perceptChanged(agName, per);
 				}
 			}
 		}
@@ -524,7 +658,7 @@ public class DefaultEnvironment implements AILEnv {
 	}
 	
 	/** Removes a perception for one agent */
-	public boolean removePercept(String agName, Predicate per) {
+	public synchronized boolean removePercept(String agName, Predicate per) {
 		if (per != null && agName != null) {
 			VerifySet<Predicate> agl = agPercepts.get(agName);
 			if (agl != null) {
@@ -533,6 +667,7 @@ public class DefaultEnvironment implements AILEnv {
 					if (l.equals(per)) {
 						notifyListeners(agName);
 						boolean result = agl.remove(l);
+						perceptChanged(agName, l);
 						return result;
 					}
 				}
@@ -545,11 +680,14 @@ public class DefaultEnvironment implements AILEnv {
 
 
 	/** Clears the list of perceptions of a specific agent */
-	public void clearPercepts(String agName) {
+	public synchronized void clearPercepts(String agName) {
 		if (agName != null) {
 			VerifySet<Predicate> agl = agPercepts.get(agName);
 			if (agl != null) {
 				uptodateAgs.remove(agName);
+				for (Predicate per: agl) {
+					perceptChanged(agName, per);
+				}
 				agl.clear();
 			}
 		}
@@ -569,7 +707,7 @@ public class DefaultEnvironment implements AILEnv {
 	 * (non-Javadoc)
 	 * @see java.lang.Thread#toString()
 	 */
-	public String toString() {
+	public synchronized String toString() {
 			StringBuilder s = new StringBuilder("General Percepts:");
 			for (Predicate l : percepts) {
 				s.append(l.toString()).append(", ");
@@ -0,0 +1,557 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ail.mas;
+
+import gov.nasa.jpf.annotation.FilterField;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import ail.syntax.ast.Abstract_MAS;
+import ajpf.util.AJPFLogger;
+
+/**
+ * A cache of parsed multi-agent systems.  The abstract syntax produced by parsing a
+ * source file is written to a compressed binary image named after the file and a hash of its
+ * content, so later runs can load the image instead of parsing the file again.  An edited file
+ * has a different hash and so is parsed again and a new image written, replacing the old one.
+ * 
+ * Like newJPFObject, images copy the abstract syntax field by field.  Each class's field names
+ * and types are recorded the first time it appears in an image and an image whose classes have
+ * since changed is treated as missing.  Only strings, primitives, arrays of objects and objects
+ * whose fields are all of these can be stored, which is all the abstract syntax needs.  Loaded
+ * objects are created with their constructor without arguments, so every class stored needs one.
+ * 
+ * The cache is off unless a directory is given for it.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class MASImageCache {
+	static String logname = "ail.mas.MASImageCache";
+	
+	/**
+	 * Identifies image files.
+	 */
+	private static final int MAGIC = 0x41494C49;
+	/**
+	 * The version of the image format.
+	 */
+	private static final int VERSION = 1;
+	
+	// Tags for the values in an image.
+	private static final byte NULL = 0;
+	private static final byte REF = 1;
+	private static final byte STRING = 2;
+	private static final byte OBJECT = 3;
+	private static final byte ARRAY = 4;
+	private static final byte INT = 5;
+	private static final byte DOUBLE = 6;
+	private static final byte BOOLEAN = 7;
+	private static final byte BYTE = 8;
+	private static final byte LONG = 9;
+	
+	/**
+	 * The directory images are kept in, or null if images are not used.
+	 */
+	@FilterField
+	private static File directory = null;
+	
+	/**
+	 * The instance fields of each class that has been read or written.
+	 */
+	@FilterField
+	private static Map<Class<?>, Field[]> fields = new HashMap<Class<?>, Field[]>();
+	
+	/**
+	 * The constructor without arguments of each class that has been read.
+	 */
+	@FilterField
+	private static Map<Class<?>, Constructor<?>> constructors = new HashMap<Class<?>, Constructor<?>>();
+	
+	/**
+	 * Set the directory to keep images in.  Null turns the cache off.
+	 * @param dir
+	 */
+	public static void setDirectory(String dir) {
+		if (dir == null || dir.isEmpty()) {
+			directory = null;
+		} else {
+			directory = new File(dir);
+		}
+	}
+	
+	/**
+	 * Are images being used?
+	 * @return
+	 */
+	public static boolean caching() {
+		return directory != null;
+	}
+	
+	/**
+	 * The image for the current content of a source file.  The file may not exist yet.
+	 * @param source
+	 * @return
+	 * @throws IOException
+	 */
+	public static File imageFor(String source) throws IOException {
+		File f = new File(source);
+		return new File(directory, prefix(f) + hash(readAll(f)) + ".img");
+	}
+	
+	/**
+	 * Load the multi-agent system in an image.
+	 * @param image
+	 * @return the multi-agent system or null if there is no usable image.
+	 */
+	public static Abstract_MAS read(File image) {
+		if (! image.isFile()) {
+			return null;
+		}
+		
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(image))));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					return null;
+				}
+				return (Abstract_MAS) new Reader(in).value(Object.class);
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			AJPFLogger.info(logname, "Ignoring unusable image " + image + ": " + e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Write an image of a multi-agent system, replacing any images of earlier versions
+	 * of the same source file.
+	 * @param image
+	 * @param amas
+	 */
+	public static void write(File image, Abstract_MAS amas) {
+		File tmp = null;
+		try {
+			if (! directory.isDirectory() && ! directory.mkdirs()) {
+				throw new IOException("can not create " + directory);
+			}
+			
+			String name = image.getName();
+			String prefix = name.substring(0, name.lastIndexOf('-') + 1);
+			File[] old = directory.listFiles();
+			if (old != null) {
+				for (File f: old) {
+					if (f.getName().startsWith(prefix) && f.getName().endsWith(".img") && ! f.equals(image)) {
+						f.delete();
+					}
+				}
+			}
+			
+			// Write to a temporary file first so another run never sees half an image.
+			tmp = File.createTempFile(prefix, ".tmp", directory);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(tmp))));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				new Writer(out).value(amas, Object.class);
+			} finally {
+				out.close();
+			}
+			if (! tmp.renameTo(image)) {
+				throw new IOException("can not rename " + tmp + " to " + image);
+			}
+		} catch (Exception e) {
+			if (tmp != null) {
+				tmp.delete();
+			}
+			AJPFLogger.warning(logname, "Could not write image " + image + ": " + e);
+		}
+	}
+	
+	/**
+	 * Writes a graph of objects, sharing repeated strings and objects.
+	 */
+	private static final class Writer {
+		DataOutputStream out;
+		Map<Object, Integer> objects = new IdentityHashMap<Object, Integer>();
+		Map<String, Integer> strings = new HashMap<String, Integer>();
+		Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+		
+		Writer(DataOutputStream out) {
+			this.out = out;
+		}
+		
+		/**
+		 * Write a value held in a field (or array element) of type t.
+		 * @param o
+		 * @param t
+		 * @throws Exception
+		 */
+		void value(Object o, Class<?> t) throws Exception {
+			if (t.isPrimitive()) {
+				primitive(o, t);
+				return;
+			}
+			if (o == null) {
+				out.writeByte(NULL);
+				return;
+			}
+			
+			Integer ref = (o instanceof String) ? strings.get(o) : objects.get(o);
+			if (ref != null) {
+				out.writeByte(REF);
+				out.writeInt(ref);
+				return;
+			}
+			
+			Class<?> c = o.getClass();
+			if (o instanceof String) {
+				strings.put((String) o, strings.size() + objects.size());
+				out.writeByte(STRING);
+				out.writeUTF((String) o);
+			} else if (o instanceof Integer) {
+				out.writeByte(INT);
+				out.writeInt((Integer) o);
+			} else if (o instanceof Double) {
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double) o);
+			} else if (o instanceof Boolean) {
+				out.writeByte(BOOLEAN);
+				out.writeBoolean((Boolean) o);
+			} else if (o instanceof Byte) {
+				out.writeByte(BYTE);
+				out.writeByte((Byte) o);
+			} else if (o instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) o);
+			} else if (c.isArray()) {
+				if (c.getComponentType().isPrimitive()) {
+					throw new IOException("can not store " + c.getName());
+				}
+				objects.put(o, strings.size() + objects.size());
+				out.writeByte(ARRAY);
+				type(c.getComponentType());
+				int n = Array.getLength(o);
+				out.writeInt(n);
+				for (int i = 0; i < n; i++) {
+					value(Array.get(o, i), Object.class);
+				}
+			} else {
+				objects.put(o, strings.size() + objects.size());
+				out.writeByte(OBJECT);
+				type(c);
+				for (Field f: fieldsOf(c)) {
+					value(f.get(o), f.getType());
+				}
+			}
+		}
+		
+		/**
+		 * Write a value held in a field of primitive type t.
+		 * @param o
+		 * @param t
+		 * @throws IOException
+		 */
+		void primitive(Object o, Class<?> t) throws IOException {
+			if (t == int.class) {
+				out.writeInt((Integer) o);
+			} else if (t == boolean.class) {
+				out.writeBoolean((Boolean) o);
+			} else if (t == byte.class) {
+				out.writeByte((Byte) o);
+			} else if (t == double.class) {
+				out.writeDouble((Double) o);
+			} else if (t == long.class) {
+				out.writeLong((Long) o);
+			} else {
+				throw new IOException("can not store " + t.getName());
+			}
+		}
+		
+		/**
+		 * Write a class, describing its fields the first time it is seen.
+		 * @param c
+		 * @throws Exception
+		 */
+		void type(Class<?> c) throws Exception {
+			Integer ref = classes.get(c);
+			if (ref != null) {
+				out.writeShort(ref);
+				return;
+			}
+			
+			classes.put(c, classes.size());
+			out.writeShort(classes.size() - 1);
+			out.writeUTF(c.getName());
+			if (! c.isInterface() && ! c.isArray()) {
+				// Fail now rather than when the image is loaded.
+				c.getDeclaredConstructor();
+				Field[] fs = fieldsOf(c);
+				out.writeShort(fs.length);
+				for (Field f: fs) {
+					out.writeUTF(f.getDeclaringClass().getName() + "." + f.getName());
+					out.writeUTF(f.getType().getName());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a graph of objects written by a Writer.
+	 */
+	private static final class Reader {
+		DataInputStream in;
+		List<Object> objects = new ArrayList<Object>();
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		
+		Reader(DataInputStream in) {
+			this.in = in;
+		}
+		
+		/**
+		 * Read a value to be stored in a field (or array element) of type t.
+		 * @param t
+		 * @return
+		 * @throws Exception
+		 */
+		Object value(Class<?> t) throws Exception {
+			if (t.isPrimitive()) {
+				return primitive(t);
+			}
+			
+			byte tag = in.readByte();
+			switch (tag) {
+			case NULL:
+				return null;
+			case REF:
+				return objects.get(in.readInt());
+			case STRING:
+				String s = in.readUTF();
+				objects.add(s);
+				return s;
+			case INT:
+				return in.readInt();
+			case DOUBLE:
+				return in.readDouble();
+			case BOOLEAN:
+				return in.readBoolean();
+			case BYTE:
+				return in.readByte();
+			case LONG:
+				return in.readLong();
+			case ARRAY:
+				Class<?> component = type();
+				Object a = Array.newInstance(component, in.readInt());
+				objects.add(a);
+				for (int i = 0; i < Array.getLength(a); i++) {
+					Array.set(a, i, value(Object.class));
+				}
+				return a;
+			case OBJECT:
+				Class<?> c = type();
+				Object o = allocate(c);
+				objects.add(o);
+				for (Field f: fieldsOf(c)) {
+					f.set(o, value(f.getType()));
+				}
+				return o;
+			default:
+				throw new IOException("bad tag " + tag);
+			}
+		}
+		
+		/**
+		 * Read a value to be stored in a field of primitive type t.
+		 * @param t
+		 * @return
+		 * @throws IOException
+		 */
+		Object primitive(Class<?> t) throws IOException {
+			if (t == int.class) {
+				return in.readInt();
+			} else if (t == boolean.class) {
+				return in.readBoolean();
+			} else if (t == byte.class) {
+				return in.readByte();
+			} else if (t == double.class) {
+				return in.readDouble();
+			} else if (t == long.class) {
+				return in.readLong();
+			} else {
+				throw new IOException("can not load " + t.getName());
+			}
+		}
+		
+		/**
+		 * Read a class, checking its fields are as described the first time it is seen.
+		 * @return
+		 * @throws Exception
+		 */
+		Class<?> type() throws Exception {
+			int ref = in.readShort();
+			if (ref < classes.size()) {
+				return classes.get(ref);
+			}
+			
+			Class<?> c = Class.forName(in.readUTF());
+			if (! c.isInterface() && ! c.isArray()) {
+				Field[] fs = fieldsOf(c);
+				int n = in.readShort();
+				boolean same = n == fs.length;
+				for (int i = 0; i < n; i++) {
+					String name = in.readUTF();
+					String type = in.readUTF();
+					same = same && name.equals(fs[i].getDeclaringClass().getName() + "." + fs[i].getName()) && type.equals(fs[i].getType().getName());
+				}
+				if (! same) {
+					throw new IOException(c.getName() + " has changed");
+				}
+			}
+			classes.add(c);
+			return c;
+		}
+	}
+	
+	/**
+	 * The instance fields of a class and its superclasses, accessible.
+	 * @param c
+	 * @return
+	 * @throws IOException
+	 */
+	private static synchronized Field[] fieldsOf(Class<?> c) throws IOException {
+		Field[] fs = fields.get(c);
+		if (fs == null) {
+			List<Field> l = new ArrayList<Field>();
+			for (Class<?> k = c; k != Object.class; k = k.getSuperclass()) {
+				if (k.getName().startsWith("java.")) {
+					throw new IOException("can not store " + c.getName());
+				}
+				for (Field f: k.getDeclaredFields()) {
+					if (! Modifier.isStatic(f.getModifiers())) {
+						f.setAccessible(true);
+						l.add(f);
+					}
+				}
+			}
+			fs = l.toArray(new Field[l.size()]);
+			fields.put(c, fs);
+		}
+		return fs;
+	}
+	
+	/**
+	 * Create an object whose fields are all about to be set, using the constructor without arguments.
+	 * @param c
+	 * @return
+	 * @throws Exception if c has no such constructor.
+	 */
+	private static synchronized Object allocate(Class<?> c) throws Exception {
+		Constructor<?> k = constructors.get(c);
+		if (k == null) {
+			k = c.getDeclaredConstructor();
+			k.setAccessible(true);
+			constructors.put(c, k);
+		}
+		return k.newInstance();
+	}
+	
+	/**
+	 * The part of an image name that identifies its source file:  the file's name and a hash
+	 * of its path so files with the same name in different directories don't share images.
+	 * @param f
+	 * @return
+	 */
+	private static String prefix(File f) {
+		return f.getName() + "-" + hash(f.getAbsolutePath().getBytes()).substring(0, 8) + "-";
+	}
+	
+	/**
+	 * A 64 bit FNV-1a hash of some bytes, in hex.  This is only used to notice files have
+	 * changed so doesn't need to be cryptographic, and is much quicker to start than MessageDigest.
+	 * @param bytes
+	 * @return
+	 */
+	private static String hash(byte[] bytes) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b: bytes) {
+			h ^= (b & 0xff);
+			h *= 0x100000001b3L;
+		}
+		String s = Long.toHexString(h);
+		while (s.length() < 16) {
+			s = "0" + s;
+		}
+		return s + Integer.toHexString(bytes.length);
+	}
+	
+	/**
+	 * The content of a file.
+	 * @param f
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] readAll(File f) throws IOException {
+		InputStream in = new FileInputStream(f);
+		try {
+			byte[] bytes = new byte[(int) f.length()];
+			int n = 0;
+			while (n < bytes.length) {
+				int r = in.read(bytes, n, bytes.length - n);
+				if (r < 0) {
+					break;
+				}
+				n += r;
+			}
+			if (n < bytes.length) {
+				throw new IOException(f + " changed while being read");
+			}
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+}
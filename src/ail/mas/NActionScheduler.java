@@ -56,7 +56,7 @@ public class NActionScheduler extends ActionScheduler {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#getActiveAgents()
 	 */
-	public List<MCAPLJobber> getActiveJobbers() {
+	public synchronized List<MCAPLJobber> getActiveJobbers() {
 		if (counter >= max_count) {
 			super.perceptChanged();
 			counter = 0;
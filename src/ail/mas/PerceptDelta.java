@@ -0,0 +1,100 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ail.mas;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import ail.syntax.Predicate;
+
+/**
+ * The changes to what an agent perceives since it last collected its percepts.  Things
+ * in added are now perceived and things in removed no longer are, relative to what was
+ * perceived then.  An agent whose percepts have not been altered other than by
+ * perception can apply these to its belief base instead of comparing it with all its
+ * percepts.
+ *
+ * @author louiseadennis
+ *
+ */
+public class PerceptDelta {
+	/**
+	 * Percepts which are now perceived.
+	 */
+	private Set<Predicate> added = new TreeSet<Predicate>();
+	/**
+	 * Percepts which are no longer perceived.
+	 */
+	private Set<Predicate> removed = new TreeSet<Predicate>();
+
+	/**
+	 * Note a percept is now perceived.
+	 * @param p
+	 */
+	public void add(Predicate p) {
+		added.add(p);
+	}
+
+	/**
+	 * Note a percept is no longer perceived.
+	 * @param p
+	 */
+	public void remove(Predicate p) {
+		removed.add(p);
+	}
+
+	/**
+	 * Getter for the percepts which are now perceived.
+	 * @return
+	 */
+	public Set<Predicate> getAdded() {
+		return added;
+	}
+
+	/**
+	 * Getter for the percepts which are no longer perceived.
+	 * @return
+	 */
+	public Set<Predicate> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Has nothing changed?
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "+" + added + " -" + removed;
+	}
+
+}
@@ -25,6 +25,7 @@
 package ail.mas;
 
 import java.util.TreeMap;
+import java.util.ArrayList;
 import java.util.List;
 
 import ajpf.MCAPLJobber;
@@ -58,7 +59,7 @@ public class RoundRobinScheduler implements MCAPLScheduler, PerceptListener  {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#getActiveAgents()
 	 */
-	public List<MCAPLJobber> getActiveJobbers() {
+	public synchronized List<MCAPLJobber> getActiveJobbers() {
 		List<MCAPLJobber> ags = new VerifyList<MCAPLJobber>();
 		if (somethinghaschanged) {
 			String name = agents.get(turn);
@@ -76,7 +77,7 @@ public class RoundRobinScheduler implements MCAPLScheduler, PerceptListener  {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#getActiveJobberNames()
 	 */
-	public List<String> getActiveJobberNames() {
+	public synchronized List<String> getActiveJobberNames() {
 		List<String> ags = new VerifyList<String>();
 		String name = agents.get(turn);
 		ags.add(name);
@@ -87,7 +88,7 @@ public class RoundRobinScheduler implements MCAPLScheduler, PerceptListener  {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#notActive(java.lang.String)
 	 */
-	public void notActive(String agName) {
+	public synchronized void notActive(String agName) {
 		somethinghaschanged = true;
 	}
 	
@@ -95,15 +96,23 @@ public class RoundRobinScheduler implements MCAPLScheduler, PerceptListener  {
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#isActive(ajpf.MCAPLAgent)
 	 */
-	public void isActive(String a) {
+	public synchronized void isActive(String a) {
 		somethinghaschanged = true;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see ajpf.MCAPLScheduler#getJobbers()
+	 */
+	public synchronized List<MCAPLJobber> getJobbers() {
+		return new ArrayList<MCAPLJobber>(agnames.values());
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see ajpf.MCAPLScheduler#addAg(ajpf.MCAPLAgent)
 	 */
-	public void addJobber(MCAPLJobber a) {
+	public synchronized void addJobber(MCAPLJobber a) {
 		agnames.put(a.getName(), a);
 		agents.put(a.getName());
 	}
@@ -112,7 +121,7 @@ public class RoundRobinScheduler implements MCAPLScheduler, PerceptListener  {
 	 * (non-Javadoc)
 	 * @see ajpf.PerceptListener#perceptChanged()
 	 */
-	public void perceptChanged() {
+	public synchronized void perceptChanged() {
 		somethinghaschanged = true;
 	}
 	
@@ -120,7 +129,7 @@ public class RoundRobinScheduler implements MCAPLScheduler, PerceptListener  {
 	 * (non-Javadoc)
 	 * @see ajpf.PerceptListener#perceptChanged(java.lang.String)
 	 */
-	public void perceptChanged(String s) {
+	public synchronized void perceptChanged(String s) {
 		somethinghaschanged = true;
 	}
 	
@@ -218,6 +218,18 @@ public class AILAgent implements MCAPLLanguageAgent {
     @FilterField
     public String lastruleexecuted;
     
+    /**
+     * Timing statistics for the reasoning cycle, if these are being collected.
+     */
+    @FilterField
+    private ReasoningCycleStats stats;
+    
+    /**
+     * The agent's suspended intentions indexed by what they are waiting for, if these are
+     * being indexed.
+     */
+    private SuspensionIndex suspensions = SuspensionIndex.indexing() ? new SuspensionIndex() : null;
+    
     /**
      * The default Belief Base name for AIL;
      */
@@ -1292,19 +1304,32 @@ public class AILAgent implements MCAPLLanguageAgent {
     public Intention selectIntention(List<Intention> intentions) {
         // make sure the selected Intention is removed from 'intentions'
         // and make sure no intention will "starve"!!!
-    	Iterator<Intention> ii = intentions.iterator();
-    	ArrayList<Intention> iiprime = new ArrayList<Intention>();
-
-    	while (ii.hasNext()) {
-    		Intention ip = ii.next();
+    	// Runnable intentions are compacted to the front of the list in one pass, rather than
+    	// removed one at a time, and the suspended ones moved to the back.
+    	ArrayList<Intention> iiprime = null;
+    	int size = intentions.size();
+    	int runnable = 0;
+
+    	for (int k = 0; k < size; k++) {
+    		Intention ip = intentions.get(k);
     		// Need a more principled way to handle this with select intention
     		if (!(ip == null) && (ip.empty() || ip.suspended())) {
-     			ii.remove();
      			if (! ip.empty()) {
+     				if (iiprime == null) {
+     					iiprime = new ArrayList<Intention>();
+     				}
      				iiprime.add(ip);
      			}
+    		} else {
+    			if (runnable != k) {
+    				intentions.set(runnable, ip);
+    			}
+    			runnable++;
     		}
     	}
+    	if (runnable < size) {
+    		intentions.subList(runnable, size).clear();
+    	}
         
     	Intention i;
     	if (intentions.isEmpty()) {
@@ -1312,7 +1337,9 @@ public class AILAgent implements MCAPLLanguageAgent {
     	} else {
     		i = intentions.remove(0);
     	}
-    	intentions.addAll(iiprime);
+    	if (iiprime != null) {
+    		intentions.addAll(iiprime);
+    	}
 
     	return i;
     }
@@ -1335,6 +1362,48 @@ public class AILAgent implements MCAPLLanguageAgent {
 		Is.addAll(suspended);
 	} 
 
+	/**
+	 * Suspend an intention until a belief condition holds.
+	 * @param i
+	 * @param beliefcondition
+	 */
+	public void suspendFor(Intention i, Literal beliefcondition) {
+		i.suspendFor(beliefcondition);
+		if (suspensions != null) {
+			suspensions.add(i);
+		}
+	}
+	
+	/**
+	 * Unsuspend any intentions waiting for a new belief.
+	 * @param b
+	 */
+	public void unsuspendFor(Literal b) {
+		if (suspensions != null) {
+			suspensions.unsuspendFor(b);
+		} else {
+			for (Intention i: getIntentions()) {
+				i.unsuspendFor(b);
+			}
+		}
+	}
+	
+	/**
+	 * Unsuspend any intentions waiting for changes in perception.  Without a suspension
+	 * index this only considers the intentions other than the current one.
+	 * @param percepts
+	 * @param removed_percepts
+	 */
+	public void unsuspendFor(Set<Predicate> percepts, Set<Literal> removed_percepts) {
+		if (suspensions != null) {
+			suspensions.unsuspendFor(percepts, removed_percepts);
+		} else {
+			for (Intention i: getIntentions()) {
+				i.unsuspendFor(percepts, removed_percepts);
+			}
+		}
+	}
+
 	/**
 	 * Unsuspends all intentions.
 	 *
@@ -1693,12 +1762,27 @@ public class AILAgent implements MCAPLLanguageAgent {
 	public void reason() {
 		if (RC.not_interrupted()) {
 			RC.setStopandCheck(false);
+			
+			if (stats == null && ReasoningCycleStats.enabled()) {
+				stats = ReasoningCycleStats.register(this);
+			}
+			ReasoningCycleStats st = stats;
+			if (st != null) {
+				st.cycle();
+			}
 	
 			while(! RC.stopandcheck()) {
 				RCStage stage = RC.getStage();
 				if (AJPFLogger.ltFiner(logname)) {
 					AJPFLogger.finer(logname, "About to pick a rule for stage " + stage.getStageName());
 				}
+				
+				ReasoningCycleStats.Timing stagetiming = null;
+				long stagestart = 0;
+				if (st != null) {
+					stagetiming = st.stage(stage);
+					stagestart = System.nanoTime();
+				}
 			
 				Iterator<OSRule> rules = stage.getStageRules();
 			
@@ -1709,23 +1793,41 @@ public class AILAgent implements MCAPLLanguageAgent {
 						AJPFLogger.finer(logname, "checking " + rule.getName());
 					}
 				
-					if (rule.checkPreconditions(this)) {
+					boolean applicable;
+					if (st == null) {
+						applicable = rule.checkPreconditions(this);
+					} else {
+						ReasoningCycleStats.Timing ruletiming = st.rule(stagetiming, rule);
+						long start = System.nanoTime();
+						applicable = rule.checkPreconditions(this);
+						long checked = System.nanoTime();
+						st.checked(ruletiming, checked - start);
+						if (applicable) {
+							rule.apply(this);
+							st.applied(ruletiming, System.nanoTime() - checked);
+						}
+					}
+					
+					if (applicable) {
 						stagerulefound = true;
-						rule.apply(this);
+						if (st == null) {
+							rule.apply(this);
+						}
 						lastruleexecuted = rule.getName();
 						if (AJPFLogger.ltFine(logname)) {
 							AJPFLogger.fine(logname, "Applying " + lastruleexecuted);
 						}
 						printagentstate();
-						RC.cycle(this);
 						break;
 					}
 			
 				}
-			
-				if (!stagerulefound) {
-					RC.cycle(this);
+				
+				if (st != null) {
+					st.visited(stagetiming, System.nanoTime() - stagestart);
 				}
+			
+				RC.cycle(this);
 			}
 		}
 		// MCAPLcontroller.force_transition();
@@ -0,0 +1,303 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ail.semantics;
+
+import gov.nasa.jpf.annotation.FilterField;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import ajpf.util.AJPFLogger;
+
+/**
+ * Records where an agent's reasoning time goes: how often each stage of the reasoning
+ * cycle is visited and each rule checked and applied, and how long that takes, together
+ * with how often the agent reasons.  When turned on each agent gets one of these which is
+ * registered as a JMX MBean named ail:type=ReasoningCycle,agent=name and can also be
+ * logged periodically.  When off the reasoning cycle only pays for a null check per rule.
+ * 
+ * The counts are updated by the agent without synchronization so snapshots taken from
+ * other threads while it is running are approximate.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class ReasoningCycleStats implements ReasoningCycleStatsMBean {
+	static String logname = "ail.semantics.ReasoningCycleStats";
+	
+	/**
+	 * Whether agents should collect statistics.
+	 */
+	@FilterField
+	private static boolean enabled = false;
+	
+	/**
+	 * The statistics for every agent.
+	 */
+	@FilterField
+	private static List<ReasoningCycleStats> all = new CopyOnWriteArrayList<ReasoningCycleStats>();
+	
+	/**
+	 * The timer that logs the statistics periodically, if any.
+	 */
+	@FilterField
+	private static Timer dumper;
+	
+	/**
+	 * Times and counts for a stage or rule.
+	 */
+	static final class Timing {
+		String name;
+		long count = 0;
+		long time = 0;
+		long applied = 0;
+		long applytime = 0;
+		/**
+		 * For a stage, the timings of its rules.  Concurrent since snapshots are taken
+		 * by other threads while the agent adds to them.
+		 */
+		Map<OSRule, Timing> rules = new ConcurrentHashMap<OSRule, Timing>();
+		
+		Timing(String name) {
+			this.name = name;
+		}
+	}
+	
+	private String agent;
+	private long cycles = 0;
+	private long started = System.nanoTime();
+	private Map<RCStage, Timing> stages = new ConcurrentHashMap<RCStage, Timing>();
+	
+	/**
+	 * Constructor.
+	 * @param agent
+	 */
+	public ReasoningCycleStats(String agent) {
+		this.agent = agent;
+	}
+	
+	/**
+	 * Turn the collection of statistics on or off.  Only affects agents which haven't yet
+	 * started reasoning.
+	 * @param b
+	 */
+	public static void setEnabled(boolean b) {
+		enabled = b;
+	}
+	
+	/**
+	 * Are statistics being collected?
+	 * @return
+	 */
+	public static boolean enabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Create the statistics for an agent and register them with the platform MBean server.
+	 * @param a
+	 * @return
+	 */
+	public static ReasoningCycleStats register(AILAgent a) {
+		ReasoningCycleStats stats = new ReasoningCycleStats(a.getAgName());
+		all.add(stats);
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("ail:type=ReasoningCycle,agent=" + ObjectName.quote(a.getAgName()));
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(stats, name);
+		} catch (Exception e) {
+			AJPFLogger.warning(logname, "Could not register statistics for " + a.getAgName() + ": " + e.getMessage());
+		}
+		return stats;
+	}
+	
+	/**
+	 * Log the statistics for all agents every period milliseconds.  0 stops logging them.
+	 * @param period
+	 */
+	public static synchronized void dumpEvery(long period) {
+		if (dumper != null) {
+			dumper.cancel();
+			dumper = null;
+		}
+		if (period > 0) {
+			dumper = new Timer("reasoning-cycle-stats", true);
+			dumper.schedule(new TimerTask() {
+				public void run() {
+					for (ReasoningCycleStats stats: all) {
+						AJPFLogger.info(logname, stats.getSnapshot());
+					}
+				}
+			}, period, period);
+		}
+	}
+	
+	/**
+	 * The agent has started reasoning.
+	 */
+	public void cycle() {
+		cycles++;
+	}
+	
+	/**
+	 * The timings for a stage.
+	 * @param s
+	 * @return
+	 */
+	public Timing stage(RCStage s) {
+		Timing t = stages.get(s);
+		if (t == null) {
+			t = new Timing(s.getStageName());
+			stages.put(s, t);
+		}
+		return t;
+	}
+	
+	/**
+	 * The timings for a rule within a stage.
+	 * @param stage
+	 * @param r
+	 * @return
+	 */
+	public Timing rule(Timing stage, OSRule r) {
+		Timing t = stage.rules.get(r);
+		if (t == null) {
+			t = new Timing(r.getName());
+			stage.rules.put(r, t);
+		}
+		return t;
+	}
+	
+	/**
+	 * A rule's preconditions have been checked.
+	 * @param rule
+	 * @param nanos
+	 */
+	public void checked(Timing rule, long nanos) {
+		rule.count++;
+		rule.time += nanos;
+	}
+	
+	/**
+	 * A rule has been applied.
+	 * @param rule
+	 * @param nanos
+	 */
+	public void applied(Timing rule, long nanos) {
+		rule.applied++;
+		rule.applytime += nanos;
+	}
+	
+	/**
+	 * The agent has finished with a stage.
+	 * @param stage
+	 * @param nanos
+	 */
+	public void visited(Timing stage, long nanos) {
+		stage.count++;
+		stage.time += nanos;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see ail.semantics.ReasoningCycleStatsMBean#getAgentName()
+	 */
+	public String getAgentName() {
+		return agent;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see ail.semantics.ReasoningCycleStatsMBean#getCycles()
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see ail.semantics.ReasoningCycleStatsMBean#getCyclesPerSecond()
+	 */
+	public double getCyclesPerSecond() {
+		double seconds = (System.nanoTime() - started) / 1e9;
+		return seconds > 0 ? cycles / seconds : 0;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see ail.semantics.ReasoningCycleStatsMBean#getSnapshot()
+	 */
+	public String getSnapshot() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.format(Locale.ROOT, "%s: %d cycles, %.1f/s", agent, cycles, getCyclesPerSecond()));
+		for (Timing stage: stages.values()) {
+			s.append(String.format(Locale.ROOT, "%n  stage %s: %d visits, %.3f ms", stage.name, stage.count, stage.time / 1e6));
+			for (Timing rule: stage.rules.values()) {
+				s.append(String.format(Locale.ROOT, "%n    rule %s: %d checks, %.3f ms; %d applications, %.3f ms", 
+						rule.name, rule.count, rule.time / 1e6, rule.applied, rule.applytime / 1e6));
+			}
+		}
+		return s.toString();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see ail.semantics.ReasoningCycleStatsMBean#reset()
+	 */
+	public void reset() {
+		cycles = 0;
+		started = System.nanoTime();
+		for (Timing stage: stages.values()) {
+			stage.count = 0;
+			stage.time = 0;
+			for (Timing rule: stage.rules.values()) {
+				rule.count = 0;
+				rule.time = 0;
+				rule.applied = 0;
+				rule.applytime = 0;
+			}
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return getSnapshot();
+	}
+}
@@ -0,0 +1,62 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ail.semantics;
+
+/**
+ * The JMX management interface for ReasoningCycleStats.
+ * 
+ * @author louiseadennis
+ *
+ */
+public interface ReasoningCycleStatsMBean {
+	/**
+	 * The name of the agent.
+	 * @return
+	 */
+	public String getAgentName();
+	
+	/**
+	 * The number of times the agent has reasoned since the statistics were last reset.
+	 * @return
+	 */
+	public long getCycles();
+	
+	/**
+	 * The rate at which the agent has reasoned since the statistics were last reset.
+	 * @return
+	 */
+	public double getCyclesPerSecond();
+	
+	/**
+	 * A printable summary of the time spent in each stage and rule.
+	 * @return
+	 */
+	public String getSnapshot();
+	
+	/**
+	 * Start counting again.
+	 */
+	public void reset();
+}
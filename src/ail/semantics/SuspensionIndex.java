@@ -0,0 +1,209 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ail.semantics;
+
+import gov.nasa.jpf.annotation.FilterField;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ail.syntax.Intention;
+import ail.syntax.Literal;
+import ail.syntax.Predicate;
+import ail.syntax.PredicateIndicator;
+import ail.syntax.VarTerm;
+
+/**
+ * An index from the predicate indicators of the conditions intentions are waiting for
+ * to the intentions waiting on them.  When a belief is added or a percept changes only
+ * the intentions waiting on something with the same functor and arity are checked, rather
+ * than every intention the agent has.  Negation is ignored when indexing so that removed
+ * beliefs find intentions waiting for their absence; the intention itself still decides
+ * whether its condition is met.
+ * 
+ * Entries are not removed when an intention is unsuspended or dropped by other means but are
+ * discarded the next time their bucket is looked at.  Only intentions suspended via
+ * AILAgent.suspendFor are indexed.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class SuspensionIndex {
+	/**
+	 * Whether agents should index their suspended intentions.
+	 */
+	@FilterField
+	private static boolean indexing = false;
+	
+	/**
+	 * Intentions waiting on conditions, by predicate indicator.
+	 */
+	private Map<PredicateIndicator, List<Intention>> waiting = new HashMap<PredicateIndicator, List<Intention>>();
+	
+	/**
+	 * Intentions waiting on a variable, which might be met by anything.
+	 */
+	private List<Intention> anything = new ArrayList<Intention>();
+	
+	/**
+	 * Turn indexing of suspended intentions on or off.  This should be set before any agents
+	 * are created.
+	 * @param b
+	 */
+	public static void setIndexing(boolean b) {
+		indexing = b;
+	}
+	
+	/**
+	 * Are suspended intentions being indexed?
+	 * @return
+	 */
+	public static boolean indexing() {
+		return indexing;
+	}
+	
+	/**
+	 * Note that an intention is now waiting on its suspension condition.
+	 * @param i
+	 */
+	public void add(Intention i) {
+		Literal condition = i.getSuspendedFor();
+		if (condition == null) {
+			return;
+		}
+		
+		PredicateIndicator key = key(condition);
+		if (key == null) {
+			anything.add(i);
+		} else {
+			List<Intention> is = waiting.get(key);
+			if (is == null) {
+				is = new ArrayList<Intention>();
+				waiting.put(key, is);
+			}
+			if (! is.contains(i)) {
+				is.add(i);
+			}
+		}
+	}
+	
+	/**
+	 * Unsuspend any intentions whose condition is met by a new belief.
+	 * @param b
+	 */
+	public void unsuspendFor(Predicate b) {
+		PredicateIndicator key = key(b);
+		if (key == null) {
+			for (Map.Entry<PredicateIndicator, List<Intention>> e: waiting.entrySet()) {
+				wake(e.getValue(), e.getKey(), b);
+			}
+		} else {
+			List<Intention> is = waiting.get(key);
+			if (is != null) {
+				wake(is, key, b);
+				if (is.isEmpty()) {
+					waiting.remove(key);
+				}
+			}
+		}
+		wake(anything, null, b);
+	}
+	
+	/**
+	 * Unsuspend any intentions whose condition is met by changes in perception.
+	 * @param newbeliefs
+	 * @param oldbeliefs
+	 */
+	public void unsuspendFor(Set<Predicate> newbeliefs, Set<Literal> oldbeliefs) {
+		for (Predicate p: newbeliefs) {
+			unsuspendFor(p);
+		}
+		for (Literal l: oldbeliefs) {
+			// As in Intention, what is offered for a removed belief is its negation.
+			Literal l1 = l.clone();
+			if (! l.negated()) {
+				l1.setNegated(false);
+			}
+			unsuspendFor(l1);
+		}
+	}
+	
+	/**
+	 * The number of intentions in the index, including any which are no longer waiting.
+	 * @return
+	 */
+	public int size() {
+		int n = anything.size();
+		for (List<Intention> is: waiting.values()) {
+			n += is.size();
+		}
+		return n;
+	}
+	
+	/**
+	 * Offer b to each intention in is, removing those which are no longer waiting on something
+	 * indexed under key afterwards.
+	 * @param is
+	 * @param key
+	 * @param b
+	 */
+	private static void wake(List<Intention> is, PredicateIndicator key, Predicate b) {
+		Iterator<Intention> it = is.iterator();
+		while (it.hasNext()) {
+			Intention i = it.next();
+			i.unsuspendFor(b);
+			Literal condition = i.getSuspendedFor();
+			if (! i.suspended() || condition == null) {
+				it.remove();
+			} else {
+				PredicateIndicator k = key(condition);
+				if (key == null ? k != null : ! key.equals(k)) {
+					it.remove();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The key under which intentions waiting on p, or beliefs that might meet p, are indexed.
+	 * Null if p is a variable.
+	 * @param p
+	 * @return
+	 */
+	private static PredicateIndicator key(Predicate p) {
+		if (p instanceof VarTerm) {
+			return null;
+		}
+		if (p instanceof Literal && ((Literal) p).negated()) {
+			return new PredicateIndicator(p.getFunctor(), p.getTermsSize());
+		}
+		return p.getPredicateIndicator();
+	}
+
+}
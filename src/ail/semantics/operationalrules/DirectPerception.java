@@ -29,9 +29,9 @@ import java.util.TreeSet;
 import java.util.Iterator;
 
 import ail.mas.AILEnv;
+import ail.mas.PerceptDelta;
 import ail.semantics.AILAgent;
 import ail.semantics.OSRule;
-import ail.syntax.Intention;
 import ail.syntax.Message;
 import ail.syntax.Literal;
 import ail.syntax.Predicate;
@@ -71,9 +71,44 @@ public class DirectPerception implements OSRule {
 	 */
 	public void apply(AILAgent a) {
 		AILEnv env = a.getEnv();
-		Set<Predicate> percepts = env.getPercepts(a.getAgName(), true);
+		// If the agent has changed its percepts itself, e.g. deleting one, then a delta
+		// would not restore them so all the percepts are compared instead.
+		PerceptDelta delta = null;
+		if (! a.getBB().perceptsAltered()) {
+			delta = env.getPerceptDelta(a.getAgName());
+		}
+		Set<Predicate> percepts = null;
+		if (delta == null) {
+			percepts = env.getPercepts(a.getAgName(), true);
+		}
 		Set<Message> messages = env.getMessages(a.getAgName());
 		
+		if (delta != null) {
+			// Only the percepts which have changed need looking at.
+			Set<Literal> removed_percepts = new TreeSet<Literal>();
+			for (Predicate p: delta.getRemoved()) {
+				Literal l = a.getBB().getPercept(p);
+				if (l != null) {
+					a.delBel(l);
+					a.tellawake();
+					removed_percepts.add(l);
+				}
+			}
+			
+			Set<Predicate> added_percepts = new TreeSet<Predicate>();
+			for (Predicate l: delta.getAdded()) {
+				if (a.getBB().getPercept(l) == null) {
+					Literal k = (Literal) l.clone();
+					a.addBel(k, AILAgent.refertopercept());
+					a.tellawake();
+					added_percepts.add(l);
+				}
+			}
+			
+			if (! added_percepts.isEmpty()) {
+				a.unsuspendFor(added_percepts, removed_percepts);
+			}
+		}
 			
 		// if percepts == null then there is no change in the agent's perceptions.
 		// System.err.println(percepts);
@@ -106,13 +141,15 @@ public class DirectPerception implements OSRule {
 			}
 			
 			if (additions) {
-				for (Intention i: a.getIntentions()) {
-					i.unsuspendFor(percepts, removed_percepts);
-				}
+				a.unsuspendFor(percepts, removed_percepts);
 			}
 
 		}
 		
+		if (delta != null || percepts != null) {
+			a.getBB().clearPerceptsAltered();
+		}
+		
 		Set<Message> msglist = new TreeSet<Message>();
 
 		msglist.addAll(messages);
@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.TreeSet;
 
 import ail.mas.AILEnv;
+import ail.mas.PerceptDelta;
 import ail.semantics.AILAgent;
 import ail.semantics.OSRule;
 import ail.syntax.Intention;
@@ -78,14 +79,41 @@ public class DirectPerceptionwEvents implements OSRule {
 	 */
 	public void apply(AILAgent a) {
 		AILEnv env = a.getEnv();
-		Set<Predicate> percepts = env.getPercepts(a.getAgName(), true);
+		// If the agent has changed its percepts itself, e.g. deleting one, then a delta
+		// would not restore them so all the percepts are compared instead.
+		PerceptDelta delta = null;
+		if (! a.getBB().perceptsAltered()) {
+			delta = env.getPerceptDelta(a.getAgName());
+		}
+		Set<Predicate> percepts = null;
+		if (delta == null) {
+			percepts = env.getPercepts(a.getAgName(), true);
+		}
 		Set<Message> messages = env.getMessages(a.getAgName());
 		
 		if (AJPFLogger.ltFiner(logname)) {
-			AJPFLogger.finer(logname, "Incoming percepts: " + percepts);
+			AJPFLogger.finer(logname, "Incoming percepts: " + (delta == null ? percepts : delta));
 		}
-				
-		if (percepts != null) {
+		
+		if (delta != null) {
+			// Only the percepts which have changed need looking at.
+			Set<Literal> removed_percepts = new TreeSet<Literal>();
+			for (Predicate l: delta.getRemoved()) {
+				if (a.getBB().getPercept(l) != null) {
+					removePercept(a, l, removed_percepts);
+				}
+			}
+			
+			Set<Predicate> added_percepts = new TreeSet<Predicate>();
+			for (Predicate l: delta.getAdded()) {
+				if (a.getBB().getPercept(l) == null) {
+					addPercept(a, l);
+					added_percepts.add(l);
+				}
+			}
+			
+			unsuspend(a, added_percepts, removed_percepts);
+		} else if (percepts != null) {
 
 			// First work through the agents current perceptions.
 			// Create an intention to remove any no longer perceived.
@@ -98,45 +126,74 @@ public class DirectPerceptionwEvents implements OSRule {
 					AJPFLogger.finer(logname, "percept " + l);
 				}
 				if (! percepts.contains(l)) {
-					Literal lit = new Literal(true, new PredicatewAnnotation(l));
-					lit.addAnnot(BeliefBase.TPercept);
-					a.delBel(lit);
-					a.addNewIntention(new Intention(new Event(Event.AILDeletion, Event.AILBel, lit), AILAgent.refertopercept()));
-					a.tellawake();
-					if (AJPFLogger.ltFine(logname)) {
-						AJPFLogger.fine(logname, a.getAgName() + " dropped " + l);
-					}
-					removed_percepts.add(lit);
+					removePercept(a, l, removed_percepts);
 				} else {
 					percepts.remove(l);
 				}
 			 }
 		
 			// Add all the remaining perceptions (i.e., the new ones) as intentions.
-			boolean additions = false;
 			for (Predicate l: percepts) {
-				Literal k = new Literal(true, new PredicatewAnnotation(l.clone()));
-				additions = true;
-				a.addBel(k, AILAgent.refertopercept());
-				// Don't let new intention get dropped totally if things change.
-				a.addNewIntention(new Intention(new Event(Event.AILAddition, Event.AILBel, k), AILAgent.refertoself()));
-				a.tellawake();
-				if (AJPFLogger.ltFine(logname)) {
-					AJPFLogger.fine(logname, a.getAgName() + " added " + k);
-				}
+				addPercept(a, l);
 			}
 			
-			if (additions || !removed_percepts.isEmpty()) {
-				for (Intention i: a.getIntentions()) {
-					i.unsuspendFor(percepts, removed_percepts);
-				}
-				
-				if (a.getIntention() != null) {
-					a.getIntention().unsuspendFor(percepts, removed_percepts);
-				}
-			}
+			unsuspend(a, percepts, removed_percepts);
+		}
+		
+		if (delta != null || percepts != null) {
+			a.getBB().clearPerceptsAltered();
 		}
 		
 		a.newMessages(messages);
 	}
+	
+	/**
+	 * Remove a percept which is no longer perceived, creating an intention to handle its removal.
+	 * @param a
+	 * @param l
+	 * @param removed_percepts
+	 */
+	private void removePercept(AILAgent a, Predicate l, Set<Literal> removed_percepts) {
+		Literal lit = new Literal(true, new PredicatewAnnotation(l));
+		lit.addAnnot(BeliefBase.TPercept);
+		a.delBel(lit);
+		a.addNewIntention(new Intention(new Event(Event.AILDeletion, Event.AILBel, lit), AILAgent.refertopercept()));
+		a.tellawake();
+		if (AJPFLogger.ltFine(logname)) {
+			AJPFLogger.fine(logname, a.getAgName() + " dropped " + l);
+		}
+		removed_percepts.add(lit);
+	}
+	
+	/**
+	 * Add a new percept, creating an intention to handle its addition.
+	 * @param a
+	 * @param l
+	 */
+	private void addPercept(AILAgent a, Predicate l) {
+		Literal k = new Literal(true, new PredicatewAnnotation(l.clone()));
+		a.addBel(k, AILAgent.refertopercept());
+		// Don't let new intention get dropped totally if things change.
+		a.addNewIntention(new Intention(new Event(Event.AILAddition, Event.AILBel, k), AILAgent.refertoself()));
+		a.tellawake();
+		if (AJPFLogger.ltFine(logname)) {
+			AJPFLogger.fine(logname, a.getAgName() + " added " + k);
+		}
+	}
+	
+	/**
+	 * Unsuspend any intentions waiting for changes in perception.
+	 * @param a
+	 * @param percepts
+	 * @param removed_percepts
+	 */
+	private void unsuspend(AILAgent a, Set<Predicate> percepts, Set<Literal> removed_percepts) {
+		if (! percepts.isEmpty() || !removed_percepts.isEmpty()) {
+			a.unsuspendFor(percepts, removed_percepts);
+			
+			if (a.getIntention() != null) {
+				a.getIntention().unsuspendFor(percepts, removed_percepts);
+			}
+		}
+	}
 } 
\ No newline at end of file
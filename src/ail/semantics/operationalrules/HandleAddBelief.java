@@ -26,7 +26,6 @@ package ail.semantics.operationalrules;
 
 import ail.semantics.AILAgent;
 import ail.syntax.Event;
-import ail.syntax.Intention;
 import ajpf.util.AJPFLogger;
 
 
@@ -78,8 +77,6 @@ public class HandleAddBelief extends HandleBelief {
 			AJPFLogger.fine(logname, a.getAgName() + " added " + b);
 		}
 		// Unsuspend all intentions since circumstances have changed
-		for (Intention i: a.getIntentions()) {
-			i.unsuspendFor(b);
-		}
+		a.unsuspendFor(b);
 	}
 }
\ No newline at end of file
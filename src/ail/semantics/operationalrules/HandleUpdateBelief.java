@@ -27,7 +27,6 @@ package ail.semantics.operationalrules;
 import java.util.Iterator;
 
 import ail.semantics.AILAgent;
-import ail.syntax.Intention;
 import ail.syntax.Unifier;
 import ail.syntax.Literal;
 import ail.syntax.PredicateIndicator;
@@ -98,8 +97,6 @@ public class HandleUpdateBelief extends HandleBelief {
 			AJPFLogger.fine(logname, a.getAgName() + " added " + b);
 		}
 		
-		for (Intention i: a.getIntentions()) {
-			i.unsuspendFor(b);
-		}
+		a.unsuspendFor(b);
 	}
 }
\ No newline at end of file
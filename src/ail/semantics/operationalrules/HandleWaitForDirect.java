@@ -113,7 +113,7 @@ public class HandleWaitForDirect extends DirectPerception {
 			i.compose(thetahd);
 			a.setIntention(i);
 		} else {
-			i.suspendFor(waitingfor);
+			a.suspendFor(i, waitingfor);
 			i.hdE().apply(thetahd);
 			if (a.allintentionssuspended()) {
 				a.getIntentions().add(i);
@@ -29,14 +29,18 @@ package ail.syntax;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ajpf.util.VerifyMap;
 import ajpf.util.VerifyList;
+import ajpf.util.SortedList;
 import ajpf.util.AJPFLogger;
+import ail.mas.DefaultEnvironment;
 import ail.syntax.annotation.SourceAnnotation;
 
 import gov.nasa.jpf.annotation.FilterField;
@@ -90,7 +94,120 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
     /* this is a list of things the agents "expects" to be able to perceive. 
      */ 
     @FilterField
-    ArrayList<Literal> percepts = new ArrayList<Literal>();
+    ArrayList<Literal> percepts = new SortedList<Literal>();
+    
+    /**
+     * Whether the beliefs with the percept annotation have changed since perception last
+     * brought them up to date, e.g. because the agent deleted one itself.
+     */
+    @FilterField
+    private boolean perceptsAltered = false;
+    
+    /**
+     * Whether belief entries should maintain an index on the first argument of their literals.
+     */
+    @FilterField
+    private static boolean firstArgIndexing = false;
+    
+    /**
+     * The number of candidate beliefs getRelevant has skipped thanks to the first argument index.
+     */
+    @FilterField
+    private long pruned = 0;
+    
+    /**
+     * Turn first argument indexing of beliefs on or off.  The index is not
+     * part of the state of the belief base so this does not affect model checking.
+     * @param b
+     */
+    public static void setFirstArgIndexing(boolean b) {
+    	firstArgIndexing = b;
+    }
+    
+    /**
+     * Is first argument indexing in use?
+     * @return
+     */
+    public static boolean firstArgIndexing() {
+    	return firstArgIndexing;
+    }
+    
+    /**
+     * How many candidate beliefs have been pruned from calls to getRelevant by 
+     * the first argument index.
+     * @return
+     */
+    public long getPrunedCount() {
+    	return pruned;
+    }
+    
+    /**
+     * A clock shared by all belief bases used to time stamp changes.
+     */
+    @FilterField
+    private static final AtomicLong clock = new AtomicLong();
+    
+    /**
+     * When beliefs with each predicate indicator were last changed.  Only kept while
+     * rule answers are being tabled.
+     */
+    @FilterField
+    private HashMap<PredicateIndicator, Long> changes = null;
+    
+    /**
+     * When any belief was last changed.  Only kept while rule answers are being tabled.
+     */
+    @FilterField
+    private long lastChange = 0;
+    
+    /**
+     * When the belief base was last cleared.
+     */
+    @FilterField
+    private long cleared = 0;
+    
+    /**
+     * The current time according to the belief base clock.
+     * @return
+     */
+    static long now() {
+    	return clock.get();
+    }
+    
+    /**
+     * Have beliefs with this predicate indicator changed since stamp?  If pi is null
+     * then checks for changes to any belief.
+     * @param pi
+     * @param stamp
+     * @return
+     */
+    boolean changedSince(PredicateIndicator pi, long stamp) {
+    	if (pi == null) {
+    		return lastChange > stamp;
+    	}
+    	if (cleared > stamp) {
+    		return true;
+    	}
+    	if (changes == null) {
+    		return false;
+    	}
+    	Long t = changes.get(pi);
+    	return t != null && t > stamp;
+    }
+    
+    /**
+     * Note a change to beliefs with this predicate indicator.
+     * @param pi
+     */
+    private void changed(PredicateIndicator pi) {
+    	if (EvaluationAndRuleBaseIterator.tabling()) {
+    		lastChange = clock.incrementAndGet();
+    		if (changes == null) {
+    			changes = new HashMap<PredicateIndicator, Long>();
+    		}
+    		changes.put(pi, lastChange);
+    	}
+    }
     
     /**
      * Getter for the number of beliefs.
@@ -122,6 +239,21 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
     	return ((ArrayList<Literal>)percepts.clone()).iterator();
     }
     
+    /**
+     * Have the percepts in the belief base changed since clearPerceptsAltered was last called?
+     * @return
+     */
+    public boolean perceptsAltered() {
+    	return perceptsAltered;
+    }
+    
+    /**
+     * Note that perception has brought the percepts in the belief base up to date.
+     */
+    public void clearPerceptsAltered() {
+    	perceptsAltered = false;
+    }
+    
     /**
      * Horrible hack awaiting refactoring.
      */
@@ -160,11 +292,12 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
         if (bl != null) {
             // add only annots
             if (bl.addAnnotFrom(l)) {
+            	changed(bl.getPredicateIndicator());
                 // check if it needs to be added in the percepts list
             	
                 if (l.hasAnnot(TPercept)) {
                     percepts.add(bl);
-                    Collections.sort(percepts);
+                    perceptsAltered = true;
                 }
                 
                 return true;
@@ -177,12 +310,13 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
                 belsMap.put(l.getPredicateIndicator(), entry);
             }
             entry.add(l); 
+            changed(l.getPredicateIndicator());
             // add it in the percepts list
             
             if (l.hasAnnot(TPercept)) {
-                percepts.add(l);
                 try {
-                	Collections.sort(percepts);
+                	percepts.add(l);
+                	perceptsAltered = true;
                 } catch (Exception e) {
                 	AJPFLogger.severe("ail.syntax.BeliefBase", e.getMessage());
                 }
@@ -204,8 +338,14 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
    	Literal bl = contains(l);
         if (bl != null) {
                  if (l.hasAnnot(TPercept)) {
-                    percepts.remove(bl);
-                } 
+                    if (percepts.remove(bl)) {
+                    	perceptsAltered = true;
+                    }
+                } else if (DefaultEnvironment.deltaPerception() && percepts.remove(bl)) {
+                	// The agent deleted a perceived belief itself, so perception must compare all
+                	// the percepts to bring it back, since the environment's delta will not list it.
+                	perceptsAltered = true;
+                }
                 
          	PredicateIndicator key = l.getPredicateIndicator();
         	BelEntry entry = belsMap.get(key);
@@ -214,6 +354,7 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
         		belsMap.remove(key);
         	}
         	size--;
+        	changed(key);
             boolean  result = true;
             return result;
         } 
@@ -225,6 +366,11 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
      */
     public void clear() {
     	belsMap = new VerifyMap<PredicateIndicator, BelEntry>();
+    	if (EvaluationAndRuleBaseIterator.tabling()) {
+    		lastChange = clock.incrementAndGet();
+    		cleared = lastChange;
+    		changes = null;
+    	}
     }
 
     /**
@@ -264,6 +410,24 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
         }
     }
  
+    /**
+     * Find the belief recording that the predicate is perceived, if there is one.
+     * 
+     * @param p the percept to look for.
+     * @return the perceived literal or null.
+     */
+    public Literal getPercept(Predicate p) {
+    	BelEntry entry = belsMap.get(p.getPredicateIndicator());
+    	if (entry != null) {
+    		for (Literal l: entry.list) {
+    			if (! l.negated() && l.hasAnnot(TPercept) && new Predicate(l).compareTo(p) == 0) {
+    				return l;
+    			}
+    		}
+    	}
+    	return null;
+    }
+ 
     /**
      * Check whether the belief base contains something with a particular
      * predicate indicator.  Can be used for quick filtering of plans but caution
@@ -306,7 +470,16 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
             BelEntry entry = belsMap.get(l.getPredicateIndicator());
             if (entry != null) {
                 List<PredicateTerm> entrylist = new ArrayList<PredicateTerm>();
-                entrylist.addAll(entry.list);
+                String key = null;
+                if (firstArgIndexing && l instanceof Predicate && l.getTermsSize() > 0) {
+                	key = indexKey(((Predicate) l).getTerm(0));
+                }
+                if (key != null) {
+                	entrylist.addAll(entry.getIndexed(key));
+                	pruned += entry.list.size() - entrylist.size();
+                } else {
+                	entrylist.addAll(entry.list);
+                }
                 return entrylist.iterator();
            } else {
                 return Collections.<PredicateTerm>emptyList().iterator();
@@ -315,6 +488,34 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
         
      }
 
+    /**
+     * The key under which a term is stored in a first argument index.  Terms that
+     * might unify have the same key.  Returns null if the term is not ground enough to 
+     * be indexed (e.g., it is an unbound variable).
+     * 
+     * @param t
+     * @return
+     */
+    static String indexKey(Term t) {
+    	while (t instanceof VarTerm && ((VarTerm) t).hasValue()) {
+    		t = ((VarTerm) t).getValue();
+    	}
+    	if (t.isVar() || t.isArithExpr() || t.isList() || t instanceof VarsCluster) {
+    		return null;
+    	}
+    	if (t.isNumeric()) {
+    		return "#" + ((NumberTerm) t).solve();
+    	}
+    	if (t.isString()) {
+    		return "\"" + ((StringTerm) t).getString();
+    	}
+    	if (t.isPredicate()) {
+    		Predicate p = (Predicate) t;
+    		return p.getFunctor() + "/" + p.getTermsSize();
+    	}
+    	return null;
+    }
+
     /**
      * Convert the belief base into a string for printing.
      *
@@ -336,6 +537,19 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
         
         final private VerifyList<Literal> list = new VerifyList<Literal>(); // maintains the order of the bels
         
+        /**
+         * Literals indexed by the key of their first argument.  Each bucket is in the same order as list.
+         * Built lazily the first time it is needed.
+         */
+        @FilterField
+        private HashMap<String, VerifyList<Literal>> index = null;
+        
+        /**
+         * Literals whose first argument can not be indexed.
+         */
+        @FilterField
+        private VerifyList<Literal> unindexed = null;
+        
         /**
          * Add a literal to the belEntry.
          * 
@@ -343,6 +557,9 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
          */
         public void add(Literal l) {
             list.put(l);
+            if (index != null) {
+            	addToIndex(l);
+            }
         }
         
         /**
@@ -352,9 +569,86 @@ public class BeliefBase implements Iterable<PredicateTerm>, EvaluationBase<Predi
         public void remove(Literal l) {
         	if (list.contains(l)) {
         		list.remove(l);
+        		if (index != null) {
+        			String key = firstKey(l);
+        			if (key == null) {
+        				unindexed.remove(l);
+        			} else {
+        				VerifyList<Literal> bucket = index.get(key);
+        				bucket.remove(l);
+        				if (bucket.isEmpty()) {
+        					index.remove(key);
+        				}
+        			}
+        		}
         	}
        }
         
+        /**
+         * Get the literals whose first argument might unify with a term with this key,
+         * in the order in which they appear in the entry.
+         * @param key
+         * @return
+         */
+        public List<Literal> getIndexed(String key) {
+        	if (index == null) {
+        		index = new HashMap<String, VerifyList<Literal>>();
+        		unindexed = new VerifyList<Literal>();
+        		for (Literal l: list) {
+        			addToIndex(l);
+        		}
+        	}
+        	
+        	VerifyList<Literal> bucket = index.get(key);
+        	if (unindexed.isEmpty()) {
+        		if (bucket == null) {
+        			return Collections.<Literal>emptyList();
+        		}
+        		return bucket;
+        	} 
+        	
+        	// Some literals have variables as first arguments so we need to preserve their ordering with respect to the
+        	// indexed ones.
+        	List<Literal> relevant = new ArrayList<Literal>();
+        	for (Literal l: list) {
+        		String lkey = firstKey(l);
+        		if (lkey == null || lkey.equals(key)) {
+        			relevant.add(l);
+        		}
+        	}
+        	return relevant;
+        }
+        
+        /**
+         * Add a literal to the index.
+         * @param l
+         */
+        private void addToIndex(Literal l) {
+        	String key = firstKey(l);
+        	if (key == null) {
+        		unindexed.put(l);
+        	} else {
+        		VerifyList<Literal> bucket = index.get(key);
+        		if (bucket == null) {
+        			bucket = new VerifyList<Literal>();
+        			index.put(key, bucket);
+        		}
+        		bucket.put(l);
+        	}
+        }
+        
+        /**
+         * The index key for the first argument of a literal.
+         * @param l
+         * @return
+         */
+        private String firstKey(Literal l) {
+        	if (l.getTermsSize() == 0) {
+        		return null;
+        	}
+        	return indexKey(l.getTerm(0));
+        }
+        
         /**
          * This entry contains no literals.
          * 
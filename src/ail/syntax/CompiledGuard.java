@@ -0,0 +1,392 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ail.syntax;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import ail.semantics.AILAgent;
+import ajpf.util.AJPFLogger;
+
+/**
+ * A Guard compiled into a flat sequence of conjuncts, so that it can be evaluated by a
+ * single backtracking iterator rather than a nest of iterators, one per conjunction.
+ * 
+ * Conjuncts which can only accept or reject a unifier (negations and equations) are
+ * filters.  These are moved to just after the last conjunct before them which shares a
+ * variable with them, so that hopeless unifiers are rejected as early as possible.  Since
+ * a variable may also be bound through the unifier the guard is evaluated with, a moved
+ * filter is only tested early if all its variables are already bound to ground terms and
+ * otherwise is tested in its original place.  The other conjuncts keep their order so
+ * unifiers are found in the same order as when the guard is interpreted.
+ * 
+ * The compiled form refers to the positions of conjuncts, so is shared by all copies of
+ * the guard.  The only names it records are the variables of the moved filters, and 
+ * renaming a variable of the guard (for instance when a plan is standardised apart) 
+ * gives it a compiled form with those renamed.
+ * 
+ * @author louiseadennis
+ *
+ */
+final class CompiledGuard {
+	/**
+	 * The kinds of step.
+	 */
+	static final byte GENERATE = 0;
+	static final byte FILTER = 1;
+	static final byte EARLY = 2;
+	static final byte LATE = 3;
+	
+	/**
+	 * The number of conjuncts.
+	 */
+	int size;
+	/**
+	 * For each step, which conjunct it evaluates and how.
+	 */
+	int[] conjunct;
+	byte[] kind;
+	/**
+	 * The number of filters which have been moved.
+	 */
+	int moved;
+	/**
+	 * For each step that is part of a moved filter, which moved filter it is.
+	 */
+	int[] filter;
+	/**
+	 * For each moved filter, its variables.
+	 */
+	String[][] filtervars;
+	
+	/**
+	 * Compile g.
+	 * @param g
+	 * @return null if g is not a conjunction which can be compiled.
+	 */
+	static CompiledGuard compile(Guard g) {
+		int n = g.flatten(null, null, 0);
+		if (n < 0) {
+			return null;
+		}
+		GLogicalFormula[] conjuncts = new GLogicalFormula[n];
+		boolean[] negated = new boolean[n];
+		g.flatten(conjuncts, negated, 0);
+		
+		List<Set<String>> vars = new ArrayList<Set<String>>();
+		boolean[] isfilter = new boolean[n];
+		boolean[] isequation = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			vars.add(new HashSet<String>(conjuncts[i].getVarNames()));
+			isequation[i] = ! negated[i] && conjuncts[i] instanceof Equation;
+			isfilter[i] = negated[i] || isequation[i];
+		}
+		
+		CompiledGuard c = new CompiledGuard();
+		c.size = n;
+		
+		// Where each filter can go: just after the last conjunct which is not a filter
+		// and shares a variable with it (-1 for the start).  It has moved if that is
+		// before some other conjunct which is not a filter.
+		int[] after = new int[n];
+		int[] movedid = new int[n];
+		for (int i = 0; i < n; i++) {
+			movedid[i] = -1;
+			if (isfilter[i]) {
+				after[i] = -1;
+				int lastgenerator = -1;
+				for (int j = i - 1; j >= 0; j--) {
+					if (! isfilter[j]) {
+						if (lastgenerator == -1) {
+							lastgenerator = j;
+						}
+						if (! disjoint(vars.get(i), vars.get(j))) {
+							after[i] = j;
+							break;
+						}
+					}
+				}
+				if (lastgenerator > after[i]) {
+					movedid[i] = c.moved++;
+				}
+			}
+		}
+		
+		List<int[]> steps = new ArrayList<int[]>();
+		addFilters(steps, -1, isfilter, isequation, after, movedid);
+		for (int i = 0; i < n; i++) {
+			if (! isfilter[i]) {
+				steps.add(new int[] {i, GENERATE, -1});
+				addFilters(steps, i, isfilter, isequation, after, movedid);
+			} else if (movedid[i] != -1) {
+				steps.add(new int[] {i, LATE, movedid[i]});
+			}
+		}
+		
+		c.filtervars = new String[c.moved][];
+		for (int i = 0; i < n; i++) {
+			if (movedid[i] != -1) {
+				c.filtervars[movedid[i]] = vars.get(i).toArray(new String[0]);
+			}
+		}
+		
+		c.conjunct = new int[steps.size()];
+		c.kind = new byte[steps.size()];
+		c.filter = new int[steps.size()];
+		for (int s = 0; s < steps.size(); s++) {
+			c.conjunct[s] = steps.get(s)[0];
+			c.kind[s] = (byte) steps.get(s)[1];
+			c.filter[s] = steps.get(s)[2];
+		}
+		return c;
+	}
+	
+	/**
+	 * Add the steps for the filters which go just after conjunct j, cheap equations first.
+	 */
+	private static void addFilters(List<int[]> steps, int j, boolean[] isfilter, boolean[] isequation, int[] after, int[] movedid) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = j + 1; i < isfilter.length; i++) {
+				if (isfilter[i] && after[i] == j && isequation[i] == (pass == 0)) {
+					if (movedid[i] == -1) {
+						steps.add(new int[] {i, FILTER, -1});
+					} else {
+						steps.add(new int[] {i, EARLY, movedid[i]});
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * This compiled form for a guard with the variable oldname renamed to newname.
+	 * @param oldname
+	 * @param newname
+	 * @return this if oldname is not a variable of a moved filter.
+	 */
+	CompiledGuard renamed(String oldname, String newname) {
+		CompiledGuard c = this;
+		for (int m = 0; m < moved; m++) {
+			for (int v = 0; v < filtervars[m].length; v++) {
+				if (filtervars[m][v].equals(oldname)) {
+					if (c == this) {
+						c = new CompiledGuard();
+						c.size = size;
+						c.conjunct = conjunct;
+						c.kind = kind;
+						c.moved = moved;
+						c.filter = filter;
+						c.filtervars = filtervars.clone();
+					}
+					if (c.filtervars[m] == filtervars[m]) {
+						c.filtervars[m] = filtervars[m].clone();
+					}
+					c.filtervars[m][v] = newname;
+				}
+			}
+		}
+		return c;
+	}
+	
+	/**
+	 * The unifiers under which an agent believes g, which must have this compiled form.
+	 * @param g
+	 * @param ag
+	 * @param un
+	 * @param varnames
+	 * @return null if g can not be evaluated this way.
+	 */
+	Iterator<Unifier> logicalConsequence(Guard g, AILAgent ag, Unifier un, List<String> varnames) {
+		GLogicalFormula[] conjuncts = new GLogicalFormula[size];
+		boolean[] negated = new boolean[size];
+		if (g.flatten(conjuncts, negated, 0) != size) {
+			// g no longer has the shape it was compiled from.
+			return null;
+		}
+		return new Solutions(conjuncts, negated, ag, un, varnames);
+	}
+	
+	/**
+	 * Backtracks through the steps to find each unifier in turn.
+	 */
+	private final class Solutions implements Iterator<Unifier> {
+		GLogicalFormula[] conjuncts;
+		boolean[] negated;
+		AILAgent ag;
+		List<String> varnames;
+		
+		/**
+		 * The unifier on reaching each step, and the unifiers still to try from each GENERATE step.
+		 */
+		Unifier[] unifiers;
+		Iterator<Unifier>[] alternatives;
+		/**
+		 * Whether each filter step has been passed on the current branch.
+		 */
+		boolean[] passed;
+		/**
+		 * Whether each moved filter was tested early on the current branch.
+		 */
+		boolean[] tested;
+		int step = 0;
+		Unifier current = null;
+		
+		@SuppressWarnings("unchecked")
+		Solutions(GLogicalFormula[] conjuncts, boolean[] negated, AILAgent ag, Unifier un, List<String> varnames) {
+			this.conjuncts = conjuncts;
+			this.negated = negated;
+			this.ag = ag;
+			this.varnames = varnames;
+			unifiers = new Unifier[kind.length + 1];
+			unifiers[0] = un;
+			alternatives = (Iterator<Unifier>[]) new Iterator<?>[kind.length];
+			passed = new boolean[kind.length];
+			tested = new boolean[moved];
+		}
+		
+		public boolean hasNext() {
+			if (current == null) {
+				current = find();
+			}
+			return current != null;
+		}
+		
+		public Unifier next() {
+			if (current == null) {
+				current = find();
+			}
+			Unifier u = current;
+			current = null;
+			return u;
+		}
+		
+		public void remove() {}
+		
+		/**
+		 * Find the next unifier, or null if there are no more.
+		 * @return
+		 */
+		private Unifier find() {
+			try {
+				while (step >= 0) {
+					if (step == kind.length) {
+						step--;
+						return unifiers[kind.length];
+					}
+					
+					Unifier u = unifiers[step];
+					if (kind[step] == GENERATE) {
+						if (alternatives[step] == null) {
+							alternatives[step] = conjuncts[conjunct[step]].logicalConsequence(ag, u, varnames);
+						}
+						if (alternatives[step].hasNext()) {
+							unifiers[step + 1] = alternatives[step].next();
+							step++;
+						} else {
+							alternatives[step] = null;
+							step--;
+						}
+					} else if (passed[step]) {
+						// Filters only ever pass a unifier once.
+						passed[step] = false;
+						step--;
+					} else {
+						boolean pass;
+						int c = conjunct[step];
+						switch (kind[step]) {
+						case EARLY:
+							tested[filter[step]] = ready(filter[step], u);
+							pass = ! tested[filter[step]] || holds(c, u);
+							break;
+						case LATE:
+							pass = tested[filter[step]] || holds(c, u);
+							break;
+						default:
+							pass = holds(c, u);
+						}
+						if (pass) {
+							passed[step] = true;
+							unifiers[step + 1] = u;
+							step++;
+						} else {
+							step--;
+						}
+					}
+				}
+			} catch (RuntimeException e) {
+				AJPFLogger.severe("ail.syntax.Guard", "Error evaluating guard: " + e.getMessage());
+				step = -1;
+			}
+			return null;
+		}
+		
+		/**
+		 * Does filter c accept u?
+		 * @param c
+		 * @param u
+		 * @return
+		 */
+		private boolean holds(int c, Unifier u) {
+			GLogicalFormula f = conjuncts[c];
+			if (negated[c]) {
+				return ! f.logicalConsequence(ag, u, varnames).hasNext();
+			} 
+			Equation e = (Equation) f;
+			int quick = e.holds(u);
+			if (quick >= 0) {
+				return quick == 1;
+			}
+			return e.logicalConsequence(ag, u, varnames).hasNext();
+		}
+		
+		/**
+		 * Are all the variables of moved filter m bound to ground terms by u?
+		 * @param m
+		 * @param u
+		 * @return
+		 */
+		private boolean ready(int m, Unifier u) {
+			for (String v: filtervars[m]) {
+				Term t = u.get(v);
+				if (t == null || ! t.isGround()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
+	private static boolean disjoint(Set<String> a, Set<String> b) {
+		for (String s: a) {
+			if (b.contains(s)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -25,8 +25,9 @@
 
 package ail.syntax;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import gov.nasa.jpf.annotation.FilterField;
 
@@ -673,17 +674,15 @@ public abstract class DefaultAILStructure extends DefaultTerm implements AILStru
 	 * @see ail.syntax.DefaultTerm#standardise_apart(ail.syntax.Unifiable, ail.syntax.Unifier)
 	 */
     public void standardise_apart(Unifiable t, Unifier u) {
-    	List<String> tvarnames = t.getVarNames();
     	List<String> myvarnames = getVarNames();
-    	ArrayList<String> replacednames = new ArrayList<String>();
-    	ArrayList<String> newnames = new ArrayList<String>();
-    	for (String s:myvarnames) {
-    		if (tvarnames.contains(s) || u.containsVarName(s)) {
-    			if (!replacednames.contains(s)) {
-    				String s1 = generate_fresh(s, tvarnames, myvarnames, newnames, u);
+    	FreshNames fresh = new FreshNames(t.getVarNames(), myvarnames, u);
+    	Set<String> replacednames = new HashSet<String>();
+    	for (String s: myvarnames) {
+    		if (fresh.clashes(s) || fresh.inUnifier(s)) {
+    			if (replacednames.add(s)) {
+    				String s1 = fresh.fresh(s);
     				renameVar(s, s1);
-    				replacednames.add(s);
-    				newnames.add(s1);
+    				fresh.use(s1);
     			}
     		}
     	}
@@ -691,7 +690,8 @@ public abstract class DefaultAILStructure extends DefaultTerm implements AILStru
     } 
     
     /**
-     * Generate fresh variable names.
+     * Generate fresh variable names.  When generating several names use a FreshNames 
+     * instead, which only has to look at the names in use once.
      * @param s
      * @param names1
      * @param names2
@@ -700,15 +700,11 @@ public abstract class DefaultAILStructure extends DefaultTerm implements AILStru
      * @return
      */
     public static String generate_fresh(String s, List<String> names1, List<String> names2, List<String> names3, Unifier u) {
-    	String sbase = s;
-    	String news = sbase;
-    	for (int i = 0; i < names1.size() + names2.size() + names3.size(); i++) {
-    		news = sbase + i;
-    		if (! names1.contains(news) & !names2.contains(news) & !names3.contains(news) & !u.containsVarName(news)) {
-    			break;
-    		}
+    	FreshNames fresh = new FreshNames(names1, names2, u);
+    	for (String n: names3) {
+    		fresh.use(n);
     	}
-    	return news;
+    	return fresh.fresh(s);
     }
     
 
@@ -121,6 +121,9 @@ public abstract class DefaultTerm implements Term {
 	 * @see java.lang.Comparable#compareTo(java.lang.Object)
 	 */
     public int compareTo(Term t) {
+    	if (t == this) {
+    		return 0;
+    	}
         return this.toString().compareTo(t.toString());
     }
  
@@ -129,6 +132,9 @@ public abstract class DefaultTerm implements Term {
 	 * @see java.lang.Comparable#compareTo(java.lang.Object)
 	 */
     public int compareTo(MCAPLTerm t) {
+    	if (t == this) {
+    		return 0;
+    	}
     	return this.toString().compareTo(t.toString());
     }
 
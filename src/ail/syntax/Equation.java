@@ -28,6 +28,7 @@
 package ail.syntax;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -106,6 +107,13 @@ public class Equation implements LogicalFormula, GLogicalFormula {
 	 */
     private Iterator<Unifier> logicalConsequence(Unifier un) {
         try {
+        	// Most equations compare numbers and the values of variables, so try that without copying first.
+        	int quick = op == NumericOp.none ? -1 : holds(un);
+        	if (quick == 1) {
+        		return createUnifIterator(un);
+        	} else if (quick == 0) {
+        		return Collections.<Unifier>emptyIterator();
+        	}
         	Equation ec = (Equation) this.clone();
         	ec.apply(un);
         	NumberTerm elhs = ec.getLHS();
@@ -141,6 +149,76 @@ public class Equation implements LogicalFormula, GLogicalFormula {
         return empty.iterator();  // empty iterator for unifier
     }   
 
+    /**
+     * Does this equation hold given un?  Worked out without copying the equation, but only
+     * when each side is a number, a variable whose value is a number or an arithmetic
+     * expression over these.
+     * @param un
+     * @return 1 if it holds, 0 if it does not and -1 if it can not be worked out this way.
+     */
+    int holds(Unifier un) {
+    	if (op == NumericOp.none) {
+    		return 1;
+    	}
+    	double l = value(lhs, un);
+    	double r = value(rhs, un);
+    	if (Double.isNaN(l) || Double.isNaN(r)) {
+    		return -1;
+    	}
+    	if (op == NumericOp.less) {
+    		return l < r ? 1 : 0;
+    	} 
+    	return l == r ? 1 : 0;
+    }
+    
+    /**
+     * The value of t given un, or NaN if it is not a number, a variable whose value is a number
+     * or an arithmetic expression over these.  Expressions are worked out on doubles in the
+     * same way as ArithExpr.solve but without applying un to them, so no terms are created.
+     * @param t
+     * @param un
+     * @return
+     */
+    private static double value(Term t, Unifier un) {
+    	for (int depth = 0; depth < 8; depth++) {
+    		if (t instanceof NumberTermImpl) {
+    			return ((NumberTermImpl) t).solve();
+    		}
+    		if (t instanceof ArithExpr) {
+    			ArithExpr e = (ArithExpr) t;
+    			if (e.isEvaluated()) {
+    				return e.solve();
+    			}
+    			// Unary expressions are left to the general case, which treats them as it always has.
+    			if (e.isUnary()) {
+    				return Double.NaN;
+    			}
+    			double l = value(e.getLHS(), un);
+    			if (Double.isNaN(l)) {
+    				return l;
+    			}
+    			double r = value(e.getRHS(), un);
+    			if (Double.isNaN(r)) {
+    				return r;
+    			}
+    			return e.getOp().eval(l, r);
+    		}
+    		if (! (t instanceof VarTerm)) {
+    			return Double.NaN;
+    		}
+    		VarTerm v = (VarTerm) t;
+    		if (v.hasValue()) {
+    			t = v.getValue();
+    		} else {
+    			t = un.get(v);
+    		}
+    		if (t == null) {
+    			return Double.NaN;
+    		}
+    	}
+    	return Double.NaN;
+    }
+
     /** create an iterator for a list of unifiers */
     static public Iterator<Unifier> createUnifIterator(Unifier... unifs) {
         List<Unifier> r = new ArrayList<Unifier>(unifs.length);
@@ -326,15 +404,10 @@ public class Equation implements LogicalFormula, GLogicalFormula {
      public void standardise_apart(Unifiable t, Unifier u, List<String> varnames) {
     	List<String> tvarnames = t.getVarNames();
     	List<String> myvarnames = getVarNames();
-    	ArrayList<String> replacednames = new ArrayList<String>();
-    	ArrayList<String> newnames = new ArrayList<String>();
-    	for (String s:myvarnames) {
-    		if (tvarnames.contains(s)) {
-    			if (!replacednames.contains(s)) {
-    				String s1 = DefaultAILStructure.generate_fresh(s, tvarnames, myvarnames, newnames, u);
-    				renameVar(s, s1);
-    				u.renameVar(s, s1);
-    			}
+    	FreshNames fresh = new FreshNames(tvarnames, myvarnames, u);
+    	for (String s: myvarnames) {
+    		if (fresh.clashes(s)) {
+    			fresh.rename(this, s, fresh.fresh(s));
     		}
     	}
  
@@ -24,7 +24,9 @@ package ail.syntax;
 
 import gov.nasa.jpf.annotation.FilterField;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import ail.util.Tuple;
@@ -74,9 +76,49 @@ public class EvaluationAndRuleBaseIterator implements Iterator<Unifier> {
 	@FilterField
 	Rule rule = null; // current rule
 	
+	/**
+	 * Tabled answers from the rules being replayed instead of using the rules.
+	 */
+	@FilterField
+	Iterator<PredicateTerm> answerIt = null;
+	
+	/**
+	 * Answers from the rules worked out while trying to table them, when they could not be 
+	 * tabled, and then the rules' solutions from where working them out stopped.
+	 */
+	@FilterField
+	Iterator<Unifier> foundIt = null;
+	@FilterField
+	Iterator<Unifier> untabledIt = null;
+	
 	// Name for error logging.
 	String logname = "ail.syntax.EvaluationAndRuleBaseIterator";
 	
+	/**
+	 * Whether answers derived from rules should be tabled.
+	 */
+	@FilterField
+	private static boolean tabling = false;
+	
+	/**
+	 * Turn tabling of the answers derived from rules on or off.  When on the answers to a query 
+	 * (up to renaming of its variables) are worked out once and then looked up until the beliefs 
+	 * used to derive them change.  Only answers which give ground values for the query's variables
+	 * are tabled.
+	 * @param b
+	 */
+	public static void setTabling(boolean b) {
+		tabling = b;
+	}
+	
+	/**
+	 * Are answers derived from rules being tabled?
+	 * @return
+	 */
+	public static boolean tabling() {
+		return tabling;
+	}
+	
 	/**
 	 * Constructor.
 	 * @param e
@@ -99,6 +141,130 @@ public class EvaluationAndRuleBaseIterator implements Iterator<Unifier> {
 		il = eb.getRelevantTuple(logical_term);
 		rl = rb.getRelevant((Predicate) logical_term);
 		varnames = vars;
+		if (tabling && rl != null) {
+			table();
+		}
+	}
+	
+	/**
+	 * Constructor for an iterator that only uses the rules.  Used when working out
+	 * the answers to table.
+	 * @param e
+	 * @param r
+	 * @param u
+	 * @param t
+	 * @param vars
+	 * @param it
+	 */
+	private EvaluationAndRuleBaseIterator(EvaluationBasewNames<PredicateTerm> e, RuleBase r, Unifier u, PredicateTerm t, List<String> vars, Iterator<Rule> it) {
+		eb = e;
+		rb = r;
+		un = u;
+		logical_term = t;
+		rl = it;
+		varnames = vars;
+	}
+	
+	/**
+	 * Look up the answers the rules give to the query, working them out and
+	 * storing them if necessary.  If this succeeds the rules will not be used
+	 * again by this iterator.
+	 */
+	private void table() {
+		if (logical_term.isVar() || ! (logical_term instanceof Predicate)) {
+			return;
+		}
+		List<BeliefBase> bases = new ArrayList<BeliefBase>();
+		String ebkey = ebKey(eb, bases);
+		if (ebkey == null) {
+			return;
+		}
+		
+		// The query in a form which is the same for all queries which are variants of each other.
+		PredicateTerm q = (PredicateTerm) logical_term.clone();
+		q.apply(un);
+		List<String> vars = new ArrayList<String>(new LinkedHashSet<String>(q.getVarNames()));
+		for (int i = 0; i < vars.size(); i++) {
+			q.renameVar(vars.get(i), "#" + i);
+		}
+		String key = ebkey + "|" + q.getClass().getName() + "|" + q.toString();
+		
+		RuleBase.Answers answers = rb.getAnswers(key);
+		if (answers != null && ! answers.from(bases)) {
+			answers = null;
+		}
+		if (answers == null) {
+			if (! rb.startTabling(key)) {
+				return;
+			}
+			long stamp = BeliefBase.now();
+			RecordingEvaluationBase recorder = new RecordingEvaluationBase(eb, bases);
+			Iterator<Unifier> solutions = new EvaluationAndRuleBaseIterator(recorder, rb, un, logical_term, varnames, rl);
+			List<PredicateTerm> rows = new ArrayList<PredicateTerm>();
+			List<Unifier> found = new ArrayList<Unifier>();
+			while (solutions.hasNext()) {
+				Unifier solution = solutions.next();
+				found.add(solution);
+				PredicateTerm answer = (PredicateTerm) logical_term.clone();
+				answer.apply(solution);
+				// Past MAX_ROWS the rules may well have no end of answers, so they are worked out 
+				// as they are needed instead.
+				if (! answer.isGround() || rows.size() >= RuleBase.MAX_ROWS) {
+					rows = null;
+					break;
+				}
+				rows.add(answer);
+			}
+			
+			answers = new RuleBase.Answers(stamp, bases, rows, new ArrayList<Tuple<BeliefBase, PredicateIndicator>>(recorder.deps));
+			rb.endTabling(key, answers);
+			if (rows == null) {
+				// Carry on with the solutions the rules give from where we stopped.
+				foundIt = found.iterator();
+				untabledIt = solutions;
+				rl = null;
+				return;
+			}
+		} else if (answers.rows == null) {
+			// The rules' answers could not be tabled last time, so just use the rules.
+			return;
+		}
+		
+		if (eb instanceof RecordingEvaluationBase) {
+			((RecordingEvaluationBase) eb).depend(answers.deps);
+		}
+		answerIt = answers.rows.iterator();
+		rl = null;
+	}
+	
+	/**
+	 * A description of the belief bases making up an evaluation base, which are added to bases.  
+	 * Returns null if the evaluation base contains anything other than belief bases.
+	 * @param e
+	 * @param bases
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private static String ebKey(EvaluationBasewNames<PredicateTerm> e, List<BeliefBase> bases) {
+		if (e instanceof RecordingEvaluationBase) {
+			return ebKey(((RecordingEvaluationBase) e).eb, bases);
+		} else if (e instanceof NamedEvaluationBase<?>) {
+			NamedEvaluationBase<PredicateTerm> n = (NamedEvaluationBase<PredicateTerm>) e;
+			if (n.eb instanceof BeliefBase) {
+				bases.add((BeliefBase) n.eb);
+				return n.name + "@" + System.identityHashCode(n.eb);
+			}
+		} else if (e instanceof MergeEvaluationBase<?>) {
+			MergeEvaluationBase<PredicateTerm> m = (MergeEvaluationBase<PredicateTerm>) e;
+			String k1 = ebKey(m.eb1, bases);
+			String k2 = ebKey(m.eb2, bases);
+			if (k1 != null && k2 != null) {
+				return k1 + "," + k2;
+			}
+		} else if (e instanceof TrivialEvaluationBase<?>) {
+			return "";
+		}
+		return null;
 	}
 	
           
@@ -151,12 +317,12 @@ public class EvaluationAndRuleBaseIterator implements Iterator<Unifier> {
 		// il is all possible Beliefs/messages/whatever that potentially unify with this GBelief
 		if (il != null) {
 			while (il.hasNext()) {
-				Unifier unC = (Unifier) un.clone();
+				Unifier unC = un.clone();
 				Tuple<PredicateTerm, String> t = il.next();
 				if (AJPFLogger.ltFine("ail.syntax.EvaluationAndRuleBaseIterator")) {
 					AJPFLogger.fine("ail.syntax.EvaluationAndRuleBaseIterator", "Checking unification of " + logical_term + " and " + t);
 				}		        					
-				PredicateTerm u = (PredicateTerm) t.getLeft();
+				PredicateTerm u = t.getLeft();
 				Unifiable h2 = logical_term.clone();
 				if (h2 instanceof EBCompare<?>) {
 					if (((EBCompare<PredicateTerm>) h2).unifieswith(u, unC, t.getRight())) {
@@ -177,10 +343,27 @@ public class EvaluationAndRuleBaseIterator implements Iterator<Unifier> {
 				 }
 			}
 		}
+		// Tabled answers from the rules come after those from the evaluation base.  Those
+		// which don't unify with the query are skipped.
+		while (answerIt != null && answerIt.hasNext()) {
+			Unifier unC = un.clone();
+			if (unC.unifies(logical_term.clone(), answerIt.next())) {
+				current = unC;
+				return;
+			}
+		}
+		if (foundIt != null && foundIt.hasNext()) {
+			current = foundIt.next();
+			return;
+		}
+		if (untabledIt != null && untabledIt.hasNext()) {
+			current = untabledIt.next();
+			return;
+		}
     		       		
 		if (rl != null) {
 			while (rl.hasNext()) {
-				Unifier unC = (Unifier) un.clone();
+				Unifier unC = un.clone();
 				rule = rl.next();
 				Rule ruleC = rule.clone();
 				Unifiable h = logical_term.clone();
@@ -213,5 +396,93 @@ public class EvaluationAndRuleBaseIterator implements Iterator<Unifier> {
 	 */
 	public void remove() {
 	}
+	
+	/**
+	 * An evaluation base which notes which beliefs are looked at in it, so that tabled answers
+	 * can be discarded when those beliefs change.
+	 * 
+	 * @author louiseadennis
+	 *
+	 */
+	static final class RecordingEvaluationBase implements EvaluationBasewNames<PredicateTerm> {
+		/**
+		 * The evaluation base being recorded.
+		 */
+		EvaluationBasewNames<PredicateTerm> eb;
+		/**
+		 * The belief bases within it.
+		 */
+		List<BeliefBase> bases;
+		/**
+		 * The beliefs looked at so far.
+		 */
+		List<Tuple<BeliefBase, PredicateIndicator>> deps = new ArrayList<Tuple<BeliefBase, PredicateIndicator>>();
+		
+		/**
+		 * Constructor.
+		 * @param e
+		 * @param b
+		 */
+		RecordingEvaluationBase(EvaluationBasewNames<PredicateTerm> e, List<BeliefBase> b) {
+			eb = e;
+			bases = b;
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see ail.syntax.EvaluationBase#getRelevant(ail.syntax.EBCompare)
+		 */
+		public Iterator<PredicateTerm> getRelevant(EBCompare<PredicateTerm> ga) {
+			record(ga);
+			return eb.getRelevant(ga);
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see ail.syntax.EvaluationBasewNames#getRelevantTuple(ail.syntax.EBCompare)
+		 */
+		public Iterator<Tuple<PredicateTerm, String>> getRelevantTuple(EBCompare<PredicateTerm> ga) {
+			record(ga);
+			return eb.getRelevantTuple(ga);
+		}
+		
+		/**
+		 * Note that beliefs relevant to ga have been looked at.
+		 * @param ga
+		 */
+		private void record(EBCompare<PredicateTerm> ga) {
+			PredicateIndicator pi = null;
+			if (ga instanceof PredicateTerm && ! ((PredicateTerm) ga).isVar()) {
+				pi = ((PredicateTerm) ga).getPredicateIndicator();
+			}
+			for (BeliefBase b: bases) {
+				depend(b, pi);
+			}
+		}
+		
+		/**
+		 * Note that the answers being worked out also depend on these beliefs.
+		 * @param ds
+		 */
+		void depend(List<Tuple<BeliefBase, PredicateIndicator>> ds) {
+			for (Tuple<BeliefBase, PredicateIndicator> d: ds) {
+				depend(d.getLeft(), d.getRight());
+			}
+		}
+		
+		/**
+		 * Add a dependency unless it is already known.
+		 * @param b
+		 * @param pi
+		 */
+		private void depend(BeliefBase b, PredicateIndicator pi) {
+			for (Tuple<BeliefBase, PredicateIndicator> d: deps) {
+				if (d.getLeft() == b && (d.getRight() == null ? pi == null : d.getRight().equals(pi))) {
+					return;
+				}
+			}
+			deps.add(new Tuple<BeliefBase, PredicateIndicator>(b, pi));
+		}
+	}
 
 }
@@ -0,0 +1,218 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+
+package ail.syntax;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates fresh variable names when standardising apart.  A fresh name for X is the first of
+ * X0, X1, ... that is not already in use, where the names in use are those of the two terms being 
+ * standardised apart, any fresh names already handed out and those of the variables in the
+ * unifier.  The same names are chosen as by checking each candidate against lists of these, but
+ * when there are many names they are kept in sets, and since the names in use only ever grow a 
+ * counter is kept for each name saying where to start looking next time.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class FreshNames {
+	/**
+	 * Below this many names it is quicker to search a list than to build a set.
+	 */
+	private static final int SMALL = 8;
+	
+	/**
+	 * The variable names of the thing we are standardising apart from, and our own.
+	 */
+	private List<String> theirnames, mynames;
+	/**
+	 * theirnames as a set, once we have needed it.
+	 */
+	private Set<String> theirs = null;
+	/**
+	 * theirnames and mynames, together with any fresh names handed out, once we have needed them.
+	 */
+	private Set<String> used = null;
+	/**
+	 * Fresh names handed out while there were too few names to be worth building used.
+	 */
+	private List<String> handedout = null;
+	/**
+	 * The names of the variables in the unifier, if it is big enough to be worth keeping them.
+	 */
+	private Set<String> unified = null;
+	/**
+	 * The unifier, or null if there is none.
+	 */
+	private Unifier u;
+	/**
+	 * The next suffix to try for each name, once we have needed it.
+	 */
+	private Map<String, Integer> next = null;
+	/**
+	 * How many suffixes to try before giving up.
+	 */
+	private int limit;
+	
+	/**
+	 * Constructor.  Nothing is worked out until it is needed, since most of the time nothing
+	 * needs renaming.
+	 * @param theirnames the variable names of the thing we are standardising apart from.
+	 * @param mynames our own variable names.
+	 * @param u the unifier whose variables should also be avoided, or null.
+	 */
+	public FreshNames(List<String> theirnames, List<String> mynames, Unifier u) {
+		this.theirnames = theirnames;
+		this.mynames = mynames;
+		this.u = u;
+		limit = theirnames.size() + mynames.size();
+		if (u != null && u.size() > SMALL) {
+			unified = new HashSet<String>(u.getVarNames());
+		}
+	}
+	
+	/**
+	 * Is s one of the names of the thing we are standardising apart from?
+	 * @param s
+	 * @return
+	 */
+	public boolean clashes(String s) {
+		if (theirnames.size() <= SMALL) {
+			return theirnames.contains(s);
+		}
+		if (theirs == null) {
+			theirs = new HashSet<String>(theirnames);
+		}
+		return theirs.contains(s);
+	}
+	
+	/**
+	 * Is s the name of a variable in the unifier?
+	 * @param s
+	 * @return
+	 */
+	public boolean inUnifier(String s) {
+		if (unified != null) {
+			return unified.contains(s);
+		}
+		return u != null && u.containsVarName(s);
+	}
+	
+	/**
+	 * A fresh name for s.  If every suffix up to the number of names in use is taken then, as
+	 * before, the last one tried is returned.
+	 * @param s
+	 * @return
+	 */
+	public String fresh(String s) {
+		if (used == null && limit > 2 * SMALL) {
+			used = new HashSet<String>(theirnames);
+			used.addAll(mynames);
+			if (handedout != null) {
+				used.addAll(handedout);
+			}
+			next = new HashMap<String, Integer>();
+		}
+		Integer start = next != null ? next.get(s) : null;
+		int i = start == null ? 0 : start;
+		while (i < limit && taken(s + i)) {
+			i++;
+		}
+		if (next != null) {
+			next.put(s, i);
+		}
+		if (i < limit) {
+			return s + i;
+		}
+		return limit == 0 ? s : s + (limit - 1);
+	}
+	
+	/**
+	 * Is the name s in use?
+	 * @param s
+	 * @return
+	 */
+	private boolean taken(String s) {
+		if (used != null) {
+			return used.contains(s) || inUnifier(s);
+		}
+		return theirnames.contains(s) || mynames.contains(s) || (handedout != null && handedout.contains(s)) || inUnifier(s);
+	}
+	
+	/**
+	 * Note that s has been handed out as a fresh name so should not be handed out again.
+	 * @param s
+	 */
+	public void use(String s) {
+		if (used != null) {
+			used.add(s);
+		} else {
+			if (handedout == null) {
+				handedout = new ArrayList<String>();
+			}
+			handedout.add(s);
+		}
+		limit++;
+	}
+	
+	/**
+	 * Rename oldname to newname in both t and the unifier.
+	 * @param t
+	 * @param oldname
+	 * @param newname
+	 */
+	public void rename(Unifiable t, String oldname, String newname) {
+		t.renameVar(oldname, newname);
+		renameInUnifier(oldname, newname);
+	}
+	
+	/**
+	 * Rename oldname to newname in the unifier.  oldname is one of our own names so is still 
+	 * counted as in use, which means the names in use only ever grow.
+	 * @param oldname
+	 * @param newname
+	 */
+	public void renameInUnifier(String oldname, String newname) {
+		u.renameVar(oldname, newname);
+		if (unified != null && unified.remove(oldname)) {
+			unified.add(newname);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "fresh names for " + mynames + " avoiding " + theirnames + " and " + u;
+	}
+
+}
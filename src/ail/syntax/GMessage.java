@@ -271,15 +271,10 @@ public class GMessage implements GuardAtom<Message> {
 	   	List<String> tvarnames = t.getVarNames();
     	List<String> myvarnames = getVarNames();
     	tvarnames.addAll(varnames);
-    	ArrayList<String> replacednames = new ArrayList<String>();
-    	ArrayList<String> newnames = new ArrayList<String>();
-    	for (String s:myvarnames) {
-    		if (tvarnames.contains(s)) {
-    			if (!replacednames.contains(s)) {
-    				String s1 = DefaultAILStructure.generate_fresh(s, tvarnames, myvarnames, newnames, u);
-    				renameVar(s, s1);
-    				u.renameVar(s, s1);
-    			}
+    	FreshNames fresh = new FreshNames(tvarnames, myvarnames, u);
+    	for (String s: myvarnames) {
+    		if (fresh.clashes(s)) {
+    			fresh.rename(this, s, fresh.fresh(s));
     		}
     	}
 	}
@@ -33,6 +33,7 @@ import java.util.List;
 
 import ail.semantics.AILAgent;
 import ajpf.util.AJPFLogger;
+import gov.nasa.jpf.annotation.FilterField;
 
 /**
  * AIL Guards.  This is really just a wrapper on top of LogicalExpression providing a few extra methods that are
@@ -62,6 +63,18 @@ public class Guard implements GLogicalFormula {
 	 * The operator.
 	 */
 	private  GLogicalOp      op = GLogicalOp.none;
+	
+	/**
+	 * Whether guards should be compiled when plans are loaded.
+	 */
+	@FilterField
+	private static boolean compiling = false;
+	
+	/**
+	 * The compiled form of this guard, if it has one.  Shared with its copies.
+	 */
+	@FilterField
+	private CompiledGuard compiled;
 
 	
 	/**
@@ -113,6 +126,75 @@ public class Guard implements GLogicalFormula {
 		rhs = r;
 	}
 	
+	/**
+	 * Turn the compilation of guards on or off.
+	 * @param b
+	 */
+	public static void setCompiling(boolean b) {
+		compiling = b;
+	}
+	
+	/**
+	 * Compile this guard, if guards are being compiled, so that it is evaluated without
+	 * interpreting the formula.  Guards which are not compiled are interpreted.
+	 */
+	public void compile() {
+		if (compiling && compiled == null) {
+			compiled = CompiledGuard.compile(this);
+		}
+	}
+	
+	/**
+	 * Put the conjuncts of this guard into conjuncts, starting at i, with whether each is
+	 * negated.  If conjuncts is null just count them.
+	 * @param conjuncts
+	 * @param negated
+	 * @param i
+	 * @return the position after the last conjunct, or -1 if this is not a conjunction 
+	 *         or does not fit.
+	 */
+	int flatten(GLogicalFormula[] conjuncts, boolean[] negated, int i) {
+		switch (op) {
+		case none:
+			if (rhs == null) {
+				return i;
+			}
+			return flatten(rhs, false, conjuncts, negated, i);
+		case not:
+			if (rhs == null) {
+				return -1;
+			}
+			return flatten(rhs, true, conjuncts, negated, i);
+		case and:
+			if (lhs == null || rhs == null) {
+				return -1;
+			}
+			i = flatten(lhs, false, conjuncts, negated, i);
+			if (i < 0) {
+				return -1;
+			}
+			return flatten(rhs, false, conjuncts, negated, i);
+		}
+		return -1;
+	}
+	
+	/**
+	 * Helper for flatten.  A negated formula is a single conjunct, as is anything other than a guard.
+	 */
+	private static int flatten(GLogicalFormula f, boolean negate, GLogicalFormula[] conjuncts, boolean[] negated, int i) {
+		if (f instanceof Guard && ! negate) {
+			return ((Guard) f).flatten(conjuncts, negated, i);
+		}
+		if (conjuncts != null) {
+			if (i >= conjuncts.length) {
+				return -1;
+			}
+			conjuncts[i] = f;
+			negated[i] = negate;
+		}
+		return i + 1;
+	}
+	
 	/**
 	 * Getter for the operator.
 	 * @return
@@ -204,6 +286,7 @@ public class Guard implements GLogicalFormula {
 	 * @return
 	 */
 	public boolean add(GuardAtom<? extends Unifiable> gb, boolean b) {
+		compiled = null;
   
 		if (isTrivial()) {
 			if (b) {
@@ -273,13 +356,16 @@ public class Guard implements GLogicalFormula {
 	 * @see java.lang.Object#clone()
 	 */
 	public Guard clone() {
+		Guard g;
 		if (rhs == null) {
-			return new Guard();
+			g = new Guard();
 		} else if (lhs == null) {
-			return new Guard(op, rhs.clone());
+			g = new Guard(op, rhs.clone());
 		} else {
-			return new Guard(lhs.clone(), op, rhs.clone());
+			g = new Guard(lhs.clone(), op, rhs.clone());
 		}
+		g.compiled = compiled;
+		return g;
 	}
 	    
 	/**
@@ -401,6 +487,12 @@ public class Guard implements GLogicalFormula {
 	 * @return An iterator of unifiers that the agent believes this guard.
 	 */
 	public Iterator<Unifier> logicalConsequence(final AILAgent ag, final Unifier un, final List<String> varnames) {
+		if (compiled != null) {
+			Iterator<Unifier> ui = compiled.logicalConsequence(this, ag, un, varnames);
+			if (ui != null) {
+				return ui;
+			}
+		}
 	       try {
 		        final Iterator<Unifier> ileft;
 		        switch (op) {
@@ -552,17 +644,12 @@ public class Guard implements GLogicalFormula {
     	List<String> tvarnames = t.getVarNames();
     	List<String> myvarnames = getVarNames();
     	tvarnames.addAll(varnames);
-    	ArrayList<String> replacednames = new ArrayList<String>();
-    	ArrayList<String> newnames = new ArrayList<String>();
-    	for (String s:myvarnames) {
-    		if (tvarnames.contains(s)) {
-    			if (!replacednames.contains(s)) {
-    				String s1 = DefaultAILStructure.generate_fresh(s, tvarnames, myvarnames, newnames, u);
-    				renameVar(s, s1);
-    				u.renameVar(s, s1);
-    			}
+    	FreshNames fresh = new FreshNames(tvarnames, myvarnames, u);
+    	for (String s: myvarnames) {
+    		if (fresh.clashes(s)) {
+    			fresh.rename(this, s, fresh.fresh(s));
     		}
-    	}		
+    	}
 	}
 
 	/*
@@ -585,6 +672,9 @@ public class Guard implements GLogicalFormula {
 	 * @see ail.syntax.Unifiable#renameVar(java.lang.String, java.lang.String)
 	 */
 	public void renameVar(String oldname, String newname) {
+		if (compiled != null) {
+			compiled = compiled.renamed(oldname, newname);
+		}
 		if (lhs != null) {
 			getLHS().renameVar(oldname, newname);
 		}
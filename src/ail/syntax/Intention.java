@@ -216,6 +216,14 @@ public class Intention implements Comparable<Intention>{
     	return suspended;
     }
     
+    /**
+     * The condition the intention is waiting for, if any.
+     * @return
+     */
+    public Literal getSuspendedFor() {
+    	return suspendedfor;
+    }
+    
     /**
      * Unsuspend the intention.
      *
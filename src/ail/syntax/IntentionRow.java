@@ -84,7 +84,7 @@ public class IntentionRow {
 		}
 		
 		for (Unifier u: us) {
-			unif.add(u.clone());
+			unif.add(u.snapshot());
 		}
 		
 		guardstack.trimToSize();
@@ -109,7 +109,9 @@ public class IntentionRow {
 	
 	
 	/**
-	 * Returns a stack of identical unifiers of the requested size.
+	 * Returns a stack of identical unifiers of the requested size.  These are snapshots
+	 * so, if unifiers are sharing bindings, they share one set of bindings until one of 
+	 * them is changed.
 	 * 
 	 * @param theta the unifier to be duplicated.
 	 * @param m the size of the desired stack.
@@ -119,7 +121,7 @@ public class IntentionRow {
 		ArrayList<Unifier> us = new ArrayList<Unifier>();
 		
 		for (int n = 0; n < m; n++) {
-			us.add(theta.clone());
+			us.add(theta.snapshot());
 		}
 		
 		us.trimToSize();
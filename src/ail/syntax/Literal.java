@@ -138,6 +138,9 @@ public class Literal extends PredicatewAnnotation {
      * @see ail.syntax.DefaultTerm#compareTo(ail.syntax.Term)
      */
     public int compareTo(Term t) {
+        if (t == this) {
+            return 0;
+        }
         if (t.isLiteral()) {
             Literal tl = (Literal)t;
             if (!negated() && tl.negated()) {
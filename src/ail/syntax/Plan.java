@@ -474,24 +474,21 @@ public class Plan implements Cloneable, Comparable<Plan>, Unifiable {
     	for (Deed d: getBody()) {
     		myvarnames.addAll(d.getVarNames());
     	}
-    	ArrayList<String> replacednames = new ArrayList<String>();
-    	ArrayList<String> newnames = new ArrayList<String>();
-    	for (String s:myvarnames) {
-    		if (tvarnames.contains(s)) {
-    			if (!replacednames.contains(s)) {
-    				String s1 = DefaultAILStructure.generate_fresh(s, tvarnames, myvarnames, newnames, u);
-    				getTriggerEvent().renameVar(s, s1);
-    			   	for (Guard g: getContext()) {
-    		    		g.renameVar(s, s1);
-    		    	}
-    			   	for (Guard g: getContext()) {
-    		    		g.renameVar(s, s1);
-    		    	}
-    			   	for (Deed d: getBody()) {
-    					d.renameVar(s, s1);
-    				}
-    				u.renameVar(s, s1);
+    	FreshNames fresh = new FreshNames(tvarnames, myvarnames, u);
+    	for (String s: myvarnames) {
+    		if (fresh.clashes(s)) {
+    			String s1 = fresh.fresh(s);
+    			getTriggerEvent().renameVar(s, s1);
+    		   	for (Guard g: getContext()) {
+    	    		g.renameVar(s, s1);
+    	    	}
+    		   	for (Guard g: getContext()) {
+    	    		g.renameVar(s, s1);
+    	    	}
+    		   	for (Deed d: getBody()) {
+    				d.renameVar(s, s1);
     			}
+    			fresh.renameInUnifier(s, s1);
     		}
     	}
  
@@ -511,21 +508,18 @@ public class Plan implements Cloneable, Comparable<Plan>, Unifiable {
     	for (Deed d: getBody()) {
     		myvarnames.addAll(d.getVarNames());
     	}
-    	ArrayList<String> replacednames = new ArrayList<String>();
-    	ArrayList<String> newnames = new ArrayList<String>();
-    	for (String s:myvarnames) {
-    		if (tvarnames.contains(s)) {
-    			if (!replacednames.contains(s)) {
-    				String s1 = DefaultAILStructure.generate_fresh(s, tvarnames, myvarnames, newnames, u);
-    				getTriggerEvent().renameVar(s, s1);
-    			   	for (Guard g: getContext()) {
-    		    		g.renameVar(s, s1);
-    		    	}
-     			   	for (Deed d: getBody()) {
-    					d.renameVar(s, s1);
-    				}
-    				u.renameVar(s, s1);
+    	FreshNames fresh = new FreshNames(tvarnames, myvarnames, u);
+    	for (String s: myvarnames) {
+    		if (fresh.clashes(s)) {
+    			String s1 = fresh.fresh(s);
+    			getTriggerEvent().renameVar(s, s1);
+    		   	for (Guard g: getContext()) {
+    	    		g.renameVar(s, s1);
+    	    	}
+     		   	for (Deed d: getBody()) {
+    				d.renameVar(s, s1);
     			}
+    			fresh.renameInUnifier(s, s1);
     		}
     	}
  
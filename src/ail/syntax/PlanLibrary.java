@@ -33,6 +33,8 @@ import ail.util.MergeIterator;
 import ajpf.util.VerifyMap;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Collection;
@@ -73,6 +75,141 @@ public class PlanLibrary implements EvaluationBase<Plan>{
 	@FilterField
 	protected String libname = AILAgent.AILdefaultPLname;
 	
+	/**
+	 * Whether plans should be indexed by the structure of their trigger events.
+	 */
+	@FilterField
+	private static boolean triggerIndexing = false;
+	
+	/**
+	 * Whether candidate plans should only be copied once their trigger might match the current event.
+	 */
+	@FilterField
+	private static boolean lazyInstantiation = false;
+	
+	/**
+	 * The number of plans returned by trigger indexes for consideration.
+	 */
+	@FilterField
+	protected long indexHits = 0;
+	
+	/**
+	 * The number of plans trigger indexes have ruled out without considering them.
+	 */
+	@FilterField
+	protected long indexMisses = 0;
+	
+	/**
+	 * Turn indexing of plans by the structure of their trigger events on or off.  This
+	 * only affects plan libraries constructed afterwards.
+	 * @param b
+	 */
+	public static void setTriggerIndexing(boolean b) {
+		triggerIndexing = b;
+	}
+	
+	/**
+	 * Turn lazy instantiation of candidate plans on or off.  When on a plan is only copied and 
+	 * standardised apart once a cheap structural check shows its trigger could unify with the
+	 * current event, and that copy is used for the first applicable plan it produces.
+	 * @param b
+	 */
+	public static void setLazyInstantiation(boolean b) {
+		lazyInstantiation = b;
+	}
+	
+	/**
+	 * The number of plans returned by trigger indexes for consideration.
+	 * @return
+	 */
+	public long getIndexHits() {
+		return indexHits;
+	}
+	
+	/**
+	 * The number of plans trigger indexes have ruled out without considering them.
+	 * @return
+	 */
+	public long getIndexMisses() {
+		return indexMisses;
+	}
+	
+	/**
+	 * A quick check, which does not bind any variables, of whether an event might unify with
+	 * a plan's trigger.  This may succeed when unification would fail but will never fail 
+	 * when unification would succeed.
+	 * @param e
+	 * @param trigger
+	 * @return
+	 */
+	static boolean mayTrigger(Event e, Event trigger) {
+		if (! e.sameType(trigger)) {
+			return false;
+		}
+		if (e.isStart() || ! (e.getContent() instanceof Term) || ! (trigger.getContent() instanceof Term)) {
+			return true;
+		}
+		return mayUnify((Term) e.getContent(), (Term) trigger.getContent());
+	}
+	
+	/**
+	 * A quick check of whether two terms might unify.  Variables, whatever their value in any
+	 * unifier, are assumed to match anything.
+	 * @param t1
+	 * @param t2
+	 * @return
+	 */
+	static boolean mayUnify(Term t1, Term t2) {
+		while (t1 instanceof VarTerm && ((VarTerm) t1).hasValue()) {
+			t1 = ((VarTerm) t1).getValue();
+		}
+		while (t2 instanceof VarTerm && ((VarTerm) t2).hasValue()) {
+			t2 = ((VarTerm) t2).getValue();
+		}
+		if (wildcard(t1) || wildcard(t2)) {
+			return true;
+		}
+		if (t1.isNumeric() || t2.isNumeric()) {
+			return t1.isNumeric() && t2.isNumeric() && ((NumberTerm) t1).solve() == ((NumberTerm) t2).solve();
+		}
+		if (t1.isString() || t2.isString()) {
+			return t1.isString() && t2.isString() && ((StringTerm) t1).getString().equals(((StringTerm) t2).getString());
+		}
+		if (t1.isPredicate() && t2.isPredicate()) {
+			Predicate p1 = (Predicate) t1;
+			Predicate p2 = (Predicate) t2;
+			if (p1 instanceof Goal && p2 instanceof Goal && ((Goal) p1).getGoalType() != ((Goal) p2).getGoalType()) {
+				return false;
+			}
+			if (p1.getTermsSize() != p2.getTermsSize() || ! p1.getFunctor().equals(p2.getFunctor())) {
+				return false;
+			}
+			for (int i = 0; i < p1.getTermsSize(); i++) {
+				if (! mayUnify(p1.getTerm(i), p2.getTerm(i))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Terms whose structure mayUnify does not examine.
+	 * @param t
+	 * @return
+	 */
+	private static boolean wildcard(Term t) {
+		if (t.isVar() || t.isArithExpr() || t.isList() || t instanceof VarsCluster) {
+			return true;
+		}
+		// Goals with variable names
+		if (t.isPredicate()) {
+			String f = ((Predicate) t).getFunctor();
+			return f.length() > 0 && Character.isUpperCase(f.charAt(0));
+		}
+		return false;
+	}
+	
 	
 	/**
 	 * Constructor.
@@ -97,6 +234,9 @@ public class PlanLibrary implements EvaluationBase<Plan>{
     	p.setID(numplans);
     	p.setLibID(libname);
     	numplans++;
+    	for (Guard g: p.getContext()) {
+    		g.compile();
+    	}
 
         if (trigger.isVar()) {
         	varPlans.add(p);
@@ -106,7 +246,11 @@ public class PlanLibrary implements EvaluationBase<Plan>{
     		if (lc != null) {
     			lc.add(p);
     	    } else {
-    	    	lc = new PlanList();
+    	    	if (triggerIndexing) {
+    	    		lc = new PlanTree();
+    	    	} else {
+    	    		lc = new PlanList();
+    	    	}
     	    	lc.add(p);
     	    	relPlans.put(pi, lc);
     	    }      		
@@ -318,6 +462,16 @@ public class PlanLibrary implements EvaluationBase<Plan>{
     	 * @see ail.syntax.PlanLibrary.PlanSet#get(ail.semantics.AILAgent)
     	 */
     	public Iterator<ApplicablePlan> get(final AILAgent a) {
+    		return applicablePlans(plans, a);
+    	}
+    	
+    	/**
+    	 * Return an iterator over the applicable plans that can be generated from candidates for the current agent a.
+    	 * @param candidates
+    	 * @param a
+    	 * @return
+    	 */
+    	protected Iterator<ApplicablePlan> applicablePlans(final List<Plan> candidates, final AILAgent a) {
     		return new Iterator<ApplicablePlan> () {
     			ApplicablePlan current = null;
     			/**
@@ -365,8 +519,12 @@ public class PlanLibrary implements EvaluationBase<Plan>{
     			 * This is the method that does all the work of generating the applicable plans for a particular agent.
     			 */
     			public void get() {
-    				if (i < size()) {
-    					Plan cp = (Plan) plans.get(i).clone();
+    				if (i < candidates.size()) {
+    					if (lazyInstantiation) {
+    						getLazily();
+    						return;
+    					}
+    					Plan cp = (Plan) candidates.get(i).clone();
     					cp.standardise_apart(intention.hdU(), new Unifier());
     					int prefixsize = cp.getPrefix().size();
     					int appplanlength = prefixsize;
@@ -414,6 +572,73 @@ public class PlanLibrary implements EvaluationBase<Plan>{
     					current = null;
     				}
     			}
+    			
+    			/**
+    			 * The copy of plan i being used to generate applicable plans when instantiating lazily.
+    			 */
+    			Plan instance = null;
+    			/**
+    			 * The length of the applicable plans generated from instance.
+    			 */
+    			int instancelength = 0;
+    			/**
+    			 * Whether instance has already been given to an applicable plan.
+    			 */
+    			boolean instanceused = false;
+    			
+    			/**
+    			 * As get but plans whose trigger can not match the current event are skipped without
+    			 * being copied, and the copy made to check a plan is kept for its first applicable plan.
+    			 */
+    			private void getLazily() {
+    				while (i < candidates.size()) {
+    					if (instance == null) {
+    						Plan p = candidates.get(i);
+    						int prefixsize = p.getPrefix().size();
+    						boolean plan_is_applicable = false;
+    						
+    						if (prefixsize > 0) {
+    							if (mayTrigger(intention.hdE(), p.getTriggerEvent())) {
+    								Plan cp = (Plan) p.clone();
+    								cp.standardise_apart(intention.hdU(), new Unifier());
+    								if (a.goalEntails(intention.hdE(), cp, intention.hdU())) {
+    									instance = cp;
+    									instancelength = prefixsize;
+    									plan_is_applicable = true;
+    								}
+    							}
+    						} else if (! intention.empty() || p.getTriggerEvent().getContent() instanceof VarTerm) {
+    							instance = (Plan) p.clone();
+    							instance.standardise_apart(intention.hdU(), new Unifier());
+    							instancelength = 0;
+    							plan_is_applicable = true;
+    						}
+    						
+    						if (plan_is_applicable) {
+    							iun = a.believes(instance.getContext().get(instance.getContext().size() - 1), intention.hdU());
+    						}
+    					}
+    					
+    					if (iun != null && iun.hasNext()) {
+    						// The first applicable plan takes instance, the others need copies of their own.
+    						Plan cp = instance;
+    						if (instanceused) {
+    							cp = (Plan) candidates.get(i).clone();
+    							cp.standardise_apart(intention.hdU(), new Unifier());
+    						}
+    						instanceused = true;
+    						current = new ApplicablePlan(cp.getTriggerEvent(), cp.getBody(), cp.getContext(), instancelength, iun.next(), cp.getID(), cp.getLibID());
+    						return;
+    					}
+    					
+    					// If we've exhausted all possibilities for plan i then we try the next plan.
+    					iun = null;
+    					instance = null;
+    					instanceused = false;
+    					i++;
+    				}
+    				current = null;
+    			}
     		};
 
     	}
@@ -427,6 +652,282 @@ public class PlanLibrary implements EvaluationBase<Plan>{
 		}
     }
     
+    /**
+     * An index which arranges plans in a discrimination tree built over the goal type 
+     * of their trigger event and the structure of its arguments.  Only those plans whose
+     * trigger could unify with the event of the current intention are considered when
+     * generating applicable plans.  All plans in the tree are assumed to share a predicate indicator.
+     * @author louiseadennis
+     *
+     */
+    protected class PlanTree extends PlanList {
+    	/**
+    	 * The symbol used for variables (and anything else which could match an arbitrary term).
+    	 */
+    	private static final String VAR = "*";
+    	
+    	/**
+    	 * The root of the tree.
+    	 */
+    	TreeNode root = new TreeNode(0);
+    	
+    	/**
+    	 * Plans with no prefix do not check their trigger so are always considered.
+    	 */
+    	ArrayList<Plan> untriggered = new ArrayList<Plan>();
+    	
+    	/*
+    	 * (non-Javadoc)
+    	 * @see ail.syntax.PlanLibrary.PlanList#add(ail.syntax.Plan)
+    	 */
+    	public void add(Plan p) {
+    		super.add(p);
+    		insert(p);
+    	}
+    	
+    	/*
+    	 * (non-Javadoc)
+    	 * @see ail.syntax.PlanLibrary.PlanList#addAll(java.util.Collection)
+    	 */
+    	public void addAll(Collection<Plan> ps) {
+    		for (Plan p: ps) {
+    			add(p);
+    		}
+    	}
+    	
+    	/*
+    	 * (non-Javadoc)
+    	 * @see ail.syntax.PlanLibrary.PlanList#remove(ail.syntax.Plan)
+    	 */
+    	public void remove(Plan p) {
+    		super.remove(p);
+    		root = new TreeNode(0);
+    		untriggered.clear();
+    		for (Plan q: plans) {
+    			insert(q);
+    		}
+    	}
+    	
+    	/*
+    	 * (non-Javadoc)
+    	 * @see ail.syntax.PlanLibrary.PlanList#get(ail.semantics.AILAgent)
+    	 */
+    	public Iterator<ApplicablePlan> get(final AILAgent a) {
+    		Intention intention = a.getIntention();
+    		if (intention == null || intention.empty()) {
+    			return super.get(a);
+    		}
+    		
+    		ArrayList<String> path = new ArrayList<String>();
+    		ArrayList<Integer> arities = new ArrayList<Integer>();
+    		if (! flatten(intention.hdE(), path, arities)) {
+    			return super.get(a);
+    		}
+    		
+    		IdentityHashMap<Plan, Plan> matches = new IdentityHashMap<Plan, Plan>();
+    		for (Plan p: untriggered) {
+    			matches.put(p, p);
+    		}
+    		retrieve(root, 0, path, arities, matches);
+    		
+    		// Keep the plans in the order they appear in the library.
+    		ArrayList<Plan> candidates = new ArrayList<Plan>();
+    		for (Plan p: plans) {
+    			if (matches.containsKey(p)) {
+    				candidates.add(p);
+    			}
+    		}
+    		indexHits += candidates.size();
+    		indexMisses += plans.size() - candidates.size();
+    		
+    		return applicablePlans(candidates, a);
+    	}
+    	
+    	/**
+    	 * Add a plan to the tree.
+    	 * @param p
+    	 */
+    	private void insert(Plan p) {
+    		ArrayList<String> path = new ArrayList<String>();
+    		ArrayList<Integer> arities = new ArrayList<Integer>();
+    		if (p.getPrefix().isEmpty() || ! flatten(p.getTriggerEvent(), path, arities)) {
+    			untriggered.add(p);
+    			return;
+    		}
+    		
+    		TreeNode node = root;
+    		for (int i = 0; i < path.size(); i++) {
+    			node = node.child(path.get(i), arities.get(i));
+    		}
+    		node.plans.add(p);
+    	}
+    	
+    	/**
+    	 * Convert an event into the sequence of symbols used to navigate the tree.
+    	 * Returns false if the event's content can not be indexed.
+    	 * @param e
+    	 * @param path
+    	 * @param arities
+    	 * @return
+    	 */
+    	private boolean flatten(Event e, ArrayList<String> path, ArrayList<Integer> arities) {
+    		Unifiable content = e.getContent();
+    		if (! (content instanceof Predicate) || ((Predicate) content).isVar()) {
+    			return false;
+    		}
+    		
+    		Predicate c = (Predicate) content;
+    		if (c instanceof Goal) {
+    			path.add("!" + ((Goal) c).getGoalType());
+    		} else {
+    			path.add("b");
+    		}
+    		arities.add(0);
+    		for (int i = 0; i < c.getTermsSize(); i++) {
+    			flatten(c.getTerm(i), path, arities);
+    		}
+    		return true;
+    	}
+    	
+    	/**
+    	 * Add a term to the sequence of symbols in pre-order.
+    	 * @param t
+    	 * @param path
+    	 * @param arities
+    	 */
+    	private void flatten(Term t, ArrayList<String> path, ArrayList<Integer> arities) {
+    		while (t instanceof VarTerm && ((VarTerm) t).hasValue()) {
+    			t = ((VarTerm) t).getValue();
+    		}
+    		String key = BeliefBase.indexKey(t);
+    		if (key == null) {
+    			path.add(VAR);
+    			arities.add(0);
+    		} else if (t.isPredicate()) {
+    			Predicate p = (Predicate) t;
+    			path.add(key);
+    			arities.add(p.getTermsSize());
+    			for (int i = 0; i < p.getTermsSize(); i++) {
+    				flatten(p.getTerm(i), path, arities);
+    			}
+    		} else {
+    			path.add(key);
+    			arities.add(0);
+    		}
+    	}
+    	
+    	/**
+    	 * Collect all plans in the tree below node which might match the query path from position i.
+    	 * @param node
+    	 * @param i
+    	 * @param path
+    	 * @param arities
+    	 * @param matches
+    	 */
+    	private void retrieve(TreeNode node, int i, ArrayList<String> path, ArrayList<Integer> arities, IdentityHashMap<Plan, Plan> matches) {
+    		if (i == path.size()) {
+    			for (Plan p: node.plans) {
+    				matches.put(p, p);
+    			}
+    			return;
+    		}
+    		
+    		String symbol = path.get(i);
+    		if (symbol.equals(VAR)) {
+    			// A variable in the query matches any subterm in the tree.
+    			ArrayList<TreeNode> ends = new ArrayList<TreeNode>();
+    			skip(node, 1, ends);
+    			for (TreeNode n: ends) {
+    				retrieve(n, i + 1, path, arities, matches);
+    			}
+    		} else {
+    			TreeNode child = node.children.get(symbol);
+    			if (child != null) {
+    				retrieve(child, i + 1, path, arities, matches);
+    			}
+    			// A variable in the tree matches any subterm in the query.
+    			TreeNode var = node.children.get(VAR);
+    			if (var != null) {
+    				retrieve(var, skip(i, arities), path, arities, matches);
+    			}
+    		}
+    	}
+    	
+    	/**
+    	 * Collect the nodes reached by skipping n complete subterms in the tree.
+    	 * @param node
+    	 * @param n
+    	 * @param ends
+    	 */
+    	private void skip(TreeNode node, int n, ArrayList<TreeNode> ends) {
+    		if (n == 0) {
+    			ends.add(node);
+    			return;
+    		}
+    		for (TreeNode child: node.children.values()) {
+    			skip(child, n - 1 + child.arity, ends);
+    		}
+    	}
+    	
+    	/**
+    	 * The position in the query path after the subterm starting at i.
+    	 * @param i
+    	 * @param arities
+    	 * @return
+    	 */
+    	private int skip(int i, ArrayList<Integer> arities) {
+    		int remaining = 1;
+    		while (remaining > 0) {
+    			remaining = remaining - 1 + arities.get(i);
+    			i++;
+    		}
+    		return i;
+    	}
+    }
+    
+    /**
+     * A node in a PlanTree.
+     * @author louiseadennis
+     *
+     */
+    protected static class TreeNode {
+    	/**
+    	 * The arity of the symbol that leads to this node.
+    	 */
+    	int arity;
+    	/**
+    	 * Child nodes indexed by symbol.
+    	 */
+    	HashMap<String, TreeNode> children = new HashMap<String, TreeNode>();
+    	/**
+    	 * The plans whose triggers end at this node.
+    	 */
+    	ArrayList<Plan> plans = new ArrayList<Plan>();
+    	
+    	/**
+    	 * Constructor.
+    	 * @param a
+    	 */
+    	TreeNode(int a) {
+    		arity = a;
+    	}
+    	
+    	/**
+    	 * Get the child for this symbol, creating it if necessary.
+    	 * @param symbol
+    	 * @param a
+    	 * @return
+    	 */
+    	TreeNode child(String symbol, int a) {
+    		TreeNode c = children.get(symbol);
+    		if (c == null) {
+    			c = new TreeNode(a);
+    			children.put(symbol, c);
+    		}
+    		return c;
+    	}
+    }
+    
     
     /**
      * getPlansContainingCap returns an iterator of all the plans in the library that contain
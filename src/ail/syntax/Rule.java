@@ -28,8 +28,10 @@
 package ail.syntax;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Iterator;
+import java.util.Set;
 
 /**
  * A rule is a Literal (head) with an optional body, as in "a :- b &amp; c".
@@ -174,15 +176,14 @@ public class Rule implements LogicalFormula {
     	List<String> tvarnames = t.getVarNames();
     	tvarnames.addAll(topvarnames);
     	List<String> myvarnames = getVarNames();
-    	ArrayList<String> replacednames = new ArrayList<String>();
-    	ArrayList<String> newnames = new ArrayList<String>();
-    	for (String s:myvarnames) {
-    		if (tvarnames.contains(s) || u.containsVarName(s)) {
-    			if (!replacednames.contains(s)) {
-    				String s1 = DefaultAILStructure.generate_fresh(s, tvarnames, myvarnames, newnames, u);
+    	FreshNames fresh = new FreshNames(tvarnames, myvarnames, u);
+    	Set<String> replacednames = new HashSet<String>();
+    	for (String s: myvarnames) {
+    		if (fresh.clashes(s) || fresh.inUnifier(s)) {
+    			if (replacednames.add(s)) {
+    				String s1 = fresh.fresh(s);
     				renameVar(s, s1);
-    				replacednames.add(s);
-    				newnames.add(s1);
+    				fresh.use(s1);
     			}
     		}
     	}
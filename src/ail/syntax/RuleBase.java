@@ -29,11 +29,14 @@ package ail.syntax;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import ajpf.util.VerifyMap;
+import ail.util.Tuple;
 
 //import gov.nasa.jpf.jvm.abstraction.filter.FilterField;
 import gov.nasa.jpf.annotation.FilterField;
@@ -60,6 +63,30 @@ public class RuleBase implements Iterable<Rule> {
     @FilterField
     private int size = 0;
 
+    /**
+     * Answers derived from the rules, keyed on the form of the query.  Only used when
+     * rule answers are tabled.
+     */
+    @FilterField
+    private HashMap<String, Answers> answers = new HashMap<String, Answers>();
+    
+    /**
+     * Queries whose answers are currently being worked out.
+     */
+    @FilterField
+    private HashSet<String> tabling = new HashSet<String>();
+    
+    /**
+     * The largest number of queries to keep answers for.
+     */
+    private static final int MAX_ANSWERS = 1024;
+    
+    /**
+     * The largest number of answers to table for a query.  Queries with more are answered 
+     * using the rules as they would be without tabling.
+     */
+    static final int MAX_ROWS = 1024;
+
     /**
      * Getter for the number of rules.
      * @return number of ruless.
@@ -83,6 +110,7 @@ public class RuleBase implements Iterable<Rule> {
             entry.add(l);
  
             size++;
+            answers.clear();
             return true;
      }
 
@@ -99,6 +127,7 @@ public class RuleBase implements Iterable<Rule> {
         		ruleMap.remove(key);
         	}
         	size--;
+        	answers.clear();
             boolean  result = true;
             return result;
         } 
@@ -175,6 +204,47 @@ public class RuleBase implements Iterable<Rule> {
         }
    }
 
+    /**
+     * Get the tabled answers for a query, if they are still up to date.
+     * @param key
+     * @return
+     */
+    Answers getAnswers(String key) {
+    	Answers a = answers.get(key);
+    	if (a != null && ! a.current()) {
+    		answers.remove(key);
+    		return null;
+    	}
+    	return a;
+    }
+    
+    /**
+     * Note that answers for a query are being worked out.  Returns false if they
+     * already are (i.e., the query is being asked recursively).
+     * @param key
+     * @return
+     */
+    boolean startTabling(String key) {
+    	return tabling.add(key);
+    }
+    
+    /**
+     * Store the answers for a query.  If a is null then the answers could not be tabled, and
+     * if its rows are null the rules should be used for the query until the beliefs a depends
+     * on change.
+     * @param key
+     * @param a
+     */
+    void endTabling(String key, Answers a) {
+    	tabling.remove(key);
+    	if (a != null) {
+    		if (answers.size() >= MAX_ANSWERS) {
+    			answers.clear();
+    		}
+    		answers.put(key, a);
+    	}
+    }
+    
     /**
      * Convert the rule base into a string for printing.
      *
@@ -184,6 +254,76 @@ public class RuleBase implements Iterable<Rule> {
     }
     
      
+    /**
+     * The answers rules give to a query, stored as ground instances of the query.  The 
+     * answers stay current until one of the beliefs looked at while deriving them changes.
+     * 
+     * @author louiseadennis
+     *
+     */
+    static final class Answers {
+    	/**
+    	 * The belief base clock when the answers were worked out.
+    	 */
+    	final long stamp;
+    	/**
+    	 * The belief bases the answers were worked out from.
+    	 */
+    	final List<BeliefBase> bases;
+    	/**
+    	 * The answers, or null if they could not be tabled.
+    	 */
+    	final List<PredicateTerm> rows;
+    	/**
+    	 * The beliefs the answers depend upon.  A null predicate indicator means all beliefs.
+    	 */
+    	final List<Tuple<BeliefBase, PredicateIndicator>> deps;
+    	
+    	/**
+    	 * Constructor.
+    	 * @param s
+    	 * @param b
+    	 * @param r
+    	 * @param d
+    	 */
+    	Answers(long s, List<BeliefBase> b, List<PredicateTerm> r, List<Tuple<BeliefBase, PredicateIndicator>> d) {
+    		stamp = s;
+    		bases = b;
+    		rows = r;
+    		deps = d;
+    	}
+    	
+    	/**
+    	 * Were these answers worked out from exactly these belief bases?
+    	 * @param bs
+    	 * @return
+    	 */
+    	boolean from(List<BeliefBase> bs) {
+    		if (bs.size() != bases.size()) {
+    			return false;
+    		}
+    		for (int i = 0; i < bs.size(); i++) {
+    			if (bs.get(i) != bases.get(i)) {
+    				return false;
+    			}
+    		}
+    		return true;
+    	}
+    	
+    	/**
+    	 * Have none of the beliefs these answers depend on changed?
+    	 * @return
+    	 */
+    	boolean current() {
+    		for (Tuple<BeliefBase, PredicateIndicator> d: deps) {
+    			if (d.getLeft().changedSince(d.getRight(), stamp)) {
+    				return false;
+    			}
+    		}
+    		return true;
+    	}
+    }
+    
     /** 
      * Special class for storing the actual rules.  Each instance of a class
      * stores a number of rules with the same PredicateIndicator (i.e., the
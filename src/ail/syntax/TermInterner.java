@@ -0,0 +1,133 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ail.syntax;
+
+import gov.nasa.jpf.annotation.FilterField;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An optional table of canonical instances of ground, unannotated Predicates and Literals.
+ * Environments pass percepts and shared beliefs through intern so that equal terms which
+ * are in use at the same time are the same object.  Comparing them is then a reference
+ * comparison and their hash codes are only calculated once.  The table only holds its
+ * terms weakly so values which are no longer perceived are forgotten.
+ * 
+ * Interned terms are shared so must not be altered.  Agents clone percepts before
+ * annotating them so this does not reach the belief base.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class TermInterner {
+	/**
+	 * Whether terms are interned.  Off by default.
+	 */
+	@FilterField
+	private static boolean interning = false;
+	
+	/**
+	 * The canonical Predicates and Literals.  Kept apart since a positive Literal equals
+	 * the Predicate with the same functor and terms.
+	 */
+	@FilterField
+	private static Map<Predicate, WeakReference<Predicate>> predicates = new WeakHashMap<Predicate, WeakReference<Predicate>>();
+	@FilterField
+	private static Map<Predicate, WeakReference<Predicate>> literals = new WeakHashMap<Predicate, WeakReference<Predicate>>();
+	
+	/**
+	 * Turn interning on or off.
+	 * @param b
+	 */
+	public static void setInterning(boolean b) {
+		interning = b;
+	}
+	
+	/**
+	 * Are terms being interned?
+	 * @return
+	 */
+	public static boolean interning() {
+		return interning;
+	}
+	
+	/**
+	 * The canonical instance of p, which becomes p if there is none.  If interning is off, or 
+	 * p is not a ground, unannotated Predicate or Literal, then p itself.
+	 * @param p
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <P extends Predicate> P intern(P p) {
+		if (! interning || p == null) {
+			return p;
+		}
+		Map<Predicate, WeakReference<Predicate>> table;
+		if (p.getClass() == Literal.class) {
+			if (((Literal) p).hasAnnot()) {
+				return p;
+			}
+			table = literals;
+		} else if (p.getClass() == Predicate.class) {
+			table = predicates;
+		} else {
+			return p;
+		}
+		if (! p.isGround()) {
+			return p;
+		}
+		
+		synchronized (table) {
+			WeakReference<Predicate> ref = table.get(p);
+			if (ref != null) {
+				Predicate canonical = ref.get();
+				if (canonical != null) {
+					return (P) canonical;
+				}
+			}
+			// Calculate the hash code now so it is shared.
+			p.hashCode();
+			table.put(p, new WeakReference<Predicate>(p));
+			return p;
+		}
+	}
+	
+	/**
+	 * How many terms are currently interned.
+	 * @return
+	 */
+	public static int size() {
+		int n;
+		synchronized (predicates) {
+			n = predicates.size();
+		}
+		synchronized (literals) {
+			n += literals.size();
+		}
+		return n;
+	}
+}
@@ -30,9 +30,12 @@ package ail.syntax;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Map;
 
 import ajpf.util.VerifyMap;
+import ajpf.util.HashVerifyMap;
 import ajpf.util.AJPFLogger;
+import gov.nasa.jpf.annotation.FilterField;
 
 /**
  * Unifiers for formulas.  Very similar to the Jason Unifier class by Rafael
@@ -45,11 +48,100 @@ import ajpf.util.AJPFLogger;
  */
 public class Unifier implements Cloneable, Comparable<Unifier> {
 	String logname = "ail.syntax.Unifier";
+	
+	/**
+	 * Store bindings in a VerifyMap.  This is the default and should be used when model checking.
+	 */
+	public final static int VERIFY_STORE = 0;
+	/**
+	 * Store bindings in a hash indexed map.  Faster for large unifiers but not intended for use in JPF.
+	 */
+	public final static int HASH_STORE = 1;
+	
+	/**
+	 * Which kind of binding store new unifiers use.
+	 */
+	private static int bindingStore = VERIFY_STORE;
+
+	/**
+	 * Whether snapshots share their bindings with the unifier they were taken from, rather 
+	 * than copying them.  Not intended for use in JPF.
+	 */
+	@FilterField
+	private static boolean sharing = false;
 
 	/**
 	 * A Function mapping variables to their instantiations.
 	 */
-   private VerifyMap<VarTerm, Term> function = new VerifyMap<VarTerm, Term>();
+   private Map<VarTerm, Term> function;
+   
+   /**
+    * Whether function may also belong to another unifier, in which case it is copied before
+    * it is changed.
+    */
+   @FilterField
+   private boolean shared = false;
+   
+   /**
+    * Constructor.  An empty unifier.
+    */
+   public Unifier() {
+	   function = newBindingStore();
+   }
+   
+   /**
+    * Constructor for a snapshot, which shares the bindings of another unifier.
+    * @param function
+    */
+   private Unifier(Map<VarTerm, Term> function) {
+	   this.function = function;
+	   shared = true;
+   }
+   
+   /**
+    * Set the kind of binding store to be used by unifiers created from now on.
+    * Both stores give the same results for equals, hashCode and compareTo so 
+    * unifiers using different stores may be mixed.
+    * @param store
+    */
+   public static void setBindingStore(int store) {
+	   bindingStore = store;
+   }
+   
+   /**
+    * The kind of binding store currently in use.
+    * @return
+    */
+   public static int getBindingStore() {
+	   return bindingStore;
+   }
+   
+   /**
+    * Set whether snapshots share bindings.
+    * @param b
+    */
+   public static void setSharing(boolean b) {
+	   sharing = b;
+   }
+   
+   /**
+    * Are snapshots sharing bindings?
+    * @return
+    */
+   public static boolean sharing() {
+	   return sharing;
+   }
+   
+   /**
+    * Create an empty binding store of the currently selected kind.
+    * @return
+    */
+   private static Map<VarTerm, Term> newBindingStore() {
+	   if (bindingStore == HASH_STORE) {
+		   return new HashVerifyMap<VarTerm, Term>();
+	   }
+	   return new VerifyMap<VarTerm, Term>();
+   }
 
     /**
      * gets the value for a Var, if it is unified with another var, gets this
@@ -64,6 +156,10 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
      * other's value
      */
     public Term get(VarTerm vtp) {
+    	// An unbound variable is equal to a key exactly when their names match so we can look it up directly.
+    	if (vtp.getValue() == null) {
+    		return function.get(vtp);
+    	}
     	for (VarTerm v: function.keySet() ) {
     		if (vtp.equals(v)) {
     			return function.get(v);
@@ -306,8 +402,8 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
             // both are var (not unnamedvar) with no value, like X=Y
             // we must ensure that these vars will form a cluster
             if (! t1gv.isUnnamedVar() && ! t2gv.isUnnamedVar()) {
-            	VarTerm t1c = (VarTerm) t1gv.clone();
-                VarTerm t2c = (VarTerm) t2gv.clone();
+            	VarTerm t1c = t1gv.clone();
+                VarTerm t2c = t2gv.clone();
                 VarsCluster cluster = new VarsCluster(t1c, t2c, this);
                 updateWithVarsCluster(cluster);
                 // ?
@@ -433,6 +529,7 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
      * @param cluster
      */
     public void updateWithVarsCluster(VarsCluster cluster) {
+    	own();
         for (VarTerm vtc : cluster) {
             function.put(vtc, cluster);
         }    	
@@ -536,6 +633,7 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
     }
 
     private boolean setVarValue(VarTerm vt, Term value) {
+    	own();
         // if the var has a cluster, set value for all cluster
         Term currentVl = function.get(vt);
         if (currentVl != null && currentVl instanceof VarsCluster) {
@@ -548,7 +646,7 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
         	if (value instanceof VarsCluster) {
         		((VarsCluster) value).add(vt);
         	}
-            function.put((VarTerm) vt.clone(), (Term) value.clone());
+            function.put(vt.clone(), (Term) value.clone());
         }
         return true;
     }
@@ -557,7 +655,12 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
      * Clear the unifier.
      */
     public void clear() {
-        function.clear();
+    	if (shared) {
+    		function = newBindingStore();
+    		shared = false;
+    	} else {
+    		function.clear();
+    	}
     }
 
     /*
@@ -581,10 +684,13 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
      * NB. simply removes duplicate unifiers from incoming unifier
      */
     public void compose(Unifier u) {
+    	if (! u.function.isEmpty()) {
+    		own();
+    	}
         for (VarTerm k: u.function.keySet()) {
-        	if (! function.keySet().contains(k) ) { 
+        	if (! function.containsKey(k) ) { 
         		// k does not appear in this unifier.  Easypeasy solution.
-        		function.put( (VarTerm)k.clone(), (Term)u.function.get(k).clone());
+        		function.put( k.clone(), (Term)u.function.get(k).clone());
         	} else  {
         		Term t1 = u.get(k);
         		Term t2 = get(k);
@@ -620,6 +726,43 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
         }
     }
     
+    /**
+     * A copy of this unifier to be kept alongside it, for instance one for each deed in an
+     * intention row.  If sharing is on the two share their bindings until one of them is 
+     * changed, when it takes its own copy, so taking a snapshot is cheap.  Unifiers with a 
+     * value that is not ground are always copied, since applying a unifier binds variables
+     * inside the values it hands out.  So are those involving VarsClusters since clusters
+     * refer back to the unifier they belong to.
+     * @return
+     */
+    public Unifier snapshot() {
+    	if (! sharing) {
+    		return clone();
+    	}
+    	for (Term t: function.values()) {
+    		if (t instanceof VarsCluster || ! t.isGround()) {
+    			return clone();
+    		}
+    	}
+    	shared = true;
+    	return new Unifier(function);
+    }
+    
+    /**
+     * Take our own copy of the bindings, if they might be shared, before changing them.  The 
+     * bindings are copied in the same way as by clone.
+     */
+    private void own() {
+    	if (shared) {
+    		Map<VarTerm, Term> old = function;
+    		function = newBindingStore();
+    		shared = false;
+    		for (Map.Entry<VarTerm, Term> e: old.entrySet()) {
+    			function.put(e.getKey().clone(), (Term) e.getValue().clone());
+    		}
+    	}
+    }
+    
     /*
      * (non-Javadoc)
      * @see java.lang.Object#clone()
@@ -641,6 +784,7 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
      * @param v
      */
     public void clearAnnots(VarTerm v) {
+    	own();
    		Term np1vl = function.get(v);
 		if (np1vl.hasAnnotation()) {
 			((PredicatewAnnotation) np1vl).setAnnot(null);
@@ -686,11 +830,30 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
      * 
      */
     public void renameVar(String oldname, String newname) {
+    	// Renaming changes the key's position in the store so take it out and put it back.
+    	VarTerm old = null;
+    	int oldid = VarNames.lookup(oldname);
     	for (VarTerm v: function.keySet()) {
-    		if (v.getFunctor().equals(oldname)) {
-    			v.renameVar(oldname, newname);
+    		if (v.isCalled(oldname, oldid)) {
+    			old = v;
+    			break;
     		}
     	}
+    	if (old != null && shared) {
+    		own();
+    		old = null;
+    		for (VarTerm v: function.keySet()) {
+    			if (v.isCalled(oldname, oldid)) {
+    				old = v;
+    				break;
+    			}
+    		}
+    	}
+    	if (old != null) {
+    		Term value = function.remove(old);
+    		old.renameVar(oldname, newname);
+    		function.put(old, value);
+    	}
     }
     
     /**
@@ -708,6 +871,9 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
     			vars.add(v);
     		}
     	}
+    	if (! vars.isEmpty()) {
+    		own();
+    	}
     	for (VarTerm v1: vars) {
     		function.remove(v1);
     	}
@@ -724,6 +890,9 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
     			vars.add(v);
     		}
     	}
+    	if (! vars.isEmpty()) {
+    		own();
+    	}
     	for (VarTerm v1: vars) {
     		function.remove(v1);
     	}
@@ -774,8 +943,8 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
             // both are var (not unnamedvar) with no value, like X=Y
             // we must ensure that these vars will form a cluster
             if (! t1gv.isUnnamedVar() && ! t2gv.isUnnamedVar()) {
-            	VarTerm t1c = (VarTerm) t1gv.clone();
-                VarTerm t2c = (VarTerm) t2gv.clone();
+            	VarTerm t1c = t1gv.clone();
+                VarTerm t2c = t2gv.clone();
                 VarsCluster cluster = new VarsCluster(t1c, t2c, this);
                 updateWithVarsCluster(cluster);
                 return true;
@@ -884,8 +1053,23 @@ public class Unifier implements Cloneable, Comparable<Unifier> {
      * @return
      */
     public boolean containsVarName(String v) {
+    	int id = VarNames.lookup(v);
+    	for (VarTerm var: function.keySet()) {
+    		if (var.isCalled(v, id)) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+    
+    /**
+     * This unifier contains a variable whose name has the given id (see VarNames).
+     * @param id
+     * @return
+     */
+    public boolean containsVar(int id) {
     	for (VarTerm var: function.keySet()) {
-    		if (var.getFunctor().equals(v)) {
+    		if (var.getId() == id) {
     			return true;
     		}
     	}
@@ -44,7 +44,16 @@ public class UnnamedVar extends VarTerm {
 	 * Constructor.
 	 */
     public UnnamedVar() {
-        super("_" + (varCont++));
+        super("_" + nextVarCont());
+    }
+
+    /**
+     * The next number to use in a variable name.  Synchronized since agents may
+     * be run in parallel.
+     * @return
+     */
+    private static synchronized int nextVarCont() {
+    	return varCont++;
     }
 
     /**
@@ -0,0 +1,116 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+
+package ail.syntax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gov.nasa.jpf.annotation.FilterField;
+
+/**
+ * Integer identities for variable names.  Each distinct name is given the next number when
+ * a variable with that name is created, so two variables with ids have the same name exactly
+ * when they have the same id and can be compared and looked up by number.  The names themselves
+ * are still what is printed and what is seen by JPF.
+ * 
+ * Names are never forgotten, so only the names of variables are registered and not those of
+ * unnamed variables, which are never reused.  Other names, such as candidate fresh names, are
+ * only looked up, without taking a lock.  Anything without an id is compared by name.
+ * 
+ * @author louiseadennis
+ *
+ */
+public final class VarNames {
+	/**
+	 * The id of each name seen so far.
+	 */
+	@FilterField
+	private static ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	/**
+	 * The name with each id.
+	 */
+	@FilterField
+	private static List<String> names = new ArrayList<String>();
+	
+	private VarNames() {}
+	
+	/**
+	 * The id of a variable name, giving it a new one if it has not been seen before.
+	 * @param name
+	 * @return
+	 */
+	public static int id(String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			return register(name);
+		}
+		return id;
+	}
+	
+	/**
+	 * The id of a name if it has one.  The name is not registered.
+	 * @param name
+	 * @return the id or -1.
+	 */
+	public static int lookup(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+	
+	/**
+	 * Give a name the next id.  Synchronized since agents may be run in parallel.
+	 * @param name
+	 * @return
+	 */
+	private static synchronized int register(String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			names.add(name);
+			ids.put(name, id);
+		}
+		return id;
+	}
+	
+	/**
+	 * The name with a given id.
+	 * @param id
+	 * @return
+	 */
+	public static synchronized String name(int id) {
+		return names.get(id);
+	}
+	
+	/**
+	 * The number of names seen so far.
+	 * @return
+	 */
+	public static synchronized int size() {
+		return names.size();
+	}
+
+}
@@ -34,6 +34,7 @@ import java.util.ListIterator;
 
 import ail.semantics.AILAgent;
 import ajpf.util.AJPFLogger;
+import gov.nasa.jpf.annotation.FilterField;
 
 /**
  * Represents a variable Term: like X (starts with upper case). It may have a
@@ -47,6 +48,14 @@ public class VarTerm extends Literal implements NumberTerm, ListTerm, StringTerm
 	 */
 	private Term value  = null;
 	
+	/**
+	 * The id of this variable's name (see VarNames), and the name it was worked out for.
+	 */
+	@FilterField
+	private int id;
+	@FilterField
+	private String idname = null;
+	
 	private static final String logname = "ail.syntax.VarTerm";
     
     /**
@@ -83,6 +92,10 @@ public class VarTerm extends Literal implements NumberTerm, ListTerm, StringTerm
         	Exception e = new Exception("stack");
         	e.printStackTrace();
         }
+         // Unnamed variables have names of their own which are never reused.
+         if (s != null && ! s.startsWith("_")) {
+        	 VarNames.id(s);
+         }
     }
     
     /*
@@ -215,6 +228,39 @@ public class VarTerm extends Literal implements NumberTerm, ListTerm, StringTerm
     public Term getValue() {
         return value;
     }
+    
+    /**
+     * The id of this variable's name, so variables can be compared by number rather than by name.  
+     * Worked out again if the name changes.
+     * @return the id, or -1 if the name has none (see VarNames) or there is no name.
+     */
+    public int getId() {
+    	String name = getFunctor();
+    	if (name == null) {
+    		return -1;
+    	}
+    	if (name != idname || id < 0) {
+    		id = VarNames.lookup(name);
+    		idname = name;
+    	}
+    	return id;
+    }
+    
+    /**
+     * Is this variable called name?  Compared by id where both have one.
+     * @param name
+     * @param nameid the id of name, or -1.
+     * @return
+     */
+    public boolean isCalled(String name, int nameid) {
+    	if (nameid >= 0) {
+    		int i = getId();
+    		if (i >= 0) {
+    			return i == nameid;
+    		}
+    	}
+    	return name.equals(getFunctor());
+    }
 
     /*
      * (non-Javadoc)
@@ -89,13 +89,21 @@ public class VarsCluster extends DefaultTerm implements Iterable<VarTerm> {
 	 * The Unifier could associate one of the var terms with a var cluster, so that cluster needs to expand.
 	 */
 	VarsCluster(VarTerm v1, VarTerm v2, Unifier u) {
-		id = ++idCount;
+		id = nextId();
 		this.u = u;
 		add(v1);
 		add(v2);
 		u.updateWithVarsCluster(this);
 	}
 
+	/**
+	 * The next cluster id.  Synchronized since agents may be run in parallel.
+	 * @return
+	 */
+	private static synchronized int nextId() {
+		return ++idCount;
+	}
+
 	/**
 	 * Add a new variable to this cluster.
 	 * @param vt
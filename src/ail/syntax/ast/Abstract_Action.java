@@ -76,6 +76,12 @@ public class Abstract_Action extends Abstract_Predicate {
 	int actiontype = normalAction;
 	
 
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_Action() {
+	}
+	
 	/**
 	 * Create an action from a String.
 	 * 
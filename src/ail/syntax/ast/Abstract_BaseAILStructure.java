@@ -91,6 +91,12 @@ public abstract class Abstract_BaseAILStructure implements Abstract_AILStructure
 	 */
 	private byte category;
 
+	/**
+	 * Constructor for subclasses whose fields are all set afterwards, e.g. when loading an image.
+	 */
+	protected Abstract_BaseAILStructure() {
+	}
+	
 	/**
 	 * Construct an AIL Structure with a given category.
 	 * 
@@ -71,6 +71,12 @@ public class Abstract_BroadcastSendAction extends Abstract_Action {
 	 */
 	protected Abstract_StringTerm thId;
 
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_BroadcastSendAction() {
+	}
+	
 	/**
 	 * Constructor for a list of receivers, a performative and a message.
 	 * @param rs
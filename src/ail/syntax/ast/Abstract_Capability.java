@@ -84,6 +84,12 @@ public class Abstract_Capability {
 		return ref;
 	}
   
+    /**
+     * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+     */
+    public Abstract_Capability() {
+    }
+    
 	/**
 	 * Construct a capability with trivial pre- and post- conditions.
 	 */
@@ -129,6 +129,12 @@ public class Abstract_Deed extends Abstract_BaseAILStructure {
     }
     
 
+    /**
+     * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+     */
+    public Abstract_Deed() {
+    }
+    
     /**
      * Construct a deed from a term, must be an action.
      * 
@@ -79,6 +79,12 @@ public class Abstract_Event extends Abstract_BaseAILStructure  {
 	 */
 	int trigtype = 0;
 	
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_Event() {
+	}
+	
 	/**
 	 * Construct an event of a given category.
 	 * 
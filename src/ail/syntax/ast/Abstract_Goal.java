@@ -89,6 +89,12 @@ public class Abstract_Goal extends Abstract_Pred implements Abstract_GuardAtom {
 	 */
 	private boolean isVariable = false;
 	
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_Goal() {
+	}
+	
 	/**
 	 * Construct from a literal and a goal type.
 	 * @param l
@@ -60,6 +60,12 @@ public class Abstract_GuardCap implements Abstract_GuardAtom {
 	Abstract_GLogicalFormula post;
 	Abstract_Predicate cap;
 	
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_GuardCap() {
+	}
+	
 	/**
 	 * Constructor.
 	 * @param p
@@ -41,6 +41,12 @@ public class Abstract_GuardMessage implements Abstract_GuardAtom {
 	byte type;
 	
 
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_GuardMessage() {
+	}
+	
 	/**
 	 * Constructor.
 	 * @param t
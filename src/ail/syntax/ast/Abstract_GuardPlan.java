@@ -65,6 +65,12 @@ public class Abstract_GuardPlan implements Abstract_GuardAtom {
 	Abstract_LogicalFormula post;
 	Abstract_Predicate cap;
 	
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_GuardPlan() {
+	}
+	
 	/**
 	 * Constructor
 	 * @param pl
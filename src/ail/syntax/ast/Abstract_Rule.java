@@ -66,6 +66,12 @@ public class Abstract_Rule implements Abstract_LogicalFormula {
 	 */
 	private Abstract_Predicate head = null;
 
+    /**
+     * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+     */
+    public Abstract_Rule() {
+    }
+    
 	/**
 	 * Constructor.
 	 * @param head
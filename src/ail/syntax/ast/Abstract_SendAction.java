@@ -71,6 +71,12 @@ public class Abstract_SendAction extends Abstract_Action {
 	 */
 	protected String thId;
 	
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_SendAction() {
+	}
+	
 	/**
 	 * Create a send action froma recipient, ilf and content.
 	 * 
@@ -167,7 +167,8 @@ public class MCAPLAgent implements PerceptListener, MCAPLJobber {
 	 *
 	 */
 	public void wakeUP() {
-		if (! controller.getScheduler().getActiveJobberNames().contains(getName())) {
+		controller.wakeUpSent(getAgName());
+		if (! controller.getScheduler().getActiveJobberNames().contains(getName()) || controller.isAsleep(getAgName())) {
 			controller.getScheduler().isActive(this.getName());
 		
 			agent.MCAPLtellawake();
@@ -61,4 +61,10 @@ public interface MCAPLScheduler extends PerceptListener {
 	 * @return
 	 */
 	public List<String> getActiveJobberNames();
+	
+	/**
+	 * Get all the jobbers, whether active or not.
+	 * @return
+	 */
+	public List<MCAPLJobber> getJobbers();
 }
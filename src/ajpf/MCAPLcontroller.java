@@ -28,8 +28,16 @@ import gov.nasa.jpf.annotation.FilterField;
 
 import java.util.Random;
 import java.util.List;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.io.File;
 
+import ajpf.monitor.RuntimeMonitor;
 import ajpf.util.AJPFLogger;
 import ajpf.util.VerifyMap;
 import ajpf.util.AJPFException;
@@ -70,8 +78,62 @@ public class MCAPLcontroller  {
 	Random random_numbers = new Random();
 	
 	// We make this a class variable for test sets which run AIL in a thread.
-	boolean checkend = false;
-		
+	volatile boolean checkend = false;
+	
+	/**
+	 * Whether, outside verification, the controller should wait for something to change
+	 * while all the agents are asleep rather than repeatedly running the last jobber.
+	 */
+	@FilterField
+	private static boolean blocking = false;
+	
+	/**
+	 * How long (in milliseconds) to wait while all agents are asleep before running a jobber
+	 * anyway.  This lets environments which poll sensors keep doing so.  0 means wait until
+	 * woken.
+	 */
+	@FilterField
+	private static long pollInterval = 20;
+	
+	/**
+	 * Whether, outside verification, each jobber should be run repeatedly on its own thread
+	 * rather than the controller picking one jobber at a time.
+	 */
+	@FilterField
+	private static boolean parallel = false;
+	
+	/**
+	 * The agents that are currently asleep.  Only maintained in blocking or parallel mode.
+	 */
+	@FilterField
+	private Set<String> asleep = new HashSet<String>();
+	
+	/**
+	 * In parallel mode, how many times each agent has been sent a wake up.  A worker
+	 * compares this with the count before it last ran its agent so that a wake up sent
+	 * while the agent was still falling asleep is not missed.
+	 */
+	@FilterField
+	private Map<String, Integer> wakeups = new HashMap<String, Integer>();
+	
+	/**
+	 * Whether an agent has been woken since the controller last waited.
+	 */
+	@FilterField
+	private boolean woken = false;
+	
+	/**
+	 * Monitor on which the controller and, in parallel mode, the jobbers wait.
+	 */
+	@FilterField
+	private final Object wakeup = new Object();
+	
+	/**
+	 * A monitor checking properties of the running system, if any.
+	 */
+	@FilterField
+	private RuntimeMonitor monitor;
+
 
 	/**
 	 * Constructs a controller from a MAS and a property.
@@ -143,6 +205,14 @@ public class MCAPLcontroller  {
 	public MCAPLSpec getSpecification() {
 		return (specification);
 	}
+	
+	/**
+	 * Check properties against the system as it runs.  Not for use in verification.
+	 * @param m
+	 */
+	public void setMonitor(RuntimeMonitor m) {
+		monitor = m;
+	}
 		
 	/**
 	 * Getter method for the multi-agent system.
@@ -166,8 +236,17 @@ public class MCAPLcontroller  {
 		}
 		specification.createAutomaton();
 		specification.checkProperties();
+		if (monitor != null) {
+			monitor.start();
+		}
 		checkend = checkEnd();
+		if (parallel) {
+			runInParallel();
+		}
 		while (! checkend) {
+			if (blocking) {
+				waitForChange();
+			}
 			a = scheduling();
 			if (AJPFLogger.ltFine("ajpf.MCAPLcontroller")) {			
 				AJPFLogger.fine("ajpf.MCAPLcontroller", "before checkend");
@@ -201,6 +280,9 @@ public class MCAPLcontroller  {
 		}
 		a.do_job();
 		specification.checkProperties();
+		if (monitor != null) {
+			monitor.step(a.getName());
+		}
 		force_transition();
 		return a;
 	}
@@ -235,6 +317,12 @@ public class MCAPLcontroller  {
 	 */
 	public void addAsleep(String agname) {
 		scheduler.notActive(agname);
+		if (blocking || parallel) {
+			synchronized (wakeup) {
+				asleep.add(agname);
+				wakeup.notifyAll();
+			}
+		}
 	}
 	
 	/**
@@ -243,6 +331,250 @@ public class MCAPLcontroller  {
 	 */
 	public void addAwake(String agname) {
 		scheduler.isActive(agname);
+		if (blocking || parallel) {
+			synchronized (wakeup) {
+				asleep.remove(agname);
+				woken = true;
+				wakeup.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * The agent has been sent a wake up, whether or not it is asleep.
+	 * @param agname
+	 */
+	public void wakeUpSent(String agname) {
+		if (parallel) {
+			synchronized (wakeup) {
+				wakeups.put(agname, wakeCount(agname) + 1);
+				wakeup.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * How many wake ups the agent has been sent in parallel mode.  Callers hold wakeup.
+	 * @param agname
+	 * @return
+	 */
+	private int wakeCount(String agname) {
+		Integer n = wakeups.get(agname);
+		return n == null ? 0 : n;
+	}
+	
+	/**
+	 * Turn blocking scheduling on or off.  In blocking mode the controller thread waits
+	 * while every agent is asleep until one is woken (typically by a change in its
+	 * percepts) or the poll interval elapses, instead of spinning.  This must stay off
+	 * when model checking since JPF explores the schedule itself.
+	 * @param b
+	 */
+	public static void setBlocking(boolean b) {
+		blocking = b;
+	}
+	
+	/**
+	 * Set how long, in milliseconds, the controller waits in blocking mode before running
+	 * a jobber even though no agent has been woken.
+	 * @param millis
+	 */
+	public static void setPollInterval(long millis) {
+		pollInterval = millis;
+	}
+	
+	/**
+	 * Turn parallel execution on or off.  In parallel mode every jobber (each agent and,
+	 * typically, the environment) is run repeatedly on its own pooled thread.  Agents then only
+	 * interact through the environment, whose percept and message methods are synchronized.
+	 * Sleeping agents wait, without running, until they are sent a wake up.  Other jobbers
+	 * wait for the poll interval whenever all the agents are asleep.  This must stay off when
+	 * model checking.
+	 * @param b
+	 */
+	public static void setParallel(boolean b) {
+		parallel = b;
+	}
+	
+	/**
+	 * Is the agent asleep?  Only known in blocking or parallel mode, otherwise this is always false.
+	 * @param agname
+	 * @return
+	 */
+	public boolean isAsleep(String agname) {
+		synchronized (wakeup) {
+			return asleep.contains(agname);
+		}
+	}
+	
+	/**
+	 * If every agent is asleep and none has been woken since we last looked, wait until
+	 * one is or the poll interval elapses.
+	 */
+	private void waitForChange() {
+		synchronized (wakeup) {
+			if (! woken && asleep.size() >= agents.size()) {
+				if (AJPFLogger.ltFine("ajpf.MCAPLcontroller")) {
+					AJPFLogger.fine("ajpf.MCAPLcontroller", "all agents asleep, waiting");
+				}
+				try {
+					wakeup.wait(pollInterval);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			woken = false;
+		}
+	}
+	
+	/**
+	 * Run each jobber on its own thread until all the agents are asleep and the multi-agent
+	 * system reckons it is done.
+	 */
+	private void runInParallel() {
+		List<MCAPLJobber> jobbers = scheduler.getJobbers();
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, jobbers.size()));
+		for (MCAPLJobber j: jobbers) {
+			workers.execute(new Worker(j));
+		}
+		
+		while (! checkend) {
+			synchronized (wakeup) {
+				try {
+					wakeup.wait(pollInterval);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					checkend = true;
+				}
+			}
+			if (allAsleep() && getMAS().alldone()) {
+				getMAS().stopAgs();
+				checkend = true;
+			}
+		}
+		
+		synchronized (wakeup) {
+			wakeup.notifyAll();
+		}
+		workers.shutdown();
+		try {
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Are all the agents asleep?
+	 * @return
+	 */
+	private boolean allAsleep() {
+		synchronized (wakeup) {
+			return asleep.size() >= agents.size();
+		}
+	}
+	
+	/**
+	 * In parallel mode wait while the agent is asleep until it is sent a wake up it has not 
+	 * seen, or the run ends.  If agname is null wait while all agents are asleep until the 
+	 * poll interval elapses or the run ends.
+	 * @param agname
+	 * @param seen the number of wake ups the agent had been sent before it last ran.
+	 */
+	private void awaitWaking(String agname, int seen) {
+		synchronized (wakeup) {
+			if (agname != null) {
+				while (! checkend && asleep.contains(agname) && wakeCount(agname) == seen) {
+					try {
+						wakeup.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				return;
+			}
+			
+			long deadline = System.currentTimeMillis() + pollInterval;
+			while (! checkend && asleep.size() >= agents.size()) {
+				try {
+					if (pollInterval > 0) {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0) {
+							return;
+						}
+						wakeup.wait(remaining);
+					} else {
+						wakeup.wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs one jobber repeatedly in parallel mode.
+	 * 
+	 * @author louiseadennis
+	 *
+	 */
+	private class Worker implements Runnable {
+		/**
+		 * The jobber this worker runs.
+		 */
+		private MCAPLJobber jobber;
+		/**
+		 * The name to wait on, null if the jobber isn't an agent.
+		 */
+		private String agname;
+		
+		/**
+		 * Constructor.
+		 * @param j
+		 */
+		public Worker(MCAPLJobber j) {
+			jobber = j;
+			if (agents.containsKey(j.getName())) {
+				agname = j.getName();
+			}
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			try {
+				int seen = 0;
+				while (! checkend) {
+					awaitWaking(agname, seen);
+					if (checkend || Thread.currentThread().isInterrupted()) {
+						break;
+					}
+					if (agname != null) {
+						synchronized (wakeup) {
+							seen = wakeCount(agname);
+						}
+					}
+					jobber.do_job();
+					synchronized (specification) {
+						specification.checkProperties();
+					}
+					if (monitor != null) {
+						monitor.step(jobber.getName());
+					}
+				}
+			} catch (Throwable e) {
+				AJPFLogger.severe("ajpf.MCAPLcontroller", jobber.getName() + " stopped", e);
+				checkend = true;
+				synchronized (wakeup) {
+					wakeup.notifyAll();
+				}
+			}
+		}
 	}
 	
 	/**
@@ -256,8 +588,9 @@ public class MCAPLcontroller  {
 		if (AJPFLogger.ltFine("ajpf.MCAPLcontroller")) {
 			AJPFLogger.fine("ajpf.MCAPLcontroller", "entering check end");
 		}
+		List<String> active = scheduler.getActiveJobberNames();
 		for (MCAPLAgent ag : agents.values()) {
-			if (scheduler.getActiveJobberNames().contains(ag.getAgName())) {
+			if (active.contains(ag.getAgName())) {
 				if (AJPFLogger.ltFine("ajpf.MCAPLcontroller")) {
 					AJPFLogger.fine("ajpf.MCAPLcontroller", "returning false");
 				}
@@ -0,0 +1,50 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of Agent JPF (AJPF)
+//
+// AJPF is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// AJPF is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with AJPF; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ajpf.monitor;
+
+/**
+ * Interface for things which want to be told when a runtime monitor decides a property
+ * has been violated or satisfied.
+ * 
+ * @author louiseadennis
+ *
+ */
+public interface MonitorListener {
+	/**
+	 * The property has become false at the given step.  The monitor then starts
+	 * checking it afresh from the next step but doesn't report it again until it has
+	 * gone a step without failing.
+	 * @param property
+	 * @param step
+	 */
+	public void violated(String property, int step);
+	
+	/**
+	 * The property has become true at the given step, whatever happens next.
+	 * @param property
+	 * @param step
+	 */
+	public void satisfied(String property, int step);
+}
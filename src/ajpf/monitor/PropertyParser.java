@@ -0,0 +1,221 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of Agent JPF (AJPF)
+//
+// AJPF is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// AJPF is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with AJPF; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ajpf.monitor;
+
+import ajpf.MCAPLmas;
+import ajpf.psl.AgentProposition;
+import ajpf.psl.MCAPLNumberTermImpl;
+import ajpf.psl.MCAPLPredicate;
+import ajpf.psl.MCAPLTerm;
+import ajpf.psl.MCAPLTermImpl;
+
+/**
+ * Parses properties for runtime monitoring, in the syntax of the AJPF property specification
+ * language:
+ * 
+ *   B(ag, f), G(ag, f), I(ag, f), ItD(ag, f), D(ag, f), T, F,
+ *   ~p, []p, <>p, p U q, p R q, p & q, p || q, p -> q
+ * 
+ * where the operators are listed in order of how tightly they bind.  Binary operators
+ * associate to the right.
+ * 
+ * @author louiseadennis
+ *
+ */
+class PropertyParser {
+	private RuntimeMonitor monitor;
+	private MCAPLmas mas;
+	
+	private String s;
+	private int pos;
+	
+	/**
+	 * Constructor.
+	 * @param m the monitor whose formulas are built.
+	 * @param mas
+	 */
+	PropertyParser(RuntimeMonitor m, MCAPLmas mas) {
+		monitor = m;
+		this.mas = mas;
+	}
+	
+	/**
+	 * Parse a property.
+	 * @param property
+	 * @return the id of its formula in the monitor.
+	 */
+	int parse(String property) {
+		s = property;
+		pos = 0;
+		int f = implication();
+		skip();
+		if (pos < s.length()) {
+			throw error("unexpected " + s.substring(pos));
+		}
+		return f;
+	}
+	
+	private int implication() {
+		int f = disjunction();
+		if (accept("->")) {
+			return monitor.implies(f, implication());
+		}
+		return f;
+	}
+	
+	private int disjunction() {
+		int f = conjunction();
+		if (accept("||")) {
+			return monitor.or(f, disjunction());
+		}
+		return f;
+	}
+	
+	private int conjunction() {
+		int f = temporal();
+		if (accept("&")) {
+			return monitor.and(f, conjunction());
+		}
+		return f;
+	}
+	
+	private int temporal() {
+		int f = unary();
+		if (acceptWord("U")) {
+			return monitor.until(f, temporal());
+		} else if (acceptWord("R")) {
+			return monitor.release(f, temporal());
+		}
+		return f;
+	}
+	
+	private int unary() {
+		if (accept("~")) {
+			return monitor.not(unary());
+		} else if (accept("[]")) {
+			return monitor.always(unary());
+		} else if (accept("<>")) {
+			return monitor.eventually(unary());
+		} else if (accept("(")) {
+			int f = implication();
+			expect(")");
+			return f;
+		} else if (acceptWord("T")) {
+			return RuntimeMonitor.TRUE;
+		} else if (acceptWord("F")) {
+			return RuntimeMonitor.FALSE;
+		}
+		
+		String kind = word();
+		expect("(");
+		String agname = word();
+		expect(",");
+		MCAPLTerm t = term();
+		expect(")");
+		MCAPLPredicate fmla = new MCAPLPredicate(t.getFunctor());
+		for (MCAPLTerm ti: t.getTerms()) {
+			fmla.addTerm(ti);
+		}
+		try {
+			return monitor.prop(new AgentProposition(kind, agname, fmla, mas));
+		} catch (IllegalArgumentException e) {
+			throw error(e.getMessage());
+		}
+	}
+	
+	private MCAPLTerm term() {
+		skip();
+		int start = pos;
+		if (pos < s.length() && (s.charAt(pos) == '-' || Character.isDigit(s.charAt(pos)))) {
+			pos++;
+			while (pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.')) {
+				pos++;
+			}
+			return new MCAPLNumberTermImpl(s.substring(start, pos));
+		}
+		
+		MCAPLTermImpl t = new MCAPLTermImpl(word());
+		if (accept("(")) {
+			do {
+				t.addTerm(term());
+			} while (accept(","));
+			expect(")");
+		}
+		return t;
+	}
+	
+	private String word() {
+		skip();
+		int start = pos;
+		while (pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_')) {
+			pos++;
+		}
+		if (start == pos) {
+			throw error("expected a name");
+		}
+		return s.substring(start, pos);
+	}
+	
+	private boolean accept(String token) {
+		skip();
+		if (s.startsWith(token, pos)) {
+			pos += token.length();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Accept an operator which is a word, so U doesn't match the start of Until.
+	 * @param token
+	 * @return
+	 */
+	private boolean acceptWord(String token) {
+		skip();
+		int end = pos + token.length();
+		if (s.startsWith(token, pos) && (end == s.length() || ! (Character.isLetterOrDigit(s.charAt(end)) || s.charAt(end) == '_' || s.charAt(end) == '('))) {
+			pos = end;
+			return true;
+		}
+		return false;
+	}
+	
+	private void expect(String token) {
+		if (! accept(token)) {
+			throw error("expected " + token);
+		}
+	}
+	
+	private void skip() {
+		while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+			pos++;
+		}
+	}
+	
+	private IllegalArgumentException error(String msg) {
+		return new IllegalArgumentException("Can not parse property " + s + " at " + pos + ": " + msg);
+	}
+
+}
@@ -0,0 +1,476 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of Agent JPF (AJPF)
+//
+// AJPF is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// AJPF is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with AJPF; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ajpf.monitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ajpf.MCAPLmas;
+import ajpf.psl.FalseProp;
+import ajpf.psl.MCAPLProperty;
+import ajpf.psl.Not;
+import ajpf.psl.Proposition;
+import ajpf.psl.Release;
+import ajpf.psl.TrueProp;
+import ajpf.psl.Until;
+import ajpf.psl.ast.Abstract_Property;
+import ajpf.util.AJPFLogger;
+
+/**
+ * Checks LTL properties against a running multi-agent system, rather than by model checking.
+ * 
+ * Properties are held in negation normal form as states of an automaton which is built as it is
+ * needed:  each state is a formula, shared between properties, and the transition from a state
+ * given the truth values of the propositions it mentions is the formula that must hold from the
+ * next step on (formula progression).  Transitions are remembered so after a short while
+ * a step is a table lookup per property.  A property which progresses to false has been violated
+ * by the run so far, and is reported to listeners and then checked afresh (further failures at
+ * consecutive steps are not reported again); one which progresses to true is satisfied whatever
+ * happens next.
+ * 
+ * After each job only the propositions which depend on the jobber that ran (or on anything) are
+ * checked again.  At most 64 different propositions can be monitored.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class RuntimeMonitor {
+	static String logname = "ajpf.monitor.RuntimeMonitor";
+	
+	// Kinds of formula.
+	static final int TRUE = 0;
+	static final int FALSE = 1;
+	static final int PROP = 2;
+	static final int NOTPROP = 3;
+	static final int AND = 4;
+	static final int OR = 5;
+	static final int UNTIL = 6;
+	static final int RELEASE = 7;
+	
+	/**
+	 * The multi-agent system being monitored.
+	 */
+	private MCAPLmas mas;
+	
+	/**
+	 * The kind and arguments of each formula, by id.  Arguments are formula ids except for
+	 * (negated) propositions where the first is the index of the proposition.  TRUE and FALSE are 
+	 * ids 0 and 1.
+	 */
+	private List<int[]> formulas = new ArrayList<int[]>();
+	/**
+	 * The ids of formulas, so each formula is only stored once.
+	 */
+	private Map<Long, Integer> ids = new HashMap<Long, Integer>();
+	/**
+	 * The propositions each formula mentions, as a bit mask.
+	 */
+	private List<Long> support = new ArrayList<Long>();
+	/**
+	 * The transitions out of each formula, by the truth values of the propositions it mentions.
+	 */
+	private List<Map<Long, Integer>> transitions = new ArrayList<Map<Long, Integer>>();
+	
+	/**
+	 * The propositions.
+	 */
+	private List<Proposition> props = new ArrayList<Proposition>();
+	/**
+	 * The current truth values of the propositions, as a bit mask.
+	 */
+	private long valuation = 0;
+	
+	/**
+	 * The properties being monitored, their initial formulas and current states.
+	 */
+	private List<String> names = new ArrayList<String>();
+	private List<Integer> initial = new ArrayList<Integer>();
+	private List<Integer> current = new ArrayList<Integer>();
+	/**
+	 * Whether each property was violated at the last step.
+	 */
+	private List<Boolean> failing = new ArrayList<Boolean>();
+	
+	private List<MonitorListener> listeners = new CopyOnWriteArrayList<MonitorListener>();
+	
+	private int step = 0;
+	private int evaluations = 0;
+	private int violations = 0;
+	
+	/**
+	 * Constructor.
+	 * @param mas
+	 */
+	public RuntimeMonitor(MCAPLmas mas) {
+		this.mas = mas;
+		make(TRUE, 0, 0);
+		make(FALSE, 0, 0);
+	}
+	
+	/**
+	 * Monitor a property written in the property specification language.
+	 * @param property
+	 */
+	public void addProperty(String property) {
+		addProperty(property, new PropertyParser(this, mas).parse(property));
+	}
+	
+	/**
+	 * Monitor a property.
+	 * @param property
+	 */
+	public void addProperty(MCAPLProperty property) {
+		addProperty(property.toString(), convert(property));
+	}
+	
+	/**
+	 * Monitor a parsed property.
+	 * @param property
+	 */
+	public void addProperty(Abstract_Property property) {
+		addProperty(property.toMCAPL(mas, mas.getController()));
+	}
+	
+	/**
+	 * Add a property given the formula for it.
+	 * @param name
+	 * @param f
+	 */
+	private synchronized void addProperty(String name, int f) {
+		names.add(name);
+		initial.add(f);
+		current.add(f);
+		failing.add(false);
+	}
+	
+	/**
+	 * Add a listener to be told of violations.
+	 * @param l
+	 */
+	public void addListener(MonitorListener l) {
+		listeners.add(l);
+	}
+	
+	/**
+	 * Check all the propositions and then the properties against the initial state of the system.
+	 */
+	public synchronized void start() {
+		for (int i = 0; i < props.size(); i++) {
+			evaluate(i);
+		}
+		advance();
+	}
+	
+	/**
+	 * Check the properties after a jobber has run, checking only the propositions which may
+	 * have changed as a result.
+	 * @param jobber
+	 */
+	public synchronized void step(String jobber) {
+		for (int i = 0; i < props.size(); i++) {
+			String d = props.get(i).dependsOn();
+			if (d == null || d.equals(jobber)) {
+				evaluate(i);
+			}
+		}
+		advance();
+	}
+	
+	/**
+	 * Check one proposition.
+	 * @param i
+	 */
+	private void evaluate(int i) {
+		evaluations++;
+		Proposition p = props.get(i);
+		p.updateTV();
+		if (p.getTV()) {
+			valuation |= 1L << i;
+		} else {
+			valuation &= ~(1L << i);
+		}
+	}
+	
+	/**
+	 * Move each property on by one step.
+	 */
+	private void advance() {
+		for (int i = 0; i < current.size(); i++) {
+			int s = current.get(i);
+			if (s == TRUE) {
+				continue;
+			}
+			int next = progress(s, valuation);
+			boolean failed = next == FALSE;
+			if (failed) {
+				// Only report the first of a run of steps at which the property fails.
+				if (! failing.get(i)) {
+					violations++;
+					AJPFLogger.warning(logname, "Property " + names.get(i) + " violated at step " + step);
+					for (MonitorListener l: listeners) {
+						l.violated(names.get(i), step);
+					}
+				}
+				next = initial.get(i);
+			} else if (next == TRUE) {
+				AJPFLogger.info(logname, "Property " + names.get(i) + " satisfied at step " + step);
+				for (MonitorListener l: listeners) {
+					l.satisfied(names.get(i), step);
+				}
+			}
+			current.set(i, next);
+			failing.set(i, failed);
+		}
+		step++;
+	}
+	
+	/**
+	 * The formula that must hold from the next step for f to hold at this one.
+	 * @param f
+	 * @param v the truth values of the propositions.
+	 * @return
+	 */
+	private int progress(int f, long v) {
+		long key = v & support.get(f);
+		Map<Long, Integer> out = transitions.get(f);
+		Integer next = out.get(key);
+		if (next != null) {
+			return next;
+		}
+		
+		int[] fm = formulas.get(f);
+		int n;
+		switch (fm[0]) {
+		case PROP:
+			n = (v & (1L << fm[1])) != 0 ? TRUE : FALSE;
+			break;
+		case NOTPROP:
+			n = (v & (1L << fm[1])) != 0 ? FALSE : TRUE;
+			break;
+		case AND:
+			n = and(progress(fm[1], v), progress(fm[2], v));
+			break;
+		case OR:
+			n = or(progress(fm[1], v), progress(fm[2], v));
+			break;
+		case UNTIL:
+			n = or(progress(fm[2], v), and(progress(fm[1], v), f));
+			break;
+		case RELEASE:
+			n = and(progress(fm[2], v), or(progress(fm[1], v), f));
+			break;
+		default:
+			n = f;
+		}
+		out.put(key, n);
+		return n;
+	}
+	
+	//--- Building formulas.  These keep formulas in negation normal form.
+	
+	/**
+	 * The formula for a proposition.
+	 * @param p
+	 * @return
+	 */
+	int prop(Proposition p) {
+		if (p instanceof TrueProp) {
+			return TRUE;
+		} else if (p instanceof FalseProp) {
+			return FALSE;
+		}
+		int i = props.indexOf(p);
+		if (i < 0) {
+			if (props.size() == 64) {
+				throw new IllegalArgumentException("Can not monitor more than 64 propositions");
+			}
+			i = props.size();
+			props.add(p);
+		}
+		return make(PROP, i, 0);
+	}
+	
+	int not(int f) {
+		int[] fm = formulas.get(f);
+		switch (fm[0]) {
+		case TRUE:
+			return FALSE;
+		case FALSE:
+			return TRUE;
+		case PROP:
+			return make(NOTPROP, fm[1], 0);
+		case NOTPROP:
+			return make(PROP, fm[1], 0);
+		case AND:
+			return or(not(fm[1]), not(fm[2]));
+		case OR:
+			return and(not(fm[1]), not(fm[2]));
+		case UNTIL:
+			return release(not(fm[1]), not(fm[2]));
+		default:
+			return until(not(fm[1]), not(fm[2]));
+		}
+	}
+	
+	int and(int a, int b) {
+		if (a == FALSE || b == FALSE) {
+			return FALSE;
+		} else if (a == TRUE || a == b) {
+			return b;
+		} else if (b == TRUE) {
+			return a;
+		}
+		return make(AND, Math.min(a, b), Math.max(a, b));
+	}
+	
+	int or(int a, int b) {
+		if (a == TRUE || b == TRUE) {
+			return TRUE;
+		} else if (a == FALSE || a == b) {
+			return b;
+		} else if (b == FALSE) {
+			return a;
+		}
+		return make(OR, Math.min(a, b), Math.max(a, b));
+	}
+	
+	int until(int a, int b) {
+		if (b == TRUE || b == FALSE || a == FALSE) {
+			return b;
+		}
+		return make(UNTIL, a, b);
+	}
+	
+	int release(int a, int b) {
+		if (b == TRUE || b == FALSE || a == TRUE) {
+			return b;
+		}
+		return make(RELEASE, a, b);
+	}
+	
+	int implies(int a, int b) {
+		return or(not(a), b);
+	}
+	
+	int always(int a) {
+		return release(FALSE, a);
+	}
+	
+	int eventually(int a) {
+		return until(TRUE, a);
+	}
+	
+	/**
+	 * The formula for a property, in negation normal form.
+	 * @param p
+	 * @return
+	 */
+	int convert(MCAPLProperty p) {
+		if (p instanceof Proposition) {
+			return prop((Proposition) p);
+		} else if (p instanceof Not) {
+			return not(prop(((Not) p).getProp()));
+		} else if (p instanceof Until) {
+			return until(convert(((Until) p).getFmla1()), convert(((Until) p).getFmla2()));
+		} else if (p instanceof Release) {
+			return release(convert(((Release) p).getFmla1()), convert(((Release) p).getFmla2()));
+		}
+		throw new IllegalArgumentException("Can not monitor " + p);
+	}
+	
+	/**
+	 * The id of a formula, storing it if it is new.
+	 * @param kind
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private int make(int kind, int a, int b) {
+		long key = ((long) kind << 56) | ((long) a << 28) | b;
+		Integer id = ids.get(key);
+		if (id != null) {
+			return id;
+		}
+		
+		id = formulas.size();
+		formulas.add(new int[] {kind, a, b});
+		ids.put(key, id);
+		transitions.add(new HashMap<Long, Integer>());
+		long s = 0;
+		if (kind == PROP || kind == NOTPROP) {
+			s = 1L << a;
+		} else if (kind >= AND) {
+			s = support.get(a) | support.get(b);
+		}
+		support.add(s);
+		return id;
+	}
+	
+	//--- Statistics
+	
+	/**
+	 * The number of states of the automaton built so far.
+	 * @return
+	 */
+	public int getStates() {
+		return formulas.size();
+	}
+	
+	/**
+	 * The number of times a proposition has been checked.
+	 * @return
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+	
+	/**
+	 * The number of violations reported.
+	 * @return
+	 */
+	public int getViolations() {
+		return violations;
+	}
+	
+	/**
+	 * The number of steps monitored.
+	 * @return
+	 */
+	public int getSteps() {
+		return step;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return names + " steps=" + step + " states=" + formulas.size() + " evaluations=" + evaluations + " violations=" + violations;
+	}
+
+}
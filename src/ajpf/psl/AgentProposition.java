@@ -0,0 +1,203 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2008-2012 Louise A. Dennis, Berndt Farwer, Michael Fisher and 
+// Rafael H. Bordini.
+// 
+// This file is part of Agent JPF (AJPF)
+//
+// AJPF is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// AJPF is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with AJPF if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//----------------------------------------------------------------------------
+
+package ajpf.psl;
+
+import java.util.Set;
+
+import ajpf.MCAPLLanguageAgent;
+import ajpf.MCAPLmas;
+
+/**
+ * Propositions about the state of an agent:  that it believes something (B), has a
+ * goal (G), has an intention (I), intends to do an action (ItD) or that the last action
+ * performed was by the agent and matched an action (D).
+ * 
+ * @author louiseadennis
+ *
+ */
+public class AgentProposition extends Proposition {
+	public final static String BELIEF = "B";
+	public final static String GOAL = "G";
+	public final static String INTENTION = "I";
+	public final static String INTENDSTODO = "ItD";
+	public final static String DONE = "D";
+	
+	/**
+	 * Which kind of proposition this is.
+	 */
+	private String kind;
+	/**
+	 * The agent the proposition is about.
+	 */
+	private String agname;
+	/**
+	 * The belief, goal or action.
+	 */
+	private MCAPLFormula fmla;
+	/**
+	 * The multi-agent system containing the agent.
+	 */
+	private MCAPLmas mas;
+	/**
+	 * The agent, once found.
+	 */
+	private MCAPLLanguageAgent agent;
+	
+	/**
+	 * Constructor.
+	 * @param kind one of BELIEF, GOAL, INTENTION, INTENDSTODO or DONE.
+	 * @param agname
+	 * @param fmla
+	 * @param mas
+	 */
+	public AgentProposition(String kind, String agname, MCAPLFormula fmla, MCAPLmas mas) {
+		if (! (kind.equals(BELIEF) || kind.equals(GOAL) || kind.equals(INTENTION) || kind.equals(INTENDSTODO) || kind.equals(DONE))) {
+			throw new IllegalArgumentException("Unknown kind of proposition " + kind);
+		}
+		this.kind = kind;
+		this.agname = agname;
+		this.fmla = fmla;
+		this.mas = mas;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ajpf.psl.Proposition#check()
+	 */
+	public boolean check() {
+		if (kind.equals(DONE)) {
+			return mas.lastActionWas(agname, fmla);
+		}
+		
+		MCAPLLanguageAgent ag = getAgent();
+		if (ag == null) {
+			return false;
+		} else if (kind.equals(BELIEF)) {
+			return ag.MCAPLbelieves(fmla);
+		} else if (kind.equals(GOAL)) {
+			return ag.MCAPLhasGoal(fmla);
+		} else if (kind.equals(INTENTION)) {
+			return ag.MCAPLhasIntention(fmla);
+		} else {
+			return ag.MCAPLintendsToDo(fmla);
+		}
+	}
+	
+	/**
+	 * Beliefs, goals and intentions only change when the agent runs but the last
+	 * action changes whenever any agent acts.
+	 */
+	public String dependsOn() {
+		if (kind.equals(DONE)) {
+			return null;
+		}
+		return agname;
+	}
+	
+	/**
+	 * Find the agent the proposition is about.
+	 * @return
+	 */
+	private MCAPLLanguageAgent getAgent() {
+		if (agent == null) {
+			for (MCAPLLanguageAgent a: mas.getMCAPLAgents()) {
+				if (a.getMCAPLAgName().equals(agname)) {
+					agent = a;
+				}
+			}
+		}
+		return agent;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see ajpf.psl.Proposition#check(java.util.Set)
+	 */
+	public boolean check(Set<Proposition> props) {
+		return props.contains(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ajpf.psl.Proposition#equals(java.lang.Object)
+	 */
+	public boolean equals(Object phi) {
+		if (phi instanceof AgentProposition) {
+			return toString().equals(phi.toString());
+		}
+		return false;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ajpf.psl.Proposition#clone()
+	 */
+	public AgentProposition clone() {
+		return new AgentProposition(kind, agname, fmla, mas);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return kind + "(" + agname + "," + show(fmla) + ")";
+	}
+	
+	/**
+	 * Print a term as it would be written in a property.
+	 * @param t
+	 * @return
+	 */
+	private static String show(MCAPLTerm t) {
+		if (t.isNumeric() || t.getTermsSize() == 0) {
+			return t.toString().endsWith("()") ? t.getFunctor() : t.toString();
+		}
+		StringBuilder s = new StringBuilder(t.getFunctor());
+		String sep = "(";
+		for (MCAPLTerm ti: t.getTerms()) {
+			s.append(sep).append(show(ti));
+			sep = ",";
+		}
+		return s.append(")").toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ajpf.psl.MCAPLProperty#quickCompareVal()
+	 */
+	public int quickCompareVal() {
+		return 20;
+	}
+
+}
@@ -244,6 +244,16 @@ public abstract class Proposition implements MCAPLProperty {
 		}
 	}
 	
+	/**
+	 * The name of the jobber whose actions can change whether this proposition
+	 * holds, or null if it may be changed by anything.  Used by runtime monitors to
+	 * avoid checking propositions which can't have changed.
+	 * @return
+	 */
+	public String dependsOn() {
+		return null;
+	}
+	
 	/**
 	 * Getter method for the current truth value of this proposition
 	 * @return
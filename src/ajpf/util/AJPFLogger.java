@@ -213,6 +213,21 @@ public final class AJPFLogger {
 		  logger.severe(msg);
 	  }
 
+	  /**
+	   * Return this message, together with the throwable and its stack trace, if the log 
+	   * level is SEVERE or lower.
+	   * @param logname
+	   * @param msg
+	   * @param t
+	   */
+	  public static void severe(String logname, String msg, Throwable t) {
+		  Logger logger = Logger.getLogger(logname);
+		  if (levels.containsKey(logname) && levels.get(logname) != logger.getLevel()) {
+			  setLevel(logname, levels.get(logname));
+		  }
+		  logger.log(Level.SEVERE, msg, t);
+	  }
+
 	  /**
 	   * Return this message if the log level is WARNING or lower.
 	   * @param logname
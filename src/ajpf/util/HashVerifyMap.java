@@ -0,0 +1,210 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2012 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of Agent JPF (AJPF)
+//
+// AJPF is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// AJPF is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with AJPF; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ajpf.util;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.Collection;
+
+/**
+ * A hash indexed alternative to VerifyMap for use outside JPF.  Lookups are constant
+ * time but the map presents the same observable canonical form as a VerifyMap
+ * (toString lists the entries sorted by key and equals and hashCode agree with
+ * VerifyMap) so the two can be used interchangeably.
+ *
+ * NB.  Keys must not be altered in a way that changes their hashCode while they are in the map.
+ * @author louiseadennis
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class HashVerifyMap<K extends Comparable<? super K>, V> implements Map<K, V> {
+	HashMap<K, V> map = new HashMap<K, V>();
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#size()
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#isEmpty()
+	 */
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		return map.containsKey(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#containsValue(java.lang.Object)
+	 */
+	public boolean containsValue(Object value) {
+		return map.containsValue(value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#get(java.lang.Object)
+	 */
+	public V get(Object key) {
+		return map.get(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#put(java.lang.Object, java.lang.Object)
+	 */
+	public V put(K key, V value) {
+		// Replace the key as well as the value as VerifyMap does.
+		V out = map.remove(key);
+		map.put(key, value);
+		return out;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#remove(java.lang.Object)
+	 */
+	public V remove(Object key) {
+		return map.remove(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#putAll(java.util.Map)
+	 */
+	public void putAll(Map<? extends K, ? extends V> m) {
+		for (K key: m.keySet()) {
+			put(key, m.get(key));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#clear()
+	 */
+	public void clear() {
+		map.clear();
+	}
+
+	/**
+	 * NB.  Unlike VerifyMap this returns a view of the keys which is not sorted.
+	 */
+	public Set<K> keySet() {
+		return map.keySet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#values()
+	 */
+	public Collection<V> values() {
+		return map.values();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Map#entrySet()
+	 */
+	public Set<Map.Entry<K, V>> entrySet() {
+		return map.entrySet();
+	}
+
+	/**
+	 * Returns the keys of the map in their canonical (sorted) order.
+	 * @return
+	 */
+	public ArrayList<K> sortedKeys() {
+		ArrayList<K> keys = new ArrayList<K>(map.keySet());
+		Collections.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * Calculated the same way as VerifyMap.
+	 */
+	public int hashCode() {
+		int h = 0;
+		for (Map.Entry<K, V> e: map.entrySet()) {
+			h += e.getKey().hashCode() + e.getValue().hashCode()*7;
+		}
+		return h;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o instanceof Map<?, ?>) {
+			Map<?, ?> m = (Map<?, ?>) o;
+			if (m.size() != size()) {
+				return false;
+			}
+			for (Map.Entry<K, V> e: map.entrySet()) {
+				Object v = m.get(e.getKey());
+				if (v == null || ! e.getValue().equals(v)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Prints in the same format as VerifyMap.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder("[");
+		boolean first = true;
+		for (K key: sortedKeys()) {
+			if (! first) {
+				s.append(", ");
+			}
+			s.append(key.toString()).append("-").append(map.get(key).toString());
+			first = false;
+		}
+		s.append("]");
+		return s.toString();
+	}
+} ///:~
@@ -0,0 +1,260 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2012 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of Agent JPF (AJPF)
+//
+// AJPF is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// AJPF is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with AJPF; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package ajpf.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ListIterator;
+import java.util.function.UnaryOperator;
+
+/**
+ * An ArrayList which keeps its elements sorted.  Elements are placed by binary search
+ * after any elements they compare equal to, so the list is in exactly the order it would
+ * have after adding the element at the end and then sorting, but only a logarithmic number
+ * of comparisons are made.  Lookups and removals are also by binary search and so assume
+ * that elements which are equal also compare as equal.
+ *
+ * Like VerifyList this keeps the list in a canonical form for state matching, but it allows
+ * duplicates and is still an ArrayList so can be used in place of one which was sorted
+ * after every change.  Adding at an index adds in the sorted place instead and set moves
+ * the new element to its sorted place if need be.  Changes that can not keep the list sorted,
+ * such as adding or setting through a ListIterator, throw UnsupportedOperationException.
+ *
+ * @author louiseadennis
+ *
+ * @param <K>
+ */
+public class SortedList<K extends Comparable<? super K>> extends ArrayList<K> {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Inserts e into its sorted place in the list.  WARNING: This does
+	 * not implement the behaviour specified in List which states the element
+	 * should be added at the end of the list.
+	 */
+	public boolean add(K e) {
+		super.add(upperBound(e), e);
+		return true;
+	}
+
+	/**
+	 * Inserts elements of c into their sorted places in the List.  WARNING: This
+	 * contravenes the specification in List which states they should be placed at the end
+	 * of the list.
+	 */
+	public boolean addAll(Collection<? extends K> c) {
+		for (K e: c) {
+			add(e);
+		}
+		return ! c.isEmpty();
+	}
+
+	/**
+	 * Inserts e into its sorted place in the list.  WARNING: This ignores index.
+	 */
+	public void add(int index, K e) {
+		add(e);
+	}
+
+	/**
+	 * Inserts elements of c into their sorted places in the list.  WARNING: This ignores
+	 * index.
+	 */
+	public boolean addAll(int index, Collection<? extends K> c) {
+		return addAll(c);
+	}
+
+	/**
+	 * Replaces the element at index with e.  WARNING: If e does not belong at index it is
+	 * moved to its sorted place in the list, so afterwards e need not be at index.
+	 */
+	public K set(int index, K e) {
+		K old = get(index);
+		if ((index == 0 || get(index - 1).compareTo(e) <= 0) && (index == size() - 1 || e.compareTo(get(index + 1)) <= 0)) {
+			return super.set(index, e);
+		}
+		super.remove(index);
+		add(e);
+		return old;
+	}
+
+	/**
+	 * Not supported since the new elements need not be in order.
+	 */
+	public void replaceAll(UnaryOperator<K> operator) {
+		throw new UnsupportedOperationException("SortedList can not replace all its elements");
+	}
+
+	/**
+	 * Does nothing when c is null, since the list is already in its natural order, and is
+	 * not supported otherwise.
+	 */
+	public void sort(Comparator<? super K> c) {
+		if (c != null) {
+			throw new UnsupportedOperationException("SortedList can only be in natural order");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.ArrayList#listIterator()
+	 */
+	public ListIterator<K> listIterator() {
+		return listIterator(0);
+	}
+
+	/**
+	 * A ListIterator over the list which can remove elements, but which throws 
+	 * UnsupportedOperationException for add and set since these could put the list out of order.
+	 */
+	public ListIterator<K> listIterator(int index) {
+		final ListIterator<K> it = super.listIterator(index);
+		return new ListIterator<K>() {
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			public K next() {
+				return it.next();
+			}
+
+			public boolean hasPrevious() {
+				return it.hasPrevious();
+			}
+
+			public K previous() {
+				return it.previous();
+			}
+
+			public int nextIndex() {
+				return it.nextIndex();
+			}
+
+			public int previousIndex() {
+				return it.previousIndex();
+			}
+
+			public void remove() {
+				it.remove();
+			}
+
+			public void set(K e) {
+				throw new UnsupportedOperationException("SortedList can not set through an iterator");
+			}
+
+			public void add(K e) {
+				throw new UnsupportedOperationException("SortedList can not add through an iterator");
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.ArrayList#indexOf(java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	public int indexOf(Object o) {
+		if (o == null) {
+			return super.indexOf(o);
+		}
+		K k;
+		try {
+			k = (K) o;
+			for (int i = lowerBound(k); i < size(); i++) {
+				K e = get(i);
+				if (e.compareTo(k) != 0) {
+					return -1;
+				}
+				if (o.equals(e)) {
+					return i;
+				}
+			}
+		} catch (ClassCastException cce) {
+			return super.indexOf(o);
+		}
+		return -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.ArrayList#contains(java.lang.Object)
+	 */
+	public boolean contains(Object o) {
+		return indexOf(o) >= 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.ArrayList#remove(java.lang.Object)
+	 */
+	public boolean remove(Object o) {
+		int i = indexOf(o);
+		if (i >= 0) {
+			super.remove(i);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The index of the first element not less than k.
+	 * @param k
+	 * @return
+	 */
+	private int lowerBound(K k) {
+		int lo = 0;
+		int hi = size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (get(mid).compareTo(k) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * The index of the first element greater than k.
+	 * @param k
+	 * @return
+	 */
+	private int upperBound(K k) {
+		int lo = 0;
+		int hi = size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (get(mid).compareTo(k) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+} ///:~
@@ -0,0 +1,578 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+
+import ail.mas.AIL;
+import ail.mas.DefaultEnvironment;
+import ail.mas.MAS;
+import ail.semantics.AILAgent;
+import ail.semantics.operationalrules.DirectPerception;
+import ail.syntax.ApplicablePlan;
+import ail.syntax.Deed;
+import ail.syntax.Equation;
+import ail.syntax.Event;
+import ail.syntax.GBelief;
+import ail.syntax.Guard;
+import ail.syntax.Guard.GLogicalOp;
+import ail.syntax.Intention;
+import ail.syntax.IntentionRow;
+import ail.syntax.Literal;
+import ail.syntax.NumberTermImpl;
+import ail.syntax.Plan;
+import ail.syntax.PlanLibrary;
+import ail.syntax.Predicate;
+import ail.syntax.PredicateIndicator;
+import ail.syntax.Term;
+import ail.syntax.Unifier;
+import ail.syntax.VarTerm;
+import ail.util.AILConfig;
+import ajpf.MCAPLcontroller;
+
+/**
+ * Benchmarks for the parts of the AIL reasoning cycle that most affect performance: unification,
+ * belief guards, plan selection and perception, together with whole runs of the Dinor3x
+ * program against a simulated robot.
+ * 
+ * Run with the same ail.* and ajpf.* system properties as would go in a configuration file to
+ * measure the runtime options in AIL.configureRuntime, and see Harness for the properties
+ * controlling the runs and baselines.  e.g.
+ *   java -Dbench.out=before.properties benchmarks.AILBenchmarks
+ *   java -Dbench.baseline=before.properties -Dail.beliefbase.index=true benchmarks.AILBenchmarks
+ * 
+ * src/benchmarks/baseline.properties holds the results with every option at its default, from 
+ * the machine named in its header.  Times are only comparable on similar machines, so on another
+ * machine regenerate it before comparing, by running from the top of the project with no ail.* 
+ * or ajpf.* properties set:
+ *   java -Dbench.out=src/benchmarks/baseline.properties benchmarks.AILBenchmarks
+ * and then compare a change or an option against it with
+ *   java -Dbench.baseline=src/benchmarks/baseline.properties benchmarks.AILBenchmarks
+ * 
+ * @author louiseadennis
+ *
+ */
+public class AILBenchmarks {
+	
+	public static void main(String[] args) throws Exception {
+		AIL.configureRuntime(configFrom("ail.", "ajpf."));
+		
+		Harness h = new Harness();
+		h.add(new UnifyGround());
+		h.add(new UnifyNonGround());
+		for (int n: new int[] {5, 50}) {
+			h.add(new StandardiseApart(n));
+		}
+		for (int n: new int[] {10, 100, 10000}) {
+			h.add(new GuardGround(n));
+			h.add(new GuardAll(n));
+		}
+		h.add(new EquationThreshold());
+		h.add(new GuardThreshold());
+		h.add(new GuardWindow());
+		for (int n: new int[] {10, 100, 1000}) {
+			h.add(new RelevantPlans(n));
+		}
+		for (int n: new int[] {1, 10, 50}) {
+			h.add(new IntentionRowBuild(n));
+		}
+		h.add(new PerceptionChurn(100, 5));
+		h.add(new Dinor3xRun(10000));
+		h.runAll();
+		System.exit(0);
+	}
+	
+	/**
+	 * A configuration made from those system properties with the given prefixes.
+	 * @param prefixes
+	 * @return
+	 * @throws IOException
+	 */
+	static AILConfig configFrom(String... prefixes) throws IOException {
+		File f = File.createTempFile("bench", ".ail");
+		f.deleteOnExit();
+		FileWriter w = new FileWriter(f);
+		try {
+			for (Map.Entry<Object, Object> e: System.getProperties().entrySet()) {
+				for (String prefix: prefixes) {
+					if (e.getKey().toString().startsWith(prefix)) {
+						w.write(e.getKey() + " = " + e.getValue() + "\n");
+					}
+				}
+			}
+		} finally {
+			w.close();
+		}
+		return new AILConfig(f.getAbsolutePath());
+	}
+	
+	/**
+	 * f(a, g(b, 1), c)
+	 * @return
+	 */
+	static Predicate ground() {
+		Predicate p = new Predicate("f");
+		p.addTerm(new Predicate("a"));
+		Predicate g = new Predicate("g");
+		g.addTerm(new Predicate("b"));
+		g.addTerm(new NumberTermImpl(1));
+		p.addTerm(g);
+		p.addTerm(new Predicate("c"));
+		return p;
+	}
+	
+	/**
+	 * Unify two ground terms.
+	 */
+	static class UnifyGround extends Benchmark {
+		Predicate p1 = ground();
+		Predicate p2 = ground();
+		
+		UnifyGround() {
+			super("unify.ground");
+		}
+		
+		public Object run() {
+			return new Unifier().unifies(p1, p2);
+		}
+	}
+	
+	/**
+	 * Unify f(X, g(Y, 1), Z) with a ground term.
+	 */
+	static class UnifyNonGround extends Benchmark {
+		Predicate p1 = new Predicate("f");
+		Predicate p2 = ground();
+		
+		UnifyNonGround() {
+			super("unify.nonground");
+			p1.addTerm(new VarTerm("X"));
+			Predicate g = new Predicate("g");
+			g.addTerm(new VarTerm("Y"));
+			g.addTerm(new NumberTermImpl(1));
+			p1.addTerm(g);
+			p1.addTerm(new VarTerm("Z"));
+		}
+		
+		public Object run() {
+			Unifier u = new Unifier();
+			u.unifies(p1, p2);
+			return u;
+		}
+	}
+	
+	/**
+	 * Standardise apart f(X0, ..., Xn-1) from another copy of itself, with half its variables 
+	 * in the unifier.
+	 */
+	static class StandardiseApart extends Benchmark {
+		int n;
+		Predicate other;
+		Unifier u = new Unifier();
+		
+		StandardiseApart(int n) {
+			super("standardise.apart." + n);
+			this.n = n;
+		}
+		
+		Predicate withVars() {
+			Predicate p = new Predicate("f");
+			for (int i = 0; i < n; i++) {
+				p.addTerm(new VarTerm("X" + i));
+			}
+			return p;
+		}
+		
+		public void setUp() {
+			other = withVars();
+			for (int i = 0; i < n; i += 2) {
+				u.unifies(new VarTerm("X" + i), new NumberTermImpl(i));
+			}
+		}
+		
+		public Object run() {
+			Predicate p = withVars();
+			p.standardise_apart(other, u.clone());
+			return p;
+		}
+	}
+	
+	/**
+	 * An agent believing b(0, v0) ... b(n-1, vn-1).
+	 * @param n
+	 * @return
+	 */
+	static AILAgent believer(int n) {
+		AILAgent a = new AILAgent("bench");
+		for (int i = 0; i < n; i++) {
+			Literal b = new Literal("b");
+			b.addTerm(new NumberTermImpl(i));
+			b.addTerm(new Literal("v" + i));
+			a.addBel(b, AILAgent.refertoself());
+		}
+		return a;
+	}
+	
+	/**
+	 * Check a ground belief guard against a belief base of n beliefs.
+	 */
+	static class GuardGround extends Benchmark {
+		int n;
+		AILAgent a;
+		Guard g;
+		
+		GuardGround(int n) {
+			super("guard.ground." + n);
+			this.n = n;
+		}
+		
+		public void setUp() {
+			a = believer(n);
+			Literal b = new Literal("b");
+			b.addTerm(new NumberTermImpl(n / 2));
+			b.addTerm(new Literal("v" + (n / 2)));
+			g = new Guard(new GBelief(b));
+		}
+		
+		public Object run() {
+			return g.logicalConsequence(a, new Unifier(), g.getVarNames()).hasNext();
+		}
+	}
+	
+	/**
+	 * Find every solution of the guard b(X, Y) in a belief base of n beliefs.
+	 */
+	static class GuardAll extends Benchmark {
+		int n;
+		AILAgent a;
+		Guard g;
+		
+		GuardAll(int n) {
+			super("guard.all." + n);
+			this.n = n;
+		}
+		
+		public void setUp() {
+			a = believer(n);
+			Literal b = new Literal("b");
+			b.addTerm(new VarTerm("X"));
+			b.addTerm(new VarTerm("Y"));
+			g = new Guard(new GBelief(b));
+		}
+		
+		public Object run() {
+			int count = 0;
+			Iterator<Unifier> it = g.logicalConsequence(a, new Unifier(), g.getVarNames());
+			while (it.hasNext()) {
+				it.next();
+				count++;
+			}
+			return count;
+		}
+	}
+	
+	/**
+	 * The readings a sensor gives, one per operation of the threshold benchmarks.
+	 */
+	static final int[] readings = new int[100];
+	static {
+		for (int i = 0; i < readings.length; i++) {
+			readings[i] = (i * 37) % 100;
+		}
+	}
+	
+	/**
+	 * A belief name(v).
+	 * @param name
+	 * @param v
+	 * @return
+	 */
+	static Literal threshold(String name, Term v) {
+		Literal b = new Literal(name);
+		b.addTerm(v);
+		return b;
+	}
+	
+	/**
+	 * Check D < V for each new distance reading D once V has been found, the comparison part of 
+	 * the Dinor3x obstacle guard.
+	 */
+	static class EquationThreshold extends Benchmark {
+		Equation e;
+		Unifier[] samples = new Unifier[readings.length];
+		int next = 0;
+		
+		EquationThreshold() {
+			super("equation.threshold");
+		}
+		
+		public void setUp() {
+			VarTerm d = new VarTerm("D");
+			VarTerm v = new VarTerm("V");
+			e = new Equation(d, Equation.NumericOp.less, v);
+			for (int i = 0; i < readings.length; i++) {
+				samples[i] = new Unifier();
+				samples[i].unifies(v, new NumberTermImpl(40));
+				samples[i].unifies(d, new NumberTermImpl(readings[i]));
+			}
+		}
+		
+		public Object run() {
+			return e.logicalConsequence(null, null, samples[next++ % samples.length], null).hasNext();
+		}
+	}
+	
+	/**
+	 * Check the Dinor3x obstacle guard B distance_threshold(V), D < V for each new distance reading D,
+	 * as is done whenever the distance sensor is sampled.
+	 */
+	static class GuardThreshold extends Benchmark {
+		AILAgent a;
+		Guard g;
+		VarTerm d = new VarTerm("D");
+		int next = 0;
+		
+		GuardThreshold() {
+			super("guard.threshold");
+		}
+		
+		public void setUp() {
+			a = new AILAgent("bench");
+			a.addBel(threshold("distance_threshold", new NumberTermImpl(40)), AILAgent.refertoself());
+			g = new Guard(new Guard(new GBelief(threshold("distance_threshold", new VarTerm("V")))), GLogicalOp.and,
+					new Equation(d, Equation.NumericOp.less, new VarTerm("V")));
+		}
+		
+		public Object run() {
+			Unifier u = new Unifier();
+			u.unifies(d, new NumberTermImpl(readings[next++ % readings.length]));
+			return g.logicalConsequence(a, u, g.getVarNames()).hasNext();
+		}
+	}
+	
+	/**
+	 * Check the Dinor3x water guard B water_threshold_upper(V), B water_threshold_lower(V2), V2 < L, L < V
+	 * for each new light reading L, as is done whenever the colour sensor is sampled.
+	 */
+	static class GuardWindow extends Benchmark {
+		AILAgent a;
+		Guard g;
+		VarTerm l = new VarTerm("L");
+		int next = 0;
+		
+		GuardWindow() {
+			super("guard.window");
+		}
+		
+		public void setUp() {
+			a = new AILAgent("bench");
+			a.addBel(threshold("water_threshold_upper", new NumberTermImpl(60)), AILAgent.refertoself());
+			a.addBel(threshold("water_threshold_lower", new NumberTermImpl(30)), AILAgent.refertoself());
+			VarTerm v = new VarTerm("V");
+			VarTerm v2 = new VarTerm("V2");
+			Guard beliefs = new Guard(new Guard(new GBelief(threshold("water_threshold_upper", v))), GLogicalOp.and,
+					new GBelief(threshold("water_threshold_lower", v2)));
+			Guard lower = new Guard(beliefs, GLogicalOp.and, new Equation(v2, Equation.NumericOp.less, l));
+			g = new Guard(lower, GLogicalOp.and, new Equation(l, Equation.NumericOp.less, v));
+		}
+		
+		public Object run() {
+			Unifier u = new Unifier();
+			u.unifies(l, new NumberTermImpl(readings[next++ % readings.length]));
+			return g.logicalConsequence(a, u, g.getVarNames()).hasNext();
+		}
+	}
+	
+	/**
+	 * Find the plans relevant to +p(4, v) in a library of n plans triggered by +p(i, X), half
+	 * of them for other predicates.
+	 */
+	static class RelevantPlans extends Benchmark {
+		int n;
+		AILAgent a;
+		PredicateIndicator pi;
+		
+		RelevantPlans(int n) {
+			super("plans.relevant." + n);
+			this.n = n;
+		}
+		
+		public void setUp() throws Exception {
+			a = new AILAgent("bench");
+			PlanLibrary pl = new PlanLibrary();
+			for (int i = 0; i < n; i++) {
+				Literal trigger = new Literal(i % 2 == 0 ? "p" : "q" + i);
+				trigger.addTerm(new NumberTermImpl(i % 10));
+				trigger.addTerm(new VarTerm("X"));
+				ArrayList<Guard> context = new ArrayList<Guard>();
+				context.add(new Guard(new GBelief()));
+				ArrayList<Deed> body = new ArrayList<Deed>();
+				body.add(new Deed(new Predicate("act" + i)));
+				pl.add(new Plan(new Event(Event.AILAddition, Event.AILBel, trigger), new ArrayList<Deed>(), context, body));
+			}
+			a.setPlanLibrary(pl);
+			Literal e = new Literal("p");
+			e.addTerm(new NumberTermImpl(4));
+			e.addTerm(new Literal("v"));
+			Event event = new Event(Event.AILAddition, Event.AILBel, e);
+			a.setIntention(new Intention(event, AILAgent.refertoself()));
+			pi = event.getPredicateIndicator();
+		}
+		
+		public Object run() {
+			int count = 0;
+			Iterator<ApplicablePlan> it = a.getPL().getAllRelevant(pi, a);
+			while (it.hasNext()) {
+				it.next();
+				count++;
+			}
+			return count;
+		}
+	}
+	
+	/**
+	 * Make the intention row for a plan with a body of n deeds, as when a plan is applied, 
+	 * under a unifier binding five variables.
+	 */
+	static class IntentionRowBuild extends Benchmark {
+		int n;
+		Event e;
+		ArrayList<Guard> gs = new ArrayList<Guard>();
+		ArrayList<Deed> ds = new ArrayList<Deed>();
+		Unifier theta = new Unifier();
+		
+		IntentionRowBuild(int n) {
+			super("intention.row." + n);
+			this.n = n;
+		}
+		
+		public void setUp() {
+			Literal trigger = new Literal("p");
+			trigger.addTerm(new VarTerm("X"));
+			e = new Event(Event.AILAddition, Event.AILBel, trigger);
+			for (int i = 0; i < n; i++) {
+				gs.add(new Guard(new GBelief()));
+				Predicate act = new Predicate("act" + i);
+				act.addTerm(new VarTerm("X"));
+				ds.add(new Deed(act));
+			}
+			for (int i = 0; i < 5; i++) {
+				theta.unifies(new VarTerm(i == 0 ? "X" : "Y" + i), ground());
+			}
+		}
+		
+		public Object run() {
+			return new IntentionRow(e, gs, ds, theta);
+		}
+	}
+	
+	/**
+	 * Perception for an agent perceiving n things, churn of which change between each perception.
+	 */
+	static class PerceptionChurn extends Benchmark {
+		int n;
+		int churn;
+		int next;
+		AILAgent a;
+		DefaultEnvironment env;
+		DirectPerception rule = new DirectPerception();
+		
+		PerceptionChurn(int n, int churn) {
+			super("perception.churn." + n + "." + churn);
+			this.n = n;
+			this.churn = churn;
+		}
+		
+		public void setUp() {
+			MAS mas = new MAS();
+			a = new AILAgent("bench");
+			mas.addAg(a);
+			env = new DefaultEnvironment();
+			mas.setEnv(env);
+			for (next = 0; next < n; next++) {
+				env.addPercept(percept(next));
+			}
+		}
+		
+		Literal percept(int i) {
+			Literal p = new Literal("s");
+			p.addTerm(new NumberTermImpl(i));
+			return p;
+		}
+		
+		public Object run() {
+			for (int i = 0; i < churn; i++) {
+				env.removePercept(percept(next - n));
+				env.addPercept(percept(next++));
+			}
+			rule.apply(a);
+			return a.getBB().size();
+		}
+	}
+	
+	/**
+	 * Run the Dinor3x program against a simulated robot for some simulated time.  The robot
+	 * turns away from obstacles and drives on once they are gone.
+	 */
+	static class Dinor3xRun extends Benchmark {
+		long duration;
+		AILConfig config;
+		
+		Dinor3xRun(long duration) {
+			super("dinor3x.run." + duration + "ms");
+			this.duration = duration;
+		}
+		
+		public void setUp() throws IOException {
+			File f = File.createTempFile("dinor3x", ".ail");
+			f.deleteOnExit();
+			FileWriter w = new FileWriter(f);
+			try {
+				w.write("mas.file = " + System.getProperty("bench.dinor3x", "/src/eass/ev3/cheltenham/Dinor3x.eass") + "\n");
+				w.write("mas.builder = eass.EASSMASBuilder\n");
+				w.write("env = eass.mas.ev3.SimulatedEV3Environment\n");
+				w.write("ev3.sim.duration = " + duration + "\n");
+				w.write("ev3.sim.rule1 = anything right\n");
+				w.write("ev3.sim.rule2 = anything forward\n");
+				w.write("log.severe = ail.mas.DefaultEnvironment,eass.mas.DefaultEASSEnvironment,ajpf.MCAPLAgent\n");
+			} finally {
+				w.close();
+			}
+			config = new AILConfig(f.getAbsolutePath());
+			AIL.configureLogging(config);
+		}
+		
+		public Object run() {
+			MAS mas = AIL.AILSetup(config);
+			MCAPLcontroller mc = new MCAPLcontroller(mas, "", 1);
+			mc.begin();
+			return mas;
+		}
+	}
+}
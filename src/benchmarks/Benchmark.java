@@ -0,0 +1,75 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package benchmarks;
+
+/**
+ * A single benchmark run by the Harness.  Subclasses do any expensive set up in setUp, so 
+ * that only run is timed.  run should return something computed from the work it does so 
+ * that the JIT can't decide the work is unnecessary.
+ * 
+ * @author louiseadennis
+ *
+ */
+public abstract class Benchmark {
+	/**
+	 * The name the benchmark is reported (and baselined) under.
+	 */
+	private String name;
+	
+	/**
+	 * Constructor.
+	 * @param name
+	 */
+	public Benchmark(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Getter for the name.
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Called once before the benchmark is warmed up and measured.
+	 * @throws Exception
+	 */
+	public void setUp() throws Exception {
+	}
+	
+	/**
+	 * One operation of the benchmark.
+	 * @return
+	 * @throws Exception
+	 */
+	public abstract Object run() throws Exception;
+	
+	/**
+	 * Called once after the benchmark has been measured.
+	 */
+	public void tearDown() {
+	}
+}
@@ -0,0 +1,227 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Louise A. Dennis, and  Michael Fisher
+//
+// This file is part of the Agent Infrastructure Layer (AIL)
+//
+// The AIL is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+//
+// The AIL is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package benchmarks;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Runs Benchmarks and reports the average time and, where the JVM can measure it, the average
+ * number of bytes allocated per operation.  Each benchmark is warmed up and then timed over 
+ * several iterations, each of which runs it repeatedly for a fixed time.
+ * 
+ * Results can be saved as a baseline and later runs compared against it, so the effect of
+ * a change can be measured by running the benchmarks before and after it.  Settings are
+ * taken from system properties:
+ *   bench.warmup - milliseconds of warm up per benchmark (default 1000).
+ *   bench.iterations - number of timed iterations (default 5).
+ *   bench.time - milliseconds per timed iteration (default 1000).
+ *   bench.filter - only run benchmarks whose names contain this.
+ *   bench.out - file to save the results to as a baseline.
+ *   bench.baseline - baseline file to compare the results with.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class Harness {
+	long warmup = Long.getLong("bench.warmup", 1000);
+	int iterations = Integer.getInteger("bench.iterations", 5);
+	long time = Long.getLong("bench.time", 1000);
+	String filter = System.getProperty("bench.filter");
+	
+	List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+	Properties results = new Properties();
+	
+	/**
+	 * Somewhere to put the results of operations so they are not optimised away.
+	 */
+	int sink = 0;
+	
+	/**
+	 * The JVM's per thread allocation counter, or null if it doesn't have one.
+	 */
+	com.sun.management.ThreadMXBean allocation = allocationCounter();
+	
+	/**
+	 * Add a benchmark to be run.
+	 * @param b
+	 */
+	public void add(Benchmark b) {
+		benchmarks.add(b);
+	}
+	
+	/**
+	 * Run all the benchmarks, print the results and save or compare them with a baseline as requested.
+	 * @throws Exception
+	 */
+	public void runAll() throws Exception {
+		Properties baseline = null;
+		String baselinefile = System.getProperty("bench.baseline");
+		if (baselinefile != null) {
+			baseline = new Properties();
+			FileInputStream in = new FileInputStream(baselinefile);
+			try {
+				baseline.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		
+		System.out.println(String.format(Locale.ROOT, "%-40s %14s %10s %10s %12s %10s", "benchmark", "ns/op", "error", "baseline", "B/op", "baseline"));
+		for (Benchmark b: benchmarks) {
+			if (filter != null && ! b.getName().contains(filter)) {
+				continue;
+			}
+			double[] r = measure(b);
+			results.setProperty(b.getName(), String.format(Locale.ROOT, "%.1f", r[0]));
+			String compare = "";
+			if (baseline != null && baseline.getProperty(b.getName()) != null) {
+				double before = Double.parseDouble(baseline.getProperty(b.getName()));
+				compare = String.format(Locale.ROOT, "x%.2f", r[0] / before);
+			}
+			String bytes = "";
+			String comparebytes = "";
+			if (r[2] >= 0) {
+				results.setProperty(b.getName() + ".bytes", String.format(Locale.ROOT, "%.1f", r[2]));
+				bytes = String.format(Locale.ROOT, "%.1f", r[2]);
+				if (baseline != null && baseline.getProperty(b.getName() + ".bytes") != null) {
+					double before = Double.parseDouble(baseline.getProperty(b.getName() + ".bytes"));
+					comparebytes = before > 0 ? String.format(Locale.ROOT, "x%.2f", r[2] / before) : "";
+				}
+			}
+			System.out.println(String.format(Locale.ROOT, "%-40s %14.1f %9.1f%% %10s %12s %10s", b.getName(), r[0], r[1], compare, bytes, comparebytes));
+		}
+		
+		String out = System.getProperty("bench.out");
+		if (out != null) {
+			save(out);
+		}
+	}
+	
+	/**
+	 * Warm up and time a benchmark.
+	 * @param b
+	 * @return the mean time per operation in nanoseconds, the spread of the iterations as 
+	 * a percentage of it and the mean bytes allocated per operation (-1 if unknown).
+	 * @throws Exception
+	 */
+	public double[] measure(Benchmark b) throws Exception {
+		b.setUp();
+		try {
+			runFor(b, warmup);
+			double[] times = new double[iterations];
+			double total = 0;
+			double bytes = 0;
+			for (int i = 0; i < iterations; i++) {
+				times[i] = runFor(b, time);
+				total += times[i];
+				bytes += lastbytes;
+			}
+			double mean = total / iterations;
+			double min = Double.MAX_VALUE;
+			double max = 0;
+			for (double t: times) {
+				min = Math.min(min, t);
+				max = Math.max(max, t);
+			}
+			return new double[] {mean, mean > 0 ? (max - min) / 2 / mean * 100 : 0, bytes < 0 ? -1 : bytes / iterations};
+		} finally {
+			b.tearDown();
+		}
+	}
+	
+	/**
+	 * The average bytes allocated per operation in the last call to runFor, or -1 if unknown.
+	 */
+	private double lastbytes = -1;
+	
+	/**
+	 * Run the benchmark repeatedly for at least millis milliseconds, and at least once.
+	 * @param b
+	 * @param millis
+	 * @return the average time per operation in nanoseconds.
+	 * @throws Exception
+	 */
+	private double runFor(Benchmark b, long millis) throws Exception {
+		long budget = millis * 1000000;
+		long ops = 0;
+		long thread = Thread.currentThread().getId();
+		long allocated = allocation != null ? allocation.getThreadAllocatedBytes(thread) : -1;
+		long start = System.nanoTime();
+		long elapsed = 0;
+		do {
+			Object o = b.run();
+			if (o != null) {
+				sink += o.hashCode();
+			}
+			ops++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < budget);
+		if (allocated >= 0) {
+			lastbytes = (double) (allocation.getThreadAllocatedBytes(thread) - allocated) / ops;
+		}
+		return (double) elapsed / ops;
+	}
+	
+	/**
+	 * The per thread allocation counter if this JVM provides one and it can be switched on.
+	 * @return
+	 */
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		try {
+			java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+			if (mx instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean smx = (com.sun.management.ThreadMXBean) mx;
+				if (smx.isThreadAllocatedMemorySupported()) {
+					smx.setThreadAllocatedMemoryEnabled(true);
+					return smx;
+				}
+			}
+		} catch (UnsupportedOperationException e) {
+		}
+		return null;
+	}
+	
+	/**
+	 * Save the results to a file so they can be used as a baseline.
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void save(String filename) throws IOException {
+		FileOutputStream out = new FileOutputStream(filename);
+		try {
+			results.store(out, String.format(Locale.ROOT, "ns/op and B/op (.bytes) on %s %s, %s %s, %d processors; warmup %dms, %d iterations of %dms",
+					System.getProperty("java.vm.name"), System.getProperty("java.version"), System.getProperty("os.name"), System.getProperty("os.arch"),
+					Runtime.getRuntime().availableProcessors(), warmup, iterations, time));
+		} finally {
+			out.close();
+		}
+	}
+}
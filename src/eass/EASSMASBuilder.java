@@ -25,23 +25,31 @@
 
 package eass;
 
+import java.io.File;
+import java.io.IOException;
+
 import mcaplantlr.runtime.ANTLRFileStream;
 import mcaplantlr.runtime.ANTLRStringStream;
 import mcaplantlr.runtime.CommonTokenStream;
 
 import ail.mas.MAS;
 import ail.mas.MASBuilder;
+import ail.mas.MASImageCache;
 import ail.syntax.ast.Abstract_MAS;
 
 import eass.parser.EASSLexer;
 import eass.parser.EASSParser;
 
+import ajpf.util.AJPFLogger;
+
 /**
  * Utility class.  Builds an EASS MAS by parsing a string or a file.
  * @author louiseadennis
  *
  */
 public class EASSMASBuilder implements MASBuilder {
+	static String logname = "eass.EASSMASBuilder";
+	
 	MAS mas;
 	
 	Abstract_MAS amas;
@@ -64,7 +72,27 @@ public class EASSMASBuilder implements MASBuilder {
 		mas = amas.toMCAPL();
 	}
 	
+	/**
+	 * Parse a file, or load the image of it if image caching is on and the file
+	 * hasn't changed since the image was written.
+	 * @param masstring
+	 */
 	public void parsefile(String masstring) {
+		long start = System.nanoTime();
+		File image = null;
+		if (MASImageCache.caching()) {
+			try {
+				image = MASImageCache.imageFor(masstring);
+				amas = MASImageCache.read(image);
+				if (amas != null) {
+					AJPFLogger.info(logname, "Loaded image of " + masstring + " in " + (System.nanoTime() - start)/1000000 + "ms");
+					return;
+				}
+			} catch (IOException e) {
+				AJPFLogger.warning(logname, e.getMessage());
+			}
+		}
+		
 		try {
 			EASSLexer lexer = new EASSLexer(new ANTLRFileStream(masstring));
 			CommonTokenStream tokens = new CommonTokenStream(lexer);
@@ -73,7 +101,11 @@ public class EASSMASBuilder implements MASBuilder {
      	} catch (Exception e) {
      		e.printStackTrace();
     	}
+		AJPFLogger.info(logname, "Parsed " + masstring + " in " + (System.nanoTime() - start)/1000000 + "ms");
 		
+		if (image != null && amas != null) {
+			MASImageCache.write(image, amas);
+		}
 	}
 
 	public void parse(String masstring) {
@@ -23,6 +23,7 @@
 //----------------------------------------------------------------------------
 package eass.ev3.cheltenham;
 
+import ail.util.AILConfig;
 import ail.util.AILexception;
 import ail.mas.RoundRobinScheduler;
 import ail.syntax.Predicate;
@@ -31,11 +32,16 @@ import ail.syntax.Unifier;
 import ail.syntax.Action;
 import ail.syntax.Literal;
 import ail.syntax.NumberTerm;
+import ail.syntax.NumberTermImpl;
 import ail.syntax.VarTerm;
 import eass.mas.ev3.EASSEV3Environment;
+import eass.mas.ev3.ControlLoop;
 import eass.mas.ev3.LegoRobot;
+import eass.mas.ev3.MoveTracker;
+import ajpf.util.AJPFLogger;
 
 import java.io.PrintStream;
+import java.util.LinkedList;
 import java.util.Random;
 import java.util.Set;
 
@@ -46,10 +52,13 @@ import java.util.Set;
  * The robots should be able to move around a custom built table, detect obstacles, follow paths and detect white, black and blue areas on the
  * table top.
  * 
+ * Given a trace to replay (see EASSEV3Environment) it uses a Dinor3x with no brick, so a run
+ * recorded from the robot and its user interface can be repeated without either.
+ * 
  * @author louiseadennis
  *
  */
-public class DinoEnvironment extends EASSEV3Environment {
+public class DinoEnvironment extends EASSEV3Environment implements MoveTracker.MoveListener {
 	boolean rule1 = false;
 	boolean rule2 = false;
 	boolean rule3 = false;
@@ -80,8 +89,20 @@ public class DinoEnvironment extends EASSEV3Environment {
 	static Literal watergoal = new Literal("goal");
 	static {watergoal.addTerm(new Literal("water"));};
 	
-	private LineFollowingThread line_follower;
-	private RandomMotionThread random;
+	// Read by addUniquePercept on the sensor threads.
+	private volatile LineFollowingThread line_follower;
+	private volatile RandomMotionThread random;
+	// The least time (in milliseconds) between steps of the line following and random motion loops.
+	long lineperiod = 20;
+	long randomperiod = 20;
+	// The window (in milliseconds) within which bursts of motion commands to the robot are coalesced.
+	long commandwindow = 0;
+	// The percepts for the moves which have finished and are still perceived, oldest first.
+	private LinkedList<Literal> finishedmoves = new LinkedList<Literal>();
+	// How many finished moves are perceived at once.
+	static int movesperceived = 10;
+	
+	static String logname = "eass.ev3.cheltenham.DinoEnvironment";
 	
 	DinoUI ui;
 	
@@ -110,10 +131,16 @@ public class DinoEnvironment extends EASSEV3Environment {
 	public LegoRobot createRobot(String agent) throws Exception {
 		Dinor3x robot;
 		try {
-			System.err.println("Contacting Robot");
-			robot = new Dinor3x("10.0.1.1");
-			System.err.println("Connection Established");
+			if (replaying()) {
+				robot = new Dinor3x();
+			} else {
+				System.err.println("Contacting Robot");
+				robot = new Dinor3x("10.0.1.1");
+				System.err.println("Connection Established");
+			}
 			addRobot(agent, robot);
+			robot.setMoveListener(this);
+			robot.setCommandWindow(commandwindow);
 			addSharedBelief(agent, create_rule_action("rule1", "act1", new Predicate("do_nothing")));
 			addSharedBelief(agent, create_rule_action("rule1", "act2", new Predicate("do_nothing")));
 			addSharedBelief(agent, create_rule_action("rule1", "act3", new Predicate("do_nothing")));
@@ -137,6 +164,71 @@ public class DinoEnvironment extends EASSEV3Environment {
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSEV3Environment#configure(ail.util.AILConfig)
+	 */
+	@Override
+	public void configure(AILConfig config) {
+		super.configure(config);
+		if (config.containsKey("dino.linefollowing.period")) {
+			lineperiod = Long.parseLong(config.getProperty("dino.linefollowing.period"));
+		}
+		if (config.containsKey("dino.random.period")) {
+			randomperiod = Long.parseLong(config.getProperty("dino.random.period"));
+		}
+		if (config.containsKey("dino.command.window")) {
+			commandwindow = Long.parseLong(config.getProperty("dino.command.window"));
+		}
+	}
+	
+	/**
+	 * Also wakes any running control loop, since it may want to react to the new value.
+	 */
+	@Override
+	public void addUniquePercept(String s, Predicate pred) {
+		super.addUniquePercept(s, pred);
+		signalLoops();
+	}
+	
+	/**
+	 * Also wakes any running control loop, since it may want to react to the new value.
+	 */
+	@Override
+	public void addUniquePercept(String agName, String s, Predicate pred) {
+		super.addUniquePercept(agName, s, pred);
+		signalLoops();
+	}
+	
+	/**
+	 * Tell the running control loops there is a new sensor value.
+	 */
+	private void signalLoops() {
+		LineFollowingThread l = line_follower;
+		if (l != null) {
+			l.signal();
+		}
+		RandomMotionThread rm = random;
+		if (rm != null) {
+			rm.signal();
+		}
+	}
+	
+	/**
+	 * Tell the agents a move has finished with the percept move_done(Id), or move_cancelled(Id)
+	 * if it was pre-empted by another command.  Each move has its own percept, so one move
+	 * finishing does not hide another, until movesperceived later moves have finished.
+	 */
+	public synchronized void moveFinished(int id, boolean completed) {
+		Literal move = new Literal(completed ? "move_done" : "move_cancelled");
+		move.addTerm(new NumberTermImpl(id));
+		addPercept(move);
+		finishedmoves.add(move);
+		if (finishedmoves.size() > movesperceived) {
+			removePercept(finishedmoves.removeFirst());
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see eass.mas.DefaultEASSEnvironment#getPercepts(java.lang.String, boolean)
@@ -165,9 +257,12 @@ public class DinoEnvironment extends EASSEV3Environment {
 		   Unifier u = new Unifier();
 		   String rname = rationalName(agName);
 		   Dinor3x robot = (Dinor3x) getRobot(rname);
+		   // The id of any move of a fixed distance or angle that was started.
+		   int moveid = 0;
 		   synchronized(robot) {
 			   
-			   // Teleoperation commands.
+			   // Teleoperation commands.  The "a_bit" moves return without waiting for the robot and
+			   // the id of the move can be bound to their argument, if any.
 			   	if (act.getFunctor().equals("forward")) {
 			   		stopLineFollowing();
 			   		stopRandom();
@@ -175,7 +270,7 @@ public class DinoEnvironment extends EASSEV3Environment {
 			   	} else if (act.getFunctor().equals("forward_a_bit")) {
 			   		stopLineFollowing();
 			   		stopRandom();
-			   		robot.short_forward();
+			   		moveid = robot.short_forward();
 			   	}else if (act.getFunctor().equals("stop")) {
 			   		stopLineFollowing();
 			   		stopRandom();
@@ -187,7 +282,7 @@ public class DinoEnvironment extends EASSEV3Environment {
 			   	} else if (act.getFunctor().equals("right_a_bit")) {
 			   		stopLineFollowing();
 			   		stopRandom();
-			   		robot.short_right();
+			   		moveid = robot.short_right();
 			   	} else if (act.getFunctor().equals("left")) {
 			   		stopLineFollowing();
 			   		stopRandom();
@@ -195,7 +290,7 @@ public class DinoEnvironment extends EASSEV3Environment {
 			   	} else if (act.getFunctor().equals("left_a_bit")) {
 			   		stopLineFollowing();
 			   		stopRandom();
-			   		robot.short_left();
+			   		moveid = robot.short_left();
 			   	} else if (act.getFunctor().equals("backward")) {
 			   		stopLineFollowing();
 			   		stopRandom();
@@ -203,26 +298,18 @@ public class DinoEnvironment extends EASSEV3Environment {
 			   	} else if (act.getFunctor().equals("backward_a_bit")) {
 			   		stopLineFollowing();
 			   		stopRandom();
-			   		robot.short_backward();
+			   		moveid = robot.short_backward();
 			   	} else if (act.getFunctor().equals("follow_line")) {
 			   		stopRandom();
 			   		if (line_follower == null) {
-			   			line_follower = new LineFollowingThread(robot);
-			   			synchronized (line_follower) {
-			   				if (!line_follower.isAlive()) {
-			   					line_follower.start();
-			   				}
-			   			}
+			   			line_follower = new LineFollowingThread(robot, lineperiod);
+			   			line_follower.start();
 			   		}
 			   	} else if (act.getFunctor().equals("random")) {
 			   		stopLineFollowing();
 			   		if (random == null) {
-			   			random = new RandomMotionThread(robot);
-				   		synchronized (random) {
-				   			if (!random.isAlive()) {
-				   				random.start();
-				   			}
-				   		}
+			   			random = new RandomMotionThread(robot, randomperiod);
+			   			random.start();
 			   		}
 			   	} else if (act.getFunctor().equals("scare")) {
 			   		robot.scare();
@@ -350,7 +437,9 @@ public class DinoEnvironment extends EASSEV3Environment {
 			   		String abstraction_name = "abstraction_" + rname;
 			   		addPercept(abstraction_name, distance_threshold);
 			   		dthreshold  = ((NumberTerm) act.getTerm(0)).solve();
-			   		ui.changeDistanceThreshold(((NumberTerm) act.getTerm(0)).solve());
+			   		if (ui != null) {
+			   			ui.changeDistanceThreshold(((NumberTerm) act.getTerm(0)).solve());
+			   		}
 			   	} else if (act.getFunctor().equals("water_levels")) {
 			   		Literal water_threshold = new Literal("change_water");
 			   		water_threshold.addTerm(act.getTerm(0));
@@ -359,33 +448,50 @@ public class DinoEnvironment extends EASSEV3Environment {
 			   		addPercept(abstraction_name, water_threshold);
 			   		wuthreshold = ((NumberTerm) act.getTerm(0)).solve();
 			   		wlthreshold = ((NumberTerm) act.getTerm(1)).solve();
-			   		ui.changeWaterThresholds(((NumberTerm) act.getTerm(0)).solve(), ((NumberTerm) act.getTerm(1)).solve());
+			   		if (ui != null) {
+			   			ui.changeWaterThresholds(((NumberTerm) act.getTerm(0)).solve(), ((NumberTerm) act.getTerm(1)).solve());
+			   		}
 			   	} else if (act.getFunctor().equals("path_threshold")) {
 			   		Literal path = new Literal("change_path");
 			   		path.addTerm(act.getTerm(0));
 			   		String abstraction_name = "abstraction_" + rname;
 			   		addPercept(abstraction_name, path);
 			   		path_threshold = ((NumberTerm) act.getTerm(0)).solve();
-			   		ui.changePathThreshold(((NumberTerm) act.getTerm(0)).solve());
+			   		if (ui != null) {
+			   			ui.changePathThreshold(((NumberTerm) act.getTerm(0)).solve());
+			   		}
 			   	} 
 			   	
 			   	// Commands to pass stuff back to the interace
 			   	else if (act.getFunctor().equals("show_belief")) {
 			   		Predicate belief = (Predicate) act.getTerm(0);
-			   		ui.addToBeliefList(belief.toString());
+			   		if (ui != null) {
+			   			ui.addToBeliefList(belief.toString());
+			   		}
 			   	} else if (act.getFunctor().equals("remove_belief")) {
 			   		Predicate belief = (Predicate) act.getTerm(0);
-			   		ui.removeFromBeliefList(belief.toString());
+			   		if (ui != null) {
+			   			ui.removeFromBeliefList(belief.toString());
+			   		}
 			   	} else if (act.getFunctor().equals("show_goal")) {
 			   		Predicate belief = (Predicate) act.getTerm(0);
-			   		ui.addToGoalList(belief.toString());
+			   		if (ui != null) {
+			   			ui.addToGoalList(belief.toString());
+			   		}
 			   	} else if (act.getFunctor().equals("remove_goal")) {
 			   		Predicate belief = (Predicate) act.getTerm(0);
-			   		ui.removeFromGoalList(belief.toString());
+			   		if (ui != null) {
+			   			ui.removeFromGoalList(belief.toString());
+			   		}
 			   	}
 		   }
 		   	
 		   	u = super.executeAction(agName, act);
+		   	if (moveid != 0 && act.getTermsSize() > 0) {
+		   		if (! u.unifies(act.getTerm(0), new NumberTermImpl(moveid))) {
+		   			throw new AILexception(act + " started move " + moveid + " which does not match its argument");
+		   		}
+		   	}
 		   	return u;
 	}
 	
@@ -529,136 +635,133 @@ public class DinoEnvironment extends EASSEV3Environment {
 	}
 	
 	/**
-	 * A Thread allowing random-ish motion around the table.
+	 * Random-ish motion around the table.  Turns away from obstacles, otherwise turns
+	 * through a random angle and then heads forward.
 	 * @author lad
 	 *
 	 */
-	public class RandomMotionThread extends Thread {
-		boolean isrunning = false;
+	public class RandomMotionThread extends ControlLoop {
 		Dinor3x robot;
 		Random r = new Random();
+		boolean turning = false;
+		boolean moving = false;
+		boolean randomturn = false;
 		
-		public RandomMotionThread(Dinor3x dino) {
+		public RandomMotionThread(Dinor3x dino, long period) {
+			super("random motion", period);
 			robot = dino;
 		}
 		
-		public void run() {
-			isrunning = true;
-			boolean turning = false;
-			boolean moving = false;
-			boolean randomturn = false;
-			while (isrunning) {
-				synchronized (robot) {
-					if (DinoEnvironment.this.values.containsKey("distance")) {
-						Predicate distance = DinoEnvironment.this.values.get("distance");
-						double value = ((NumberTerm) distance.getTerm(0)).solve();
-						if (value < dthreshold) {
-							if (!turning) {
-								robot.right();
-								moving = false;
-								randomturn = false;
-								turning = true;
-							}
-						} else {
-							if (!moving && !randomturn) {
-								int angle = r.nextInt(180);
-								robot.turn(angle);
-								turning = false;
-								moving = false;
-								randomturn = true;
-							} else {
-								if (randomturn) {
-									robot.forward();
-									randomturn = false;
-									turning = false;
-									moving = true;
-								}
-							}
+		/*
+		 * (non-Javadoc)
+		 * @see eass.mas.ev3.ControlLoop#step()
+		 */
+		protected boolean step() {
+			Predicate distance = getValue("distance");
+			if (distance == null) {
+				return false;
+			}
+			double value = ((NumberTerm) distance.getTerm(0)).solve();
+			synchronized (robot) {
+				if (!isRunning()) {
+					return false;
+				}
+				if (value < dthreshold) {
+					if (!turning) {
+						robot.right();
+						moving = false;
+						randomturn = false;
+						turning = true;
+					}
+				} else {
+					if (!moving && !randomturn) {
+						int angle = r.nextInt(180);
+						robot.turn(angle);
+						turning = false;
+						moving = false;
+						randomturn = true;
+						// Head off once turned, whether or not there is a new reading.
+						return true;
+					} else if (robot.isMoveInFlight()) {
+						// Still turning.
+						return true;
+					} else {
+						if (randomturn) {
+							robot.forward();
+							randomturn = false;
+							turning = false;
+							moving = true;
 						}
 					}
 				}
 			}
+			return false;
 		}
-
-		public boolean isRunning() {
-    		return isrunning;
-    	}
     	
     	/**
-    	 * Stop following the line.
+    	 * Stop moving randomly.
     	 */
     	public void stopRandomBehaviour() {
-    		isrunning = false;
-    		try {
-    			wait(5);
-    		} catch (Exception e) {
-    			System.err.println(e.getMessage());
-    		}
+    		stop();
+    		AJPFLogger.info(logname, toString());
     		DinoEnvironment.this.addSharedBelief("dinor3x", new Literal("rstopped"));
     	}
 	}
 	
 	/**
-	 * Line following needs to happen in a separate thread so it can continue while the user interacts with the interface and the
+	 * Line following needs to happen alongside the agent so it can continue while the user interacts with the interface and the
 	 * robot continues to check for obstacles etc.,
 	 * @author lad
 	 *
 	 */
-	public class LineFollowingThread extends Thread {
-    	boolean isrunning = false;
+	public class LineFollowingThread extends ControlLoop {
     	Dinor3x robot;
+		boolean steering_right = false;
+		boolean steering_left = false;
     	
-    	public LineFollowingThread(Dinor3x dino) {
+    	public LineFollowingThread(Dinor3x dino, long period) {
+    		super("line following", period);
     		robot = dino;
     	}
     	
     	/*
     	 * (non-Javadoc)
-    	 * @see java.lang.Thread#run()
+    	 * @see eass.mas.ev3.ControlLoop#step()
     	 */
-    	public void run() {
-    		isrunning = true;
-    		boolean steering_right = false;
-    		boolean steering_left = false;
-    		while (isrunning) {
-    			synchronized(robot) {
-    			//	robot.getRGBSensor().addPercept(DinoEnvironment.this);
-    				if (DinoEnvironment.this.values.containsKey("red")) {
-    					Predicate light = DinoEnvironment.this.values.get("red");
-    					double value = ((NumberTerm) light.getTerm(0)).solve();
-    					// Basic line following algorithm.
-			   			if (value > path_threshold) {
-			   				if (!steering_right) {
-			   					robot.forward_right();
-			   					steering_left = false;
-			   					steering_right = true;
-			   				}
-			   			} else {
-			   				if (!steering_left) {
-			   					robot.forward_left();
-			   					steering_left = true;
-			   					steering_right = false;
-			   				}
-			   			}
-			   		}
+    	protected boolean step() {
+    		Predicate light = getValue("red");
+    		if (light == null) {
+    			return false;
+    		}
+    		double value = ((NumberTerm) light.getTerm(0)).solve();
+    		synchronized(robot) {
+    			if (!isRunning()) {
+    				return false;
+    			}
+    			// Basic line following algorithm.
+    			if (value > path_threshold) {
+    				if (!steering_right) {
+    					robot.forward_right();
+    					steering_left = false;
+    					steering_right = true;
+    				}
+    			} else {
+    				if (!steering_left) {
+    					robot.forward_left();
+    					steering_left = true;
+    					steering_right = false;
+    				}
     			}
     		}
-    	}
-    	
-    	public boolean isRunning() {
-    		return isrunning;
+    		return false;
     	}
     	
     	/**
     	 * Stop following the line.
     	 */
     	public void stopFollowingBehaviour() {
-    		isrunning = false;
-    		try {
-    			wait(5);
-    		} catch (Exception e) {
-    			System.err.println(e.getMessage());
-    		}
+    		stop();
+    		AJPFLogger.info(logname, toString());
     		DinoEnvironment.this.addSharedBelief("dinor3x", new Literal("lfstopped"));
     	}
     	
@@ -410,10 +410,13 @@ public class DinoUI extends JTabbedPane implements ActionListener, WindowListene
 	    	 */
 	    	public void latestAction(Action act, boolean mustbeprocessed) {
 	    		synchronized(this) {
+	    			// Only actions which will be executed are recorded, so they can all be replayed.
 	    			if (action == null) {
 	    				action = act;
+	    				env.recordAction(rName, act, mustbeprocessed);
 	    			} else if (mustbeprocessed) {
 	    				actionlist.offer(act);
+	    				env.recordAction(rName, act, mustbeprocessed);
 	    			}
 	    			notify();
 	    		}
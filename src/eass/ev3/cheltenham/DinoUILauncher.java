@@ -74,6 +74,7 @@ public class DinoUILauncher {
 
 			// Lastly we construct a controller.
 			MCAPLcontroller mccontrol = new MCAPLcontroller(mas, "", 1);
+			AIL.configureMonitor(config, mccontrol);
 			// Start the system.
 			mccontrol.begin(); 
 		}
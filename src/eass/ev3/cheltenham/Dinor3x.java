@@ -24,6 +24,7 @@
 package eass.ev3.cheltenham;
 
 import java.io.PrintStream;
+import java.util.concurrent.ScheduledExecutorService;
 
 import lejos.remote.ev3.RemoteRequestEV3;
 import lejos.remote.ev3.RemoteRequestPilot;
@@ -31,9 +32,11 @@ import lejos.remote.ev3.RemoteRequestRegulatedMotor;
 import lejos.remote.ev3.RemoteRequestSampleProvider;
 import lejos.robotics.RegulatedMotor;
 import eass.mas.ev3.BasicRobot;
+import eass.mas.ev3.ControlLoop;
 import eass.mas.ev3.EASSRGBColorSensor;
 import eass.mas.ev3.EASSSensor;
 import eass.mas.ev3.EASSUltrasonicSensor;
+import eass.mas.ev3.MoveTracker;
 
 /**
  * A class representing control of a lego robot dinosaur built to resemble the Dinor3x model.
@@ -49,6 +52,8 @@ public class Dinor3x extends BasicRobot {
 	private boolean closed = false;
 	private boolean wheeled = true;
 	private boolean straight = false;
+	// Whether there is no brick, and so nothing to send commands to.
+	private boolean offline = false;
 		
 	int touchport = 1;
 	int ultra_port = 2;
@@ -58,6 +63,58 @@ public class Dinor3x extends BasicRobot {
 	int fast_turn = 80;
 	int travel_speed = 10;
 	
+	/**
+	 * The continuous motion commands.
+	 */
+	enum Command {FORWARD, BACKWARD, STOP, LEFT, RIGHT, FORWARD_LEFT, FORWARD_RIGHT};
+	
+	// The last continuous command sent, or null if the robot has since been told to do something else.
+	Command last = null;
+	// The command waiting to be sent at the end of the coalescing window.
+	Command pending = null;
+	long window = 0;
+	// Sends the waiting commands, on a thread of its own since sending waits on the brick.
+	ControlLoop sender;
+	ScheduledExecutorService senderthread;
+	// Held while commands are sent to the robot so they go in order.  The locks are always taken
+	// in the order Dinor3x, sending, then waiting or the move tracker's, so nothing holding sending
+	// ever waits for the Dinor3x lock, which callers such as DinoEnvironment hold around commands.
+	private final Object sending = new Object();
+	// Guards pending, window and sender.  Nothing else is locked while it is held.
+	private final Object waiting = new Object();
+	long sent = 0;
+	long suppressed = 0;
+	long coalesced = 0;
+	
+	// Moves of a fixed distance or angle are started without waiting for them to finish.
+	MoveTracker moves = new MoveTracker(20);
+	MoveTracker.Move pilotmove = new MoveTracker.Move() {
+		public boolean isMoving() {
+			return pilot.isMoving();
+		}
+	};
+	MoveTracker.Move rightmotormove = new MoveTracker.Move() {
+		public boolean isMoving() {
+			return motorR.isMoving();
+		}
+	};
+	// What moves are when there is no brick to carry them out.
+	MoveTracker.Move nomove = new MoveTracker.Move() {
+		public boolean isMoving() {
+			return false;
+		}
+	};
+	
+
+	/**
+	 * Construct a robot with no brick, for replaying a SensorTrace.  Motion commands are
+	 * coalesced, suppressed and recorded as usual but not sent anywhere, and moves of a fixed
+	 * distance or angle finish straight away.
+	 */
+	public Dinor3x() {
+		super();
+		offline = true;
+	}
 
 	/**
 	 * Set up the configuration of the robot.
@@ -180,6 +237,14 @@ public class Dinor3x extends BasicRobot {
 		if (! closed) {
 			super.disconnected = true;
 			System.err.println("Closing Dinor3x");
+			moves.close();
+			if (sender != null) {
+				sender.stop();
+			}
+			if (senderthread != null) {
+				senderthread.shutdown();
+			}
+			System.err.println("   Motion commands: " + getCommandStatistics());
 			try {
 				motor.stop();
 				System.err.println("   Closing Jaw Motor");
@@ -220,7 +285,8 @@ public class Dinor3x extends BasicRobot {
 	/**
 	 * Move forward
 	 */
-	public void forward() {
+	private void forward_now() {
+		moves.preempt();
 		pilot.setTravelSpeed(travel_speed);
 		if (!wheeled & !straight) {
 			calibrate();
@@ -234,26 +300,34 @@ public class Dinor3x extends BasicRobot {
 	}
 	
 	/**
-	 * Move forward a short distance.
+	 * Move forward a short distance.  Returns without waiting for the move to finish.
+	 * @return the id of the move.
 	 */
-	public void short_forward() {
+	public int short_forward() {
+		record("short_forward");
+		discard();
+		if (offline) {
+			return moves.started(nomove);
+		}
 		pilot.setTravelSpeed(travel_speed);
 		if (!wheeled & !straight) {
 			calibrate();
 			straight = true;
 		}
 		if (! wheeled) {
-			pilot.travel(-10);
+			pilot.travel(-10, true);
 		} else {
-			pilot.travel(10);
+			pilot.travel(10, true);
 		}
+		return moves.started(pilotmove);
 	}
 	
 		
 	/**
 	 * Move backward
 	 */
-	public void backward() {
+	private void backward_now() {
+		moves.preempt();
 		pilot.setTravelSpeed(travel_speed);
 		if (!wheeled & ! straight) {
 			calibrate();
@@ -267,32 +341,41 @@ public class Dinor3x extends BasicRobot {
 	}
 		
 	/**
-	 * Move backward a short distance.
+	 * Move backward a short distance.  Returns without waiting for the move to finish.
+	 * @return the id of the move.
 	 */
-	public void short_backward() {
+	public int short_backward() {
+		record("short_backward");
+		discard();
+		if (offline) {
+			return moves.started(nomove);
+		}
 		pilot.setTravelSpeed(travel_speed);
 		if (!wheeled & !straight) {
 			calibrate();
 			straight = true;
 		}
 		if (! wheeled) {
-			pilot.travel(10);
+			pilot.travel(10, true);
 		} else {
-			pilot.travel(-10);
+			pilot.travel(-10, true);
 		}
+		return moves.started(pilotmove);
 	}
 
 	/**
 	 * Stop.
 	 */
-	public void stop() {
+	private void stop_now() {
+		moves.preempt();
 		pilot.stop();
 	}
 	
 	/**
 	 * Turn left on the spot.
 	 */
-	public void left() {
+	private void left_now() {
+		moves.preempt();
 		motorR.setSpeed(fast_turn);
 		motorL.setSpeed(fast_turn);
 		
@@ -307,22 +390,30 @@ public class Dinor3x extends BasicRobot {
 	}
 	
 	/**
-	 * Turn left through an angle (approx 90 on the wheeled robots).
+	 * Turn left through an angle (approx 90 on the wheeled robots).  Returns without waiting for the move to finish.
+	 * @return the id of the move.
 	 */
-	public void short_left() {
+	public int short_left() {
+		record("short_left");
+		discard();
+		if (offline) {
+			return moves.started(nomove);
+		}
 		pilot.setRotateSpeed(travel_speed);
 		if (!wheeled) {
-			pilot.rotate(720);
+			pilot.rotate(720, true);
 		} else {
-			pilot.rotate(-90);
+			pilot.rotate(-90, true);
 		}
 		straight = false;
+		return moves.started(pilotmove);
 	}
 		
 	/**
 	 * Move left around stopped wheel.
 	 */
-	public void forward_left() {
+	private void forward_left_now() {
+		moves.preempt();
 		motorL.setSpeed(slow_turn);
 		if (!wheeled) {
 			motorL.backward();
@@ -336,7 +427,8 @@ public class Dinor3x extends BasicRobot {
 	/**
 	 * Turn right on the spot.
 	 */
-	public void right() {
+	private void right_now() {
+		moves.preempt();
 		motorR.setSpeed(fast_turn);
 		motorL.setSpeed(fast_turn);
 
@@ -351,23 +443,31 @@ public class Dinor3x extends BasicRobot {
 	}
 	
 	/**
-	 * Turn a short distance right (approx 90 on a wheeled robot)
+	 * Turn a short distance right (approx 90 on a wheeled robot).  Returns without waiting for the move to finish.
+	 * @return the id of the move.
 	 */
-	public void short_right() {
+	public int short_right() {
+		record("short_right");
+		discard();
+		if (offline) {
+			return moves.started(nomove);
+		}
 		pilot.setRotateSpeed(travel_speed);
 		if (!wheeled) {
-			pilot.rotate(-720);
+			pilot.rotate(-720, true);
 		} else {
-			pilot.rotate(90);
+			pilot.rotate(90, true);
 		}
 		straight = false;
+		return moves.started(pilotmove);
 	}
 
 		
 	/**
 	 * Turn right around stopped left whell.
 	 */
-	public void forward_right() {
+	private void forward_right_now() {
+		moves.preempt();
 		motorR.setSpeed(slow_turn);
 		if (!wheeled) {
 			motorR.backward();
@@ -382,6 +482,10 @@ public class Dinor3x extends BasicRobot {
 	 * Snap jaws to scare something.
 	 */
 	public void scare() {
+		record("scare");
+		if (offline) {
+			return;
+		}
    		int pos = motor.getTachoCount();
    		motor.rotateTo(pos + 20);
    		motor.waitComplete();
@@ -394,17 +498,211 @@ public class Dinor3x extends BasicRobot {
 	}
 	
 	/**
-	 * Rotate right motor some angle.
+	 * Rotate right motor some angle.  Returns without waiting for the move to finish.
 	 * @param d
+	 * @return the id of the move.
+	 */
+	public int turn(int d) {
+		record("turn", d);
+		discard();
+		if (offline) {
+			return moves.started(nomove);
+		}
+		motorR.rotate(d, true);
+		return moves.started(rightmotormove);
+	}
+	
+	/**
+	 * Move forward, unless already doing so.
+	 */
+	public void forward() {
+		command(Command.FORWARD);
+	}
+	
+	/**
+	 * Move backward, unless already doing so.
 	 */
-	public void turn(int d) {
-		motorR.rotate(d);
+	public void backward() {
+		command(Command.BACKWARD);
+	}
+	
+	/**
+	 * Stop, unless already stopped.
+	 */
+	public void stop() {
+		command(Command.STOP);
+	}
+	
+	/**
+	 * Turn left on the spot, unless already doing so.
+	 */
+	public void left() {
+		command(Command.LEFT);
+	}
+	
+	/**
+	 * Turn right on the spot, unless already doing so.
+	 */
+	public void right() {
+		command(Command.RIGHT);
+	}
+	
+	/**
+	 * Move left around stopped wheel, unless already doing so.
+	 */
+	public void forward_left() {
+		command(Command.FORWARD_LEFT);
+	}
+	
+	/**
+	 * Move right around stopped wheel, unless already doing so.
+	 */
+	public void forward_right() {
+		command(Command.FORWARD_RIGHT);
+	}
+	
+	/**
+	 * Give a continuous motion command.  If coalescing, only the latest of a burst of commands
+	 * given within the window is sent, otherwise it is sent straight away.  Either way it is
+	 * dropped if the robot is already doing it.
+	 * @param c
+	 */
+	private void command(Command c) {
+		synchronized (waiting) {
+			if (window > 0) {
+				if (pending != null) {
+					coalesced++;
+				}
+				pending = c;
+				sender.signal();
+				return;
+			}
+		}
+		synchronized (sending) {
+			send(c);
+		}
+	}
+	
+	/**
+	 * Send the command waiting at the end of a window, if any.
+	 */
+	private void flush() {
+		synchronized (sending) {
+			Command c;
+			synchronized (waiting) {
+				c = pending;
+				pending = null;
+			}
+			if (c != null) {
+				send(c);
+			}
+		}
+	}
+	
+	/**
+	 * Drop any waiting command and forget the last one sent, because the robot is about to be
+	 * told to do something else.  Waits for any command being sent to finish, so that it does
+	 * not overtake what the robot is told next.
+	 */
+	private void discard() {
+		synchronized (sending) {
+			synchronized (waiting) {
+				if (pending != null) {
+					coalesced++;
+					pending = null;
+				}
+			}
+			last = null;
+		}
+	}
+	
+	/**
+	 * Send a command to the robot, unless it was the last one sent.  Callers hold sending.
+	 * @param c
+	 */
+	private void send(Command c) {
+		if (c == last) {
+			suppressed++;
+			return;
+		}
+		record(c.name().toLowerCase());
+		if (offline) {
+			moves.preempt();
+		} else {
+			switch (c) {
+			case FORWARD: forward_now(); break;
+			case BACKWARD: backward_now(); break;
+			case STOP: stop_now(); break;
+			case LEFT: left_now(); break;
+			case RIGHT: right_now(); break;
+			case FORWARD_LEFT: forward_left_now(); break;
+			case FORWARD_RIGHT: forward_right_now(); break;
+			}
+		}
+		// Calibration (when going straight) may have reset last, but the motors are now doing c.
+		last = c;
+		sent++;
+	}
+	
+	/**
+	 * Set the window (in milliseconds) within which bursts of motion commands are coalesced.
+	 * 0, the default, sends every command straight away.
+	 * @param ms
+	 */
+	public void setCommandWindow(long ms) {
+		synchronized (waiting) {
+			window = ms;
+			if (sender != null) {
+				sender.stop();
+				sender = null;
+			}
+			if (window > 0) {
+				if (senderthread == null) {
+					senderthread = ControlLoop.newExecutor("dinor3x-commands");
+				}
+				sender = new ControlLoop("dinor3x commands", window, senderthread) {
+					protected boolean step() {
+						flush();
+						return false;
+					}
+				};
+				sender.start();
+			}
+		}
+		// Any command left waiting by the old window.
+		flush();
+	}
+	
+	/**
+	 * Counts of motion commands sent to the robot, dropped because the robot was already
+	 * doing them, and dropped because a later command replaced them within the window.
+	 * @return
+	 */
+	public String getCommandStatistics() {
+		return "sent " + sent + ", suppressed " + suppressed + ", coalesced " + coalesced;
+	}
+	
+	/**
+	 * Set the listener to be told when moves finish.
+	 * @param l
+	 */
+	public void setMoveListener(MoveTracker.MoveListener l) {
+		moves.setListener(l);
+	}
+	
+	/**
+	 * Is a move started by short_forward, short_backward, short_left, short_right or turn still going?
+	 * @return
+	 */
+	public boolean isMoveInFlight() {
+		return moves.inFlight();
 	}
 
 	/**
 	 * If the robot is legged, calibrate the leg positions for motion.
 	 */
 	private void calibrate() {
+		last = null;
 		motorL.setSpeed(70);
 		motorR.setSpeed(140);
 		motorR.forward();
@@ -412,20 +710,20 @@ public class Dinor3x extends BasicRobot {
 		while(touch.isPressed()) {
 					
 		}
-		stop();
+		stop_now();
 		motorR.setSpeed(200);
 		motorL.setSpeed(200);
 		motorR.forward();
 		while(!touch.isPressed()) {
 			
 		}
-		stop();
+		stop_now();
 		motorR.rotate(-72);
 		motorL.forward();
 		while(!touch.isPressed()) {
 			
 		}
-		stop();
+		stop_now();
 		motorL.rotate(-72);
 		motorR.setSpeed(360);
 		motorL.setSpeed(360);
@@ -464,6 +762,7 @@ public class Dinor3x extends BasicRobot {
 	 * @param w
 	 */
 	public void setWheeled(boolean w) {
+		discard();
 		wheeled = w;
 		if (wheeled) {
 			slow_turn = 35;
@@ -473,9 +772,11 @@ public class Dinor3x extends BasicRobot {
 			fast_turn = 80;
 		}
 		travel_speed = 10;
-		pilot.setTravelSpeed(travel_speed);
-		motorL.setSpeed(fast_turn);
-		motorR.setSpeed(fast_turn);
+		if (! offline) {
+			pilot.setTravelSpeed(travel_speed);
+			motorL.setSpeed(fast_turn);
+			motorR.setSpeed(fast_turn);
+		}
 	}
 	
 	public EASSSensor getRGBSensor() {
@@ -25,7 +25,6 @@
 
 package eass.mas;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.TreeSet;
@@ -33,6 +32,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.LinkedList;
 import java.lang.Thread;
@@ -54,12 +54,15 @@ import ail.syntax.NumberTerm;
 import ail.syntax.NumberTermImpl;
 import ail.syntax.StringTermImpl;
 import ail.syntax.VarTerm;
+import ail.syntax.TermInterner;
 import eass.semantics.EASSAgent;
 
 import ajpf.MCAPLJobber;
 import ajpf.util.VerifyMap;
+import ajpf.util.SortedList;
 import ajpf.util.AJPFLogger;
 import ajpf.MCAPLScheduler;
+import gov.nasa.jpf.annotation.FilterField;
 
 /**
  * Default environment class for EASS project.  Sets up socket servers and generic actions.
@@ -71,6 +74,12 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	 * Tracking of input predicates.
 	 */
 	protected HashMap<String, Predicate> values = new HashMap<String, Predicate>();
+	/**
+	 * A copy of values which can be read without locking the environment.  Each entry is
+	 * replaced as the one in values changes.
+	 */
+	@FilterField
+	private ConcurrentHashMap<String, Predicate> latestvalues = new ConcurrentHashMap<String, Predicate>();
 	/**
 	 * Used to keep track of whether environment thread should continue operating.
 	 */
@@ -134,12 +143,14 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	 * @param s
 	 * @param pred
 	 */
-	public void addUniquePercept(String s, Predicate pred) {
+	public synchronized void addUniquePercept(String s, Predicate pred) {
+		pred = TermInterner.intern(pred);
 		if (values.containsKey(s.toLowerCase())) {
 			removePercept(values.get(s.toLowerCase()));
 		}
 
 		values.put(s.toLowerCase(), pred);
+		latestvalues.put(s.toLowerCase(), pred);
 		addPercept(pred);		
 	}
 	
@@ -150,15 +161,27 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	 * @param s
 	 * @param pred
 	 */
-	public void addUniquePercept(String agName, String s, Predicate pred) {
+	public synchronized void addUniquePercept(String agName, String s, Predicate pred) {
+		pred = TermInterner.intern(pred);
 		if (values.containsKey(s.toLowerCase())) {
 			removePercept(agName, values.get(s.toLowerCase()));
 		}
 
 		values.put(s.toLowerCase(), pred);
+		latestvalues.put(s.toLowerCase(), pred);
 		addPercept(agName, pred);		
 	}
 	
+	/**
+	 * The latest value recorded by addUniquePercept for s, or null if there is none.  Does
+	 * not lock the environment.
+	 * @param s
+	 * @return
+	 */
+	public Predicate getValue(String s) {
+		return latestvalues.get(s.toLowerCase());
+	}
+	
 	/**
 	 * This environment has finished.
 	 * @param b
@@ -229,14 +252,16 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	 * (non-Javadoc)
 	 * @see ail.others.DefaultEnvironment#addPercept(ail.syntax.Literal)
 	 */
-	public void addPercept(Literal per) {
+	public synchronized void addPercept(Literal per) {
 		if (AJPFLogger.ltFiner(logname)) {
 			AJPFLogger.finer(logname, "adding + " + per.toString());
 		}
+		per = TermInterner.intern(per);
 		if (per != null) {
 			if (! percepts.contains(per)) {
 				percepts.add(per);
 				uptodateAgs.clear();
+				perceptChanged(per);
 			}
 		}
 		notifyPerceptListeners();
@@ -246,11 +271,14 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	 * (non-Javadoc)
 	 * @see ail.others.DefaultEnvironment#removePercept(ail.syntax.Literal)
 	 */
-	public boolean removePercept(Literal per) {
+	public synchronized boolean removePercept(Literal per) {
 		boolean b = false;
 		if (per != null) {
 			uptodateAgs.clear();
 			b =  percepts.remove(per);
+			if (b) {
+				perceptChanged(per);
+			}
 		} 
 				
 		notifyPerceptListeners();
@@ -273,7 +301,7 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	 * Add an agent to the list the environment knows about.
 	 * @param a
 	 */
-	public void addAgent(AILAgent a) {
+	public synchronized void addAgent(AILAgent a) {
 		super.addAgent(a);
 		EASSAgent ea = (EASSAgent) a;
 		if (ea.isAbstractionEngine()) {
@@ -285,7 +313,7 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	/**
 	 * Complicated by the separation of abstraction and reasoning engines.
 	 */
-	public Set<Predicate> getPercepts(String agName, boolean update) {
+	public synchronized Set<Predicate> getPercepts(String agName, boolean update) {
 		Set<Predicate> p = new TreeSet<Predicate>();
 		List<Literal> agl = agSharedBeliefs.get(agName);
 		//If this is to update an agent rather than looking for model checking purposes
@@ -307,6 +335,7 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 			} else {
 				if (update) {
 					uptodateAgs.add(agName);
+					trackPerceptChanges(agName);
 				}
 			}
 						
@@ -318,21 +347,35 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 		return p;
 				
 	}
+	
+	/**
+	 * Abstraction engines perceive the environment's percepts while all agents
+	 * perceive their shared beliefs.
+	 */
+	protected boolean perceives(String agName, Predicate per) {
+		if (abstractionenginelist.contains(agName) && super.perceives(agName, per)) {
+			return true;
+		}
+		List<Literal> agl = agSharedBeliefs.get(agName);
+		return agl != null && agl.contains(per);
+	}
 		   
 	/** Adds a perception for a specific agent */
-	public void addSharedBelief(String agName, Literal per) {
+	public synchronized void addSharedBelief(String agName, Literal per) {
+			per = TermInterner.intern(per);
 			if (per != null && agName != null) {
 				ArrayList<Literal> agl = agSharedBeliefs.get(agName);
 				if (agl == null) {
-					agl = new ArrayList<Literal>();
+					agl = new SortedList<Literal>();
 					uptodateAgs.remove(agName);
 					agl.add(per);
 					agSharedBeliefs.put( agName, agl);
+					perceptChanged(agName, per);
 				} else {
 					if (! agl.contains(per)) {
 						uptodateAgs.remove(agName);
 						agl.add(per);
-						Collections.sort(agl);
+						perceptChanged(agName, per);
 					}
 				}
 				
@@ -342,15 +385,16 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 					
 				} else {
 				if (agl2 == null) {
-					agl2 = new ArrayList<Literal>();
+					agl2 = new SortedList<Literal>();
 					uptodateAgs.remove(partneragent);
 					agl2.add(per);
 					agSharedBeliefs.put(partneragent, agl2);
+					perceptChanged(partneragent, per);
 				} else {
 					if (! agl2.contains(per)) {
 						uptodateAgs.remove(partneragent);
 						agl2.add(per);
-						Collections.sort(agl2);
+						perceptChanged(partneragent, per);
 					}
 				}
 				}
@@ -360,7 +404,7 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	}
 			
 	/** Removes a perception for one agent */
-	public boolean removeSharedBelief(String agName, Literal per) {
+	public synchronized boolean removeSharedBelief(String agName, Literal per) {
 		boolean result = true;
 		boolean resulttoreturn = false;
 		if (per != null && agName != null) {
@@ -372,6 +416,7 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 					for (Literal l: agl) {
 						if (l.equals(per)) {
 							aglr.add(l);
+							perceptChanged(agName, l);
 						}
 					}
 					result = agl.removeAll(aglr);
@@ -386,6 +431,7 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 				uptodateAgs.remove(partneragent);
 				for (Literal l: agl2) {
 					if (l.equals(per)) {
+						perceptChanged(partneragent, l);
 						if (result) {
 							resulttoreturn = agl2.remove(l);
 							break;
@@ -430,11 +476,13 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 	 * @param per
 	 * @return
 	 */
-	public boolean removeUnifiesShared(String agName, Literal per) {
+	public synchronized boolean removeUnifiesShared(String agName, Literal per) {
 		boolean b = false;
 		Literal rper = null;
 		if (per != null) {
 			uptodateAgs.remove(agName);
+			forgetPerceptChanges(agName);
+			forgetPerceptChanges(abstractionengines.get(agName));
 			List<Literal> sharedbeliefs = agSharedBeliefs.get(agName);
 			if (sharedbeliefs != null) {
 				for (Literal p: sharedbeliefs) {
@@ -448,7 +496,6 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 					b = sharedbeliefs.remove(rper);
 				}
 
-				Collections.sort(sharedbeliefs);
 				
 				String partneragent = abstractionengines.get(agName);
 				uptodateAgs.remove(partneragent);
@@ -463,7 +510,6 @@ public class DefaultEASSEnvironment extends DefaultEnvironment implements EASSEn
 					b = psharedbeliefs.remove(rper);
 				}
 
-				Collections.sort(psharedbeliefs);
 					
 				return b;
 			}
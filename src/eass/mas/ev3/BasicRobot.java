@@ -48,6 +48,20 @@ public class BasicRobot implements LegoRobot {
 	EASSSensor sensor3;
 	EASSSensor sensor4;
 	
+	/**
+	 * Samplers polling the sensors, indexed by port number - 1.  Sensors without
+	 * one are read when percepts are added.
+	 */
+	SensorSampler[] samplers = new SensorSampler[4];
+	
+	/**
+	 * Where motor commands are recorded, if anywhere, and the name to record them under.
+	 */
+	SensorTrace trace;
+	String tracename;
+	// The trace the motor commands are compared with, if being replayed.
+	TraceReplay replay;
+	
 	/**
 	 * Construct the robot from a name and the Bluetooth address.
 	 * @param name
@@ -57,12 +71,19 @@ public class BasicRobot implements LegoRobot {
 		brick = new RemoteRequestEV3(address);
 	}
 	
+	/**
+	 * Construct a robot without a brick, e.g. a simulated one.
+	 */
+	protected BasicRobot() {
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see eass.mas.ev3.LegoRobot#setSensor(int, eass.mas.ev3.EASSSensor)
 	 */
 	@Override
 	public void setSensor(int portnumber, EASSSensor sensor) {
+		stopSampling(portnumber);
 		if (portnumber == 1) {
 			sensor1 = sensor;
 		}
@@ -130,12 +151,101 @@ public class BasicRobot implements LegoRobot {
 	@Override
 	public void addPercepts(EASSEV3Environment env) {
 		if (! disconnected ) {
-			for (EASSSensor sensor: getSensors()) {
-				sensor.addPercept(env);
+			for (int port = 1; port <= 4; port++) {
+				EASSSensor sensor = getSensor(port);
+				if (sensor != null) {
+					SensorSampler sampler = samplers[port - 1];
+					if (sampler != null) {
+						sampler.addPercept(env);
+					} else {
+						sensor.addPercept(env);
+					}
+				}
 			}
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.LegoRobot#startSampling(long)
+	 */
+	@Override
+	public void startSampling(long period) {
+		for (int port = 1; port <= 4; port++) {
+			startSampling(port, period);
+		}
+	}
+	
+	/**
+	 * Poll the sensor on port portnumber every period milliseconds.
+	 * @param portnumber
+	 * @param period
+	 */
+	public void startSampling(int portnumber, long period) {
+		stopSampling(portnumber);
+		EASSSensor sensor = getSensor(portnumber);
+		if (sensor != null) {
+			SensorSampler sampler = new SensorSampler(sensor, period);
+			samplers[portnumber - 1] = sampler;
+			sampler.start();
+		}
+	}
+	
+	/**
+	 * Stop polling the sensor on port portnumber.
+	 * @param portnumber
+	 */
+	public void stopSampling(int portnumber) {
+		if (portnumber >= 1 && portnumber <= 4 && samplers[portnumber - 1] != null) {
+			samplers[portnumber - 1].stop();
+			samplers[portnumber - 1] = null;
+		}
+	}
+	
+	/**
+	 * Record the motor commands sent to this robot in trace under name.
+	 * @param trace
+	 * @param name
+	 */
+	public void setTrace(SensorTrace trace, String name) {
+		this.trace = trace;
+		tracename = name;
+	}
+	
+	/**
+	 * Compare the motor commands sent to this robot with those recorded for name in a trace
+	 * being replayed.
+	 * @param replay
+	 * @param name
+	 */
+	public void setReplay(TraceReplay replay, String name) {
+		this.replay = replay;
+		tracename = name;
+	}
+	
+	/**
+	 * Record a motor command, if recording, and compare it with the trace, if replaying.
+	 * @param command
+	 */
+	protected void record(String command) {
+		record(command, 0);
+	}
+	
+	/**
+	 * Record a motor command with an argument, if recording, and compare it with the trace,
+	 * if replaying.
+	 * @param command
+	 * @param arg
+	 */
+	protected void record(String command, int arg) {
+		if (trace != null) {
+			trace.command(tracename, command, arg);
+		}
+		if (replay != null) {
+			replay.command(tracename, command, arg);
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see eass.mas.ev3.LegoRobot#getBrick()
@@ -152,6 +262,9 @@ public class BasicRobot implements LegoRobot {
 	@Override
 	public void close() {
 		disconnected = true;
+		for (int port = 1; port <= 4; port++) {
+			stopSampling(port);
+		}
 		if (sensor1 != null) {
 			System.err.println("   Closing Sensor 1");
 			sensor1.close();
@@ -178,8 +291,10 @@ public class BasicRobot implements LegoRobot {
 			System.err.println(e.getMessage());
 		}
 		
-		System.err.println("   Disconnecting Brick");
-		brick.disConnect();
+		if (brick != null) {
+			System.err.println("   Disconnecting Brick");
+			brick.disConnect();
+		}
 	}
 		
 
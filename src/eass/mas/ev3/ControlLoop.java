@@ -0,0 +1,259 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package eass.mas.ev3;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ajpf.util.AJPFLogger;
+
+/**
+ * A control loop for a robot, such as line following, which runs on an executor shared
+ * by all control loops rather than on a thread of its own.  Instead of spinning the loop
+ * takes a step when it is signalled, normally because a new sensor sample has arrived,
+ * but never more often than once per period.  A step can also ask to be run again after
+ * another period, for instance to finish a manoeuvre, without waiting for a new sample.
+ * 
+ * The loop keeps track of how late each step starts compared to when it was due (jitter)
+ * and how many steps took longer than the period (overruns).  Since the loops share one
+ * thread a slow step in one loop shows up as jitter in the others, so a loop whose steps
+ * block, for instance on remote calls to the brick, should be given an executor of its own.
+ * 
+ * @author louiseadennis
+ *
+ */
+public abstract class ControlLoop implements Runnable {
+	private static String logname = "eass.mas.ev3.ControlLoop";
+	
+	/**
+	 * The executor shared by all control loops.
+	 */
+	private static ScheduledExecutorService executor;
+	
+	/**
+	 * The executor this loop runs on, if it has one of its own.
+	 */
+	private ScheduledExecutorService own = null;
+	
+	/**
+	 * The name of the loop.
+	 */
+	String name;
+	/**
+	 * The least time (in nanoseconds) between the starts of two steps.
+	 */
+	long period;
+	/**
+	 * Whether the loop should keep taking steps.
+	 */
+	volatile boolean running = false;
+	/**
+	 * Whether a step has been scheduled and not yet started.
+	 */
+	AtomicBoolean pending = new AtomicBoolean(false);
+	/**
+	 * When the last step started and when the scheduled one is due.
+	 */
+	volatile long laststart;
+	volatile long due;
+	
+	/**
+	 * Statistics.  Only altered by the step in progress.
+	 */
+	volatile long steps = 0;
+	volatile long overruns = 0;
+	volatile long totaljitter = 0;
+	volatile long maxjitter = 0;
+	
+	/**
+	 * Constructor.
+	 * @param name
+	 * @param period in milliseconds.
+	 */
+	public ControlLoop(String name, long period) {
+		this.name = name;
+		this.period = TimeUnit.MILLISECONDS.toNanos(period);
+	}
+	
+	/**
+	 * Constructor for a loop which runs on an executor of its own.
+	 * @param name
+	 * @param period in milliseconds.
+	 * @param executor
+	 */
+	public ControlLoop(String name, long period, ScheduledExecutorService executor) {
+		this(name, period);
+		own = executor;
+	}
+	
+	/**
+	 * Take one step of the loop.
+	 * @return true if the loop should take another step after the period even if not signalled.
+	 */
+	protected abstract boolean step();
+	
+	/**
+	 * Start the loop.  It takes its first step straight away.
+	 */
+	public void start() {
+		running = true;
+		laststart = System.nanoTime() - period;
+		signal();
+	}
+	
+	/**
+	 * Stop the loop.  Does not wait for a step in progress, so steps should check isRunning
+	 * before sending commands to the robot.
+	 */
+	public void stop() {
+		running = false;
+	}
+	
+	/**
+	 * Is the loop running?
+	 * @return
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+	
+	/**
+	 * Ask the loop to take a step, as soon as the period allows.  Does nothing if a step is
+	 * already waiting, so this is cheap to call whenever a sensor value changes.
+	 */
+	public void signal() {
+		if (running && pending.compareAndSet(false, true)) {
+			long now = System.nanoTime();
+			long delay = Math.max(0, laststart + period - now);
+			due = now + delay;
+			(own != null ? own : getExecutor()).schedule(this, delay, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		long start = System.nanoTime();
+		// Cleared before the step so that samples arriving during it schedule another.
+		pending.set(false);
+		if (! running) {
+			return;
+		}
+		laststart = start;
+		long jitter = start - due;
+		
+		boolean again = false;
+		try {
+			again = step();
+		} catch (RuntimeException e) {
+			AJPFLogger.severe(logname, name + ": " + e.getMessage(), e);
+		}
+		
+		steps++;
+		totaljitter += jitter;
+		if (jitter > maxjitter) {
+			maxjitter = jitter;
+		}
+		if (System.nanoTime() - start > period) {
+			overruns++;
+		}
+		
+		if (again) {
+			signal();
+		}
+	}
+	
+	/**
+	 * How many steps have been taken.
+	 * @return
+	 */
+	public long getSteps() {
+		return steps;
+	}
+	
+	/**
+	 * How many steps took longer than the period.
+	 * @return
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+	
+	/**
+	 * The average lateness of a step, in milliseconds.
+	 * @return
+	 */
+	public double getMeanJitter() {
+		return steps == 0 ? 0 : totaljitter / (steps * 1e6);
+	}
+	
+	/**
+	 * The greatest lateness of a step, in milliseconds.
+	 * @return
+	 */
+	public double getMaxJitter() {
+		return maxjitter / 1e6;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return String.format("%s: %d steps, %d overruns, jitter mean %.2f ms max %.2f ms", name, steps, overruns, getMeanJitter(), getMaxJitter());
+	}
+	
+	/**
+	 * The executor for control loops, created when first needed.  It has a single daemon
+	 * thread, so steps never overlap and it does not keep the program alive.
+	 * @return
+	 */
+	private static synchronized ScheduledExecutorService getExecutor() {
+		if (executor == null) {
+			executor = newExecutor("control-loops");
+		}
+		return executor;
+	}
+	
+	/**
+	 * An executor with a single daemon thread with the given name, suitable for a loop which
+	 * needs one of its own.
+	 * @param threadname
+	 * @return
+	 */
+	public static ScheduledExecutorService newExecutor(final String threadname) {
+		return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, threadname);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+}
@@ -24,10 +24,12 @@
 
 package eass.mas.ev3;
 
+import ail.util.AILConfig;
 import ail.util.AILexception;
 import ail.syntax.Unifier;
 import ail.syntax.Action;
 
+import java.io.IOException;
 import java.util.HashMap;
 
 import eass.mas.DefaultEASSEnvironment;
@@ -43,6 +45,13 @@ public class EASSEV3Environment extends DefaultEASSEnvironment {
 	HashMap<String, LegoRobot> robots = new HashMap<String, LegoRobot>();
 	// Used to signal if there have been connection errors in setting up the robot.
 	public boolean error = false;
+	// How often (in milliseconds) robots should poll their sensors in the background.  0 means
+	// sensors are read in eachrun.
+	long samplingperiod = 0;
+	// Where sensor samples, user actions and motor commands are recorded, if anywhere.
+	SensorTrace trace;
+	// The trace being played back in place of the robots' sensors, if any.
+	TraceReplay replay;
 
 	/**
 	 * Constructor 
@@ -76,6 +85,15 @@ public class EASSEV3Environment extends DefaultEASSEnvironment {
 		try {
 			LegoRobot robot = createRobot(foragent);
 			robots.put(foragent, robot);
+			if (robot instanceof BasicRobot && trace != null) {
+				((BasicRobot) robot).setTrace(trace, foragent);
+			}
+			if (robot instanceof BasicRobot && replay != null) {
+				((BasicRobot) robot).setReplay(replay, foragent);
+			}
+			if (robot != null && samplingperiod > 0) {
+				robot.startSampling(samplingperiod);
+			}
 		} catch (Exception e) {
 			error = true;
 		}
@@ -105,12 +123,81 @@ public class EASSEV3Environment extends DefaultEASSEnvironment {
 		}
 	}
 		
+	/*
+	 * (non-Javadoc)
+	 * @see ail.mas.DefaultEnvironment#configure(ail.util.AILConfig)
+	 */
+	@Override
+	public void configure(AILConfig config) {
+		super.configure(config);
+		if (config.containsKey("ev3.sampling.period")) {
+			samplingperiod = Long.parseLong(config.getProperty("ev3.sampling.period"));
+		}
+		if (config.containsKey("ev3.trace.record")) {
+			try {
+				trace = new SensorTrace(config.getProperty("ev3.trace.record"));
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+			}
+		}
+		if (config.containsKey("ev3.replay.file")) {
+			boolean fast = config.containsKey("ev3.replay.speed") && config.getProperty("ev3.replay.speed").equals("fast");
+			try {
+				replay = new TraceReplay(config.getProperty("ev3.replay.file"), fast);
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+				error = true;
+			}
+		}
+	}
+	
+	/**
+	 * Is a trace being played back in place of the robots' sensors?
+	 * @return
+	 */
+	public boolean replaying() {
+		return replay != null;
+	}
+	
+	/**
+	 * Record a sample from one of the robot's sensors, if recording.
+	 * @param sensor SensorTrace.DISTANCE or SensorTrace.RGB.
+	 * @param sample
+	 */
+	public void recordSample(byte sensor, float[] sample) {
+		if (trace != null) {
+			trace.sample(sensor, sample);
+		}
+	}
+	
+	/**
+	 * Record an action given to an agent by a user interface, if recording.
+	 * @param agName
+	 * @param act
+	 * @param mustbeprocessed
+	 */
+	public void recordAction(String agName, Action act, boolean mustbeprocessed) {
+		if (trace != null) {
+			trace.action(agName, act, mustbeprocessed);
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see eass.mas.DefaultEASSEnvironment#eachrun()
 	 */
 	@Override
 	public void eachrun() {
+		if (trace != null) {
+			trace.tick();
+		}
+		if (replay != null) {
+			if (! replay.feed(this)) {
+				replay.report();
+				setDone(true);
+			}
+			return;
+		}
 		for (LegoRobot r: robots.values()) {
 			synchronized(r) {
 				r.addPercepts(this);
@@ -129,6 +216,9 @@ public class EASSEV3Environment extends DefaultEASSEnvironment {
 				r.close();
 			}
 		}
+		if (trace != null) {
+			trace.close();
+		}
 	}
 
 
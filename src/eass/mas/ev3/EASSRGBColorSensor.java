@@ -31,6 +31,7 @@ import java.rmi.RemoteException;
 
 import lejos.remote.ev3.RemoteRequestEV3;
 import lejos.remote.ev3.RemoteRequestSampleProvider;
+import lejos.robotics.SampleProvider;
 
 /**
  * Encapsulation of an RGB Sensor to be used with an EASS EV3 environment.
@@ -41,7 +42,7 @@ public class EASSRGBColorSensor implements EASSSensor {
 	PrintStream blueout;
 	PrintStream redout;
 	PrintStream greenout;
-	RemoteRequestSampleProvider sensor;
+	SampleProvider sensor;
 	
 	public EASSRGBColorSensor(RemoteRequestEV3 brick, String portName) throws RemoteException {
 		try {
@@ -51,15 +52,50 @@ public class EASSRGBColorSensor implements EASSSensor {
 		}
 	}
 	
+	/**
+	 * Construct the sensor from some other source of samples, e.g. a FakeSampleProvider.
+	 * @param provider
+	 */
+	public EASSRGBColorSensor(SampleProvider provider) {
+		sensor = provider;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see eass.mas.ev3.EASSSensor#addPercept(eass.mas.ev3.EASSEV3Environment)
 	 */
 	@Override
 	public void addPercept(EASSEV3Environment env) {
+		float[] sample = fetchSample();
+		if (sample != null) {
+			addPercept(env, sample);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSSensor#fetchSample()
+	 */
+	@Override
+	public float[] fetchSample() {
 		try {
 			float[] sample = new float[3];
 			sensor.fetchSample(sample, 0);
+			return sample;
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			return null;
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSSensor#addPercept(eass.mas.ev3.EASSEV3Environment, float[])
+	 */
+	@Override
+	public void addPercept(EASSEV3Environment env, float[] sample) {
+		try {
+			env.recordSample(SensorTrace.RGB, sample);
 			float red = sample[0];
 			float green = sample[1];
 			float blue = sample[2];
@@ -117,7 +153,9 @@ public class EASSRGBColorSensor implements EASSSensor {
 	@Override
 	public void close() {
 		try {
-			sensor.close();
+			if (sensor instanceof RemoteRequestSampleProvider) {
+				((RemoteRequestSampleProvider) sensor).close();
+			}
 		} catch (Exception e) {
 			System.err.println(e.getMessage());
 		}
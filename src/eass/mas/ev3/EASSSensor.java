@@ -38,6 +38,20 @@ public interface EASSSensor {
 	 */
 	public void addPercept(EASSEV3Environment env);
 	
+	/**
+	 * Take a sample from the sensor.  This may block while the value is fetched
+	 * from the robot.
+	 * @return the sample, or null if it could not be fetched.
+	 */
+	public float[] fetchSample();
+	
+	/**
+	 * Add percepts to the environment for a sample previously taken by fetchSample.
+	 * @param env
+	 * @param sample
+	 */
+	public void addPercept(EASSEV3Environment env, float[] sample);
+	
 	/**
 	 * Set the printstream where values from this sensor should be displayed.
 	 * @param o
@@ -32,6 +32,7 @@ import java.rmi.RemoteException;
 
 import lejos.remote.ev3.RemoteRequestEV3;
 import lejos.remote.ev3.RemoteRequestSampleProvider;
+import lejos.robotics.SampleProvider;
 
 /**
  * Encapsulation of an Ultrasonic Sensor to be used with an EASS environment.
@@ -40,21 +41,56 @@ import lejos.remote.ev3.RemoteRequestSampleProvider;
  */
 public class EASSUltrasonicSensor implements EASSSensor {
 	PrintStream out;
-	RemoteRequestSampleProvider sensor;
+	SampleProvider sensor;
 	
 	public EASSUltrasonicSensor(RemoteRequestEV3 brick, String portName) throws RemoteException {
 		sensor = (RemoteRequestSampleProvider) brick.createSampleProvider(portName, "lejos.hardware.sensor.EV3UltrasonicSensor", "Distance");
 	}
 	
+	/**
+	 * Construct the sensor from some other source of samples, e.g. a FakeSampleProvider.
+	 * @param provider
+	 */
+	public EASSUltrasonicSensor(SampleProvider provider) {
+		sensor = provider;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see eass.mas.ev3.EASSSensor#addPercept(eass.mas.ev3.EASSEV3Environment)
 	 */
 	@Override
 	public void addPercept(EASSEV3Environment env) {
+		float[] sample = fetchSample();
+		if (sample != null) {
+			addPercept(env, sample);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSSensor#fetchSample()
+	 */
+	@Override
+	public float[] fetchSample() {
 		try {
 			float[] sample = new float[1];
 			sensor.fetchSample(sample, 0);
+			return sample;
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			return null;
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSSensor#addPercept(eass.mas.ev3.EASSEV3Environment, float[])
+	 */
+	@Override
+	public void addPercept(EASSEV3Environment env, float[] sample) {
+		try {
+			env.recordSample(SensorTrace.DISTANCE, sample);
 			float distancevalue = sample[0];
 			if (out != null) {
 				out.println("distance is " + distancevalue);
@@ -83,7 +119,9 @@ public class EASSUltrasonicSensor implements EASSSensor {
 	@Override
 	public void close() {
 		try {
-			sensor.close();
+			if (sensor instanceof RemoteRequestSampleProvider) {
+				((RemoteRequestSampleProvider) sensor).close();
+			}
 		} catch (Exception e) {
 			System.err.println(e.getMessage());
 		}
@@ -0,0 +1,107 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package eass.mas.ev3;
+
+import lejos.robotics.SampleProvider;
+
+/**
+ * A SampleProvider which doesn't need a robot, to stand in for the RemoteRequestSampleProvider
+ * of a sensor when running offline.  It returns whatever sample it was last given and can be
+ * made to take a while over it, like a remote read.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class FakeSampleProvider implements SampleProvider {
+	/**
+	 * The sample to return.
+	 */
+	private volatile float[] sample;
+	/**
+	 * How long (in milliseconds) each fetch takes.
+	 */
+	private volatile long delay = 0;
+	/**
+	 * How many samples have been fetched.
+	 */
+	private volatile int fetches = 0;
+	
+	/**
+	 * Constructor.
+	 * @param values the initial sample.
+	 */
+	public FakeSampleProvider(float... values) {
+		sample = values.clone();
+	}
+	
+	/**
+	 * Set the sample to return from now on.
+	 * @param values
+	 */
+	public void setSample(float... values) {
+		sample = values.clone();
+	}
+	
+	/**
+	 * Set how long each fetch takes.
+	 * @param millis
+	 */
+	public void setDelay(long millis) {
+		delay = millis;
+	}
+	
+	/**
+	 * How many samples have been fetched.
+	 * @return
+	 */
+	public int getFetches() {
+		return fetches;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see lejos.robotics.SampleProvider#sampleSize()
+	 */
+	public int sampleSize() {
+		return sample.length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see lejos.robotics.SampleProvider#fetchSample(float[], int)
+	 */
+	public void fetchSample(float[] s, int offset) {
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		float[] current = sample;
+		System.arraycopy(current, 0, s, offset, Math.min(current.length, s.length - offset));
+		fetches++;
+	}
+
+}
@@ -59,6 +59,13 @@ public interface LegoRobot {
 	 */
 	public void addPercepts(EASSEV3Environment env);
 	
+	/**
+	 * Poll each sensor on its own thread every period milliseconds so that addPercepts
+	 * only has to publish the latest samples.
+	 * @param period
+	 */
+	public void startSampling(long period);
+	
 	/**
 	 * Close sockets and clean up.
 	 */
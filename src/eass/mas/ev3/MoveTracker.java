@@ -0,0 +1,227 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package eass.mas.ev3;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Keeps track of a robot's move in flight, for moves such as travelling a fixed distance
+ * which are started without waiting for them to finish.  At most one move is in flight:
+ * starting another, or any other motion command, pre-empts it.  Each move gets an id and
+ * the listener is told when it completes or is pre-empted.
+ * 
+ * Completion is noticed by polling the move on a ControlLoop while one is in flight.
+ * Polling and starting moves both happen while holding lock, which is either given,
+ * normally the robot so they do not interleave with other commands sent to it, or the
+ * tracker's own when commands are sent while holding some other lock.  The listener is
+ * told about completions noticed by polling without holding lock.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class MoveTracker {
+	/**
+	 * A move that has been started.
+	 */
+	public interface Move {
+		/**
+		 * Is the robot still carrying out the move?
+		 * @return
+		 */
+		public boolean isMoving();
+	}
+	
+	/**
+	 * Told when moves finish.
+	 */
+	public interface MoveListener {
+		/**
+		 * The move with this id has finished.
+		 * @param id
+		 * @param completed false if the move was pre-empted.
+		 */
+		public void moveFinished(int id, boolean completed);
+	}
+	
+	/**
+	 * How long (in milliseconds) to allow a move to get started before deciding it has
+	 * finished without having been seen to move.
+	 */
+	static long grace = 100;
+	
+	Object lock;
+	MoveListener listener;
+	int nextid = 0;
+	
+	/**
+	 * The move in flight, its id, when it started and whether it has been seen moving.
+	 */
+	Move current;
+	int currentid;
+	long started;
+	boolean seenmoving;
+	
+	ControlLoop watcher;
+	// Polling waits on the robot, so the watcher has a thread of its own rather than holding
+	// up the other control loops.
+	ScheduledExecutorService watcherthread;
+	
+	/**
+	 * Constructor.
+	 * @param lock
+	 * @param period how often (in milliseconds) to check whether a move has finished.
+	 */
+	public MoveTracker(Object lock, long period) {
+		this.lock = lock;
+		watcherthread = ControlLoop.newExecutor("move-tracker");
+		watcher = new ControlLoop("move tracker", period, watcherthread) {
+			protected boolean step() {
+				return check();
+			}
+		};
+	}
+	
+	/**
+	 * Constructor for a tracker with a lock of its own.
+	 * @param period how often (in milliseconds) to check whether a move has finished.
+	 */
+	public MoveTracker(long period) {
+		this(new Object(), period);
+	}
+	
+	/**
+	 * Set the listener to be told when moves finish.
+	 * @param l
+	 */
+	public void setListener(MoveListener l) {
+		listener = l;
+	}
+	
+	/**
+	 * Note a move has just been started.  Any move already in flight has been pre-empted.
+	 * @param m
+	 * @return the id of the move.
+	 */
+	public int started(Move m) {
+		int pre_empted;
+		int id;
+		synchronized (lock) {
+			pre_empted = clear();
+			id = ++nextid;
+			current = m;
+			currentid = id;
+			started = System.currentTimeMillis();
+			seenmoving = false;
+			if (! watcher.isRunning()) {
+				watcher.start();
+			} else {
+				watcher.signal();
+			}
+		}
+		tell(pre_empted, false);
+		return id;
+	}
+	
+	/**
+	 * Note some other motion command is being given, pre-empting any move in flight.
+	 */
+	public void preempt() {
+		int pre_empted;
+		synchronized (lock) {
+			pre_empted = clear();
+		}
+		tell(pre_empted, false);
+	}
+	
+	/**
+	 * Is there a move in flight?
+	 * @return
+	 */
+	public boolean inFlight() {
+		synchronized (lock) {
+			return current != null;
+		}
+	}
+	
+	/**
+	 * Stop watching for moves finishing.  Any move in flight is forgotten.
+	 */
+	public void close() {
+		synchronized (lock) {
+			current = null;
+			watcher.stop();
+		}
+		watcherthread.shutdown();
+	}
+	
+	/**
+	 * Check whether the move in flight has finished.
+	 * @return true if there is still a move in flight.
+	 */
+	boolean check() {
+		int finished = 0;
+		boolean inflight;
+		synchronized (lock) {
+			if (current != null) {
+				if (current.isMoving()) {
+					seenmoving = true;
+				} else if (seenmoving || System.currentTimeMillis() - started > grace) {
+					finished = currentid;
+					current = null;
+				}
+			}
+			inflight = current != null;
+			if (! inflight) {
+				watcher.stop();
+			}
+		}
+		tell(finished, true);
+		return inflight;
+	}
+	
+	/**
+	 * Forget the move in flight.  Must hold lock.
+	 * @return the id of the move forgotten, or 0 if there was none.
+	 */
+	private int clear() {
+		int id = 0;
+		if (current != null) {
+			id = currentid;
+			current = null;
+		}
+		return id;
+	}
+	
+	/**
+	 * Tell the listener a move has finished.
+	 * @param id 0 for no move.
+	 * @param completed
+	 */
+	private void tell(int id, boolean completed) {
+		MoveListener l = listener;
+		if (id != 0 && l != null) {
+			l.moveFinished(id, completed);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package eass.mas.ev3;
+
+import ail.mas.RoundRobinScheduler;
+
+/**
+ * An EV3 environment with no robots of its own, for replaying a SensorTrace recorded by
+ * another EV3 environment (see ev3.trace.record) offline.  Any EV3 environment can replay
+ * a trace (see TraceReplay); this one only understands the actions every EASS environment
+ * does, so traces from an environment whose user interface sends it its own actions should
+ * be replayed in that environment instead.  It is done when the trace runs out.
+ * 
+ * Configuration:
+ *   ev3.replay.file - the trace to replay.
+ *   ev3.replay.speed - original (the default) or fast.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class ReplayEV3Environment extends EASSEV3Environment {
+	
+	/**
+	 * Constructor.
+	 */
+	public ReplayEV3Environment() {
+		super();
+		scheduler_setup(this, new RoundRobinScheduler());
+	}
+	
+	/**
+	 * The robot has no brick or sensors since everything it would sense is in the trace.
+	 */
+	@Override
+	public LegoRobot createRobot(String agent) {
+		return new BasicRobot();
+	}
+}
@@ -0,0 +1,147 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package eass.mas.ev3;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Polls an EASSSensor on its own thread and keeps the latest sample, so that an
+ * environment can turn the current reading into percepts without waiting for the
+ * robot.  Each sensor gets its own sampler so a slow sensor does not hold up the others.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class SensorSampler implements Runnable {
+	/**
+	 * The sensor being polled.
+	 */
+	EASSSensor sensor;
+	/**
+	 * How often (in milliseconds) to take a sample.
+	 */
+	long period;
+	/**
+	 * The most recent sample.  Each sample is a fresh array which is never altered once set here.
+	 */
+	AtomicReference<float[]> latest = new AtomicReference<float[]>();
+	/**
+	 * The sample most recently turned into percepts.
+	 */
+	float[] published;
+	/**
+	 * Whether the sampler should keep polling.
+	 */
+	volatile boolean running = false;
+	/**
+	 * The thread doing the polling.
+	 */
+	Thread thread;
+	
+	/**
+	 * Constructor.
+	 * @param s
+	 * @param period
+	 */
+	public SensorSampler(EASSSensor s, long period) {
+		sensor = s;
+		this.period = period;
+	}
+	
+	/**
+	 * Start polling the sensor.
+	 */
+	public void start() {
+		running = true;
+		thread = new Thread(this, "sampler-" + sensor.getClass().getSimpleName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while (running) {
+			long start = System.currentTimeMillis();
+			float[] sample = sensor.fetchSample();
+			if (sample != null) {
+				latest.set(sample);
+			}
+			long remaining = period - (System.currentTimeMillis() - start);
+			if (remaining > 0) {
+				try {
+					Thread.sleep(remaining);
+				} catch (InterruptedException e) {
+					running = false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The most recent sample, or null if none has been taken yet.
+	 * @return
+	 */
+	public float[] getLatest() {
+		return latest.get();
+	}
+	
+	/**
+	 * Add percepts for the most recent sample to the environment, unless they have
+	 * already been added.  Never waits for the sensor.
+	 * @param env
+	 */
+	public void addPercept(EASSEV3Environment env) {
+		float[] sample = latest.get();
+		if (sample != null && sample != published) {
+			published = sample;
+			sensor.addPercept(env, sample);
+		}
+	}
+	
+	/**
+	 * Stop polling the sensor.  Waits briefly for any sample in progress so the sensor can be closed.
+	 */
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(period + 500);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Is the sampler polling?
+	 * @return
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+}
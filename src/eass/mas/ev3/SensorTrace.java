@@ -0,0 +1,534 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package eass.mas.ev3;
+
+import ail.syntax.Action;
+import ail.syntax.Literal;
+import ail.syntax.NumberTerm;
+import ail.syntax.NumberTermImpl;
+import ail.syntax.Term;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A compact binary recording of what happened to an EV3 robot during a run: the sensor
+ * samples turned into percepts, the actions given through a user interface and the motor
+ * commands sent to the robot, each stamped with the time (in microseconds since recording
+ * started) and with the number of runs of the environment so far.  Traces can be replayed
+ * by a ReplayEV3Environment.
+ * 
+ * Records are only ever appended, into a direct buffer which is written to the file channel
+ * when it fills, at least once a second and on close, so a run that dies loses at most the
+ * last second.  Numbers are written as variable length integers relative to the previous
+ * record and strings are written once and then referred to by number.
+ * 
+ * Running this class prints a trace.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class SensorTrace {
+	/**
+	 * "EV3T" followed by the version number starts every trace.
+	 */
+	static final int MAGIC = 0x45563354;
+	static final short VERSION = 1;
+	
+	/**
+	 * The kinds of record.
+	 */
+	public static final byte SAMPLE = 1;
+	public static final byte ACTION = 2;
+	public static final byte COMMAND = 3;
+	
+	/**
+	 * The sensors samples come from.
+	 */
+	public static final byte DISTANCE = 0;
+	public static final byte RGB = 1;
+	
+	/**
+	 * Kinds of action argument.
+	 */
+	private static final byte ATOM = 0;
+	private static final byte NUMBER = 1;
+	
+	// How long (in nanoseconds) records may sit in the buffer.
+	private static final long FLUSH_INTERVAL = 1000000000L;
+	
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+	private HashMap<String, Integer> strings = new HashMap<String, Integer>();
+	private long start;
+	private long lastflush;
+	private long lasttime = 0;
+	private long tick = 0;
+	private long lasttick = 0;
+	
+	/**
+	 * Start recording a trace into file, replacing anything already there.
+	 * @param file
+	 * @throws IOException
+	 */
+	public SensorTrace(String file) throws IOException {
+		channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putLong(System.currentTimeMillis());
+		start = System.nanoTime();
+		lastflush = start;
+	}
+	
+	/**
+	 * Note that the environment has run once more.
+	 */
+	public synchronized void tick() {
+		tick++;
+	}
+	
+	/**
+	 * Record a sample from a sensor.
+	 * @param sensor DISTANCE or RGB.
+	 * @param sample
+	 */
+	public synchronized void sample(byte sensor, float[] sample) {
+		if (begin(SAMPLE, 2 + 4 * sample.length)) {
+			buffer.put(sensor);
+			buffer.put((byte) sample.length);
+			for (float f: sample) {
+				buffer.putFloat(f);
+			}
+			end();
+		}
+	}
+	
+	/**
+	 * Record an action given to agent by a user interface.
+	 * @param agent
+	 * @param act
+	 * @param mustbeprocessed whether the interface insisted the action was not dropped.
+	 */
+	public synchronized void action(String agent, Action act, boolean mustbeprocessed) {
+		if (begin(ACTION, 0)) {
+			putString(agent);
+			putString(act.getFunctor());
+			putVar(act.getTermsSize());
+			for (int i = 0; i < act.getTermsSize(); i++) {
+				Term t = act.getTerm(i);
+				if (t instanceof NumberTerm) {
+					ensure(9);
+					buffer.put(NUMBER);
+					buffer.putDouble(((NumberTerm) t).solve());
+				} else {
+					ensure(1);
+					buffer.put(ATOM);
+					putString(t.toString());
+				}
+			}
+			ensure(1);
+			buffer.put(mustbeprocessed ? (byte) 1 : (byte) 0);
+			end();
+		}
+	}
+	
+	/**
+	 * Record a motor command sent to a robot.
+	 * @param robot
+	 * @param command
+	 * @param arg the angle, distance etc. of the command if it has one, otherwise 0.
+	 */
+	public synchronized void command(String robot, String command, int arg) {
+		if (begin(COMMAND, 0)) {
+			putString(robot);
+			putString(command);
+			putVar(((arg << 1) ^ (arg >> 31)) & 0xFFFFFFFFL);
+			end();
+		}
+	}
+	
+	/**
+	 * Write out any buffered records.
+	 */
+	public synchronized void flush() {
+		if (channel != null) {
+			try {
+				drain();
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+	
+	/**
+	 * Write out any buffered records and close the file.  Nothing more is recorded.
+	 */
+	public synchronized void close() {
+		if (channel != null) {
+			try {
+				drain();
+				channel.close();
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+			}
+			channel = null;
+		}
+	}
+	
+	/**
+	 * Start a record with its kind, tick and time.
+	 * @param kind
+	 * @param size how much of the rest of the record will be written without checking for room.
+	 * @return false if the trace has been closed.
+	 */
+	private boolean begin(byte kind, int size) {
+		if (channel == null) {
+			return false;
+		}
+		long time = (System.nanoTime() - start) / 1000;
+		ensure(21 + size);
+		buffer.put(kind);
+		putVar(tick - lasttick);
+		putVar(time - lasttime);
+		lasttick = tick;
+		lasttime = time;
+		return true;
+	}
+	
+	/**
+	 * Finish a record, writing out the buffer if it is time to.
+	 */
+	private void end() {
+		long now = System.nanoTime();
+		if (now - lastflush > FLUSH_INTERVAL) {
+			flush();
+			lastflush = now;
+		}
+	}
+	
+	/**
+	 * Make sure there is room for n more bytes in the buffer.
+	 * @param n
+	 */
+	private void ensure(int n) {
+		if (buffer.remaining() < n) {
+			try {
+				drain();
+			} catch (IOException e) {
+				fail(e);
+			}
+			if (buffer.capacity() < n) {
+				buffer = ByteBuffer.allocateDirect(n);
+			}
+		}
+	}
+	
+	/**
+	 * Write the buffer to the file.
+	 * @throws IOException
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/**
+	 * Give up recording because the file can't be written, rather than stop the robot.
+	 * @param e
+	 */
+	private void fail(IOException e) {
+		System.err.println("Sensor trace abandoned: " + e.getMessage());
+		try {
+			channel.close();
+		} catch (IOException ce) {
+		}
+		channel = null;
+		buffer.clear();
+	}
+	
+	/**
+	 * Write a non-negative number in 7 bit groups, least significant first.
+	 * @param v
+	 */
+	private void putVar(long v) {
+		ensure(10);
+		while ((v & ~0x7FL) != 0) {
+			buffer.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buffer.put((byte) v);
+	}
+	
+	/**
+	 * Write a string, or the number it was given when it was first written.
+	 * @param s
+	 */
+	private void putString(String s) {
+		Integer ref = strings.get(s);
+		if (ref != null) {
+			putVar(ref);
+		} else {
+			strings.put(s, strings.size() + 1);
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			putVar(0);
+			putVar(bytes.length);
+			ensure(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+	
+	/**
+	 * Open a trace for reading.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static Reader read(String file) throws IOException {
+		return new Reader(file);
+	}
+	
+	/**
+	 * One entry in a trace.  Only the fields for its kind are set.
+	 * @author louiseadennis
+	 *
+	 */
+	public static class Record {
+		byte kind;
+		// The number of runs of the environment before this was recorded.
+		long tick;
+		// Microseconds since recording started.
+		long time;
+		
+		byte sensor;
+		float[] sample;
+		
+		String agent;
+		Action action;
+		boolean mustbeprocessed;
+		
+		String robot;
+		String command;
+		int arg;
+		
+		/**
+		 * Getter for the kind of record.
+		 * @return
+		 */
+		public byte getKind() {
+			return kind;
+		}
+		
+		/**
+		 * Getter for the number of runs of the environment before this was recorded.
+		 * @return
+		 */
+		public long getTick() {
+			return tick;
+		}
+		
+		/**
+		 * Getter for the time (in microseconds since recording started) this was recorded.
+		 * @return
+		 */
+		public long getTime() {
+			return time;
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			StringBuilder s = new StringBuilder();
+			s.append(tick).append(" ").append(time).append("us ");
+			if (kind == SAMPLE) {
+				s.append(sensor == DISTANCE ? "distance" : "rgb");
+				for (float f: sample) {
+					s.append(" ").append(f);
+				}
+			} else if (kind == ACTION) {
+				s.append(agent).append(" does ").append(action);
+				if (mustbeprocessed) {
+					s.append(" (must be processed)");
+				}
+			} else {
+				s.append(robot).append(" ").append(command);
+				if (arg != 0) {
+					s.append(" ").append(arg);
+				}
+			}
+			return s.toString();
+		}
+	}
+	
+	/**
+	 * Reads the records of a trace in order.  The file is mapped into memory rather than read.
+	 * @author louiseadennis
+	 *
+	 */
+	public static class Reader {
+		private MappedByteBuffer in;
+		private ArrayList<String> strings = new ArrayList<String>();
+		private long started;
+		private long tick = 0;
+		private long time = 0;
+		
+		/**
+		 * Constructor.
+		 * @param file
+		 * @throws IOException if the file can't be read or is not a trace.
+		 */
+		Reader(String file) throws IOException {
+			FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+			try {
+				in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				channel.close();
+			}
+			if (in.remaining() < 14 || in.getInt() != MAGIC) {
+				throw new IOException(file + " is not a sensor trace");
+			}
+			short version = in.getShort();
+			if (version != VERSION) {
+				throw new IOException(file + " is version " + version + " of the sensor trace format, expected " + VERSION);
+			}
+			started = in.getLong();
+		}
+		
+		/**
+		 * When (in milliseconds since the epoch) recording started.
+		 * @return
+		 */
+		public long getStarted() {
+			return started;
+		}
+		
+		/**
+		 * The next record, or null at the end of the trace.  A record cut short because the
+		 * recording run died counts as the end of the trace.
+		 * @return
+		 */
+		public Record next() {
+			if (! in.hasRemaining()) {
+				return null;
+			}
+			try {
+				Record r = new Record();
+				r.kind = in.get();
+				tick += getVar();
+				time += getVar();
+				r.tick = tick;
+				r.time = time;
+				if (r.kind == SAMPLE) {
+					r.sensor = in.get();
+					r.sample = new float[in.get()];
+					for (int i = 0; i < r.sample.length; i++) {
+						r.sample[i] = in.getFloat();
+					}
+				} else if (r.kind == ACTION) {
+					r.agent = getString();
+					r.action = new Action(getString());
+					long n = getVar();
+					for (long i = 0; i < n; i++) {
+						if (in.get() == NUMBER) {
+							r.action.addTerm(new NumberTermImpl(in.getDouble()));
+						} else {
+							r.action.addTerm(new Literal(getString()));
+						}
+					}
+					r.mustbeprocessed = in.get() != 0;
+				} else if (r.kind == COMMAND) {
+					r.robot = getString();
+					r.command = getString();
+					int arg = (int) getVar();
+					r.arg = (arg >>> 1) ^ -(arg & 1);
+				} else {
+					System.err.println("Unknown record in sensor trace: " + r.kind);
+					return null;
+				}
+				return r;
+			} catch (BufferUnderflowException e) {
+				return null;
+			}
+		}
+		
+		/**
+		 * Read a number written by putVar.
+		 * @return
+		 */
+		private long getVar() {
+			long v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = in.get();
+				v |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return v;
+		}
+		
+		/**
+		 * Read a string written by putString.
+		 * @return
+		 */
+		private String getString() {
+			int ref = (int) getVar();
+			if (ref != 0) {
+				return strings.get(ref - 1);
+			}
+			byte[] bytes = new byte[(int) getVar()];
+			in.get(bytes);
+			String s = new String(bytes, StandardCharsets.UTF_8);
+			strings.add(s);
+			return s;
+		}
+	}
+	
+	/**
+	 * Print the trace in the file given as the argument.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		Reader reader = read(args[0]);
+		Record r = reader.next();
+		while (r != null) {
+			System.out.println(r);
+			r = reader.next();
+		}
+	}
+}
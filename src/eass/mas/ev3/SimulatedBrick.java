@@ -0,0 +1,436 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package eass.mas.ev3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lejos.robotics.SampleProvider;
+
+/**
+ * An in-process stand in for an EV3 brick driving a two wheeled robot around a table.
+ * The table is a rectangle with walls at its edges, and may have lines drawn on it,
+ * patches of water and round obstacles.  Wheel speeds are integrated over simulated
+ * time, which only passes when advance is called, so a simulation can run as fast as
+ * the machine allows and always produces the same samples for the same commands.
+ * 
+ * Distances are in centimetres, speeds in centimetres per second, times in milliseconds
+ * and angles in radians unless stated otherwise.  Like the EV3 ultrasonic sensor the
+ * distance samples are in metres.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class SimulatedBrick {
+	/**
+	 * The size of the table.
+	 */
+	double width = 240;
+	double height = 120;
+	
+	/**
+	 * Lines on the table as {x1, y1, x2, y2}.
+	 */
+	List<double[]> lines = new ArrayList<double[]>();
+	double linewidth = 2;
+	/**
+	 * Water patches and obstacles as {x, y, radius}.
+	 */
+	List<double[]> water = new ArrayList<double[]>();
+	List<double[]> obstacles = new ArrayList<double[]>();
+	
+	/**
+	 * The robot's position and heading.
+	 */
+	double x = 30;
+	double y = 60;
+	double heading = 0;
+	
+	/**
+	 * The robot's dimensions.
+	 */
+	double track = 12;
+	double radius = 7;
+	double wheeldiameter = 5.6;
+	/**
+	 * How far ahead of the robot's centre the sensors are.
+	 */
+	double sensoroffset = 6;
+	/**
+	 * The furthest the ultrasonic sensor can see.
+	 */
+	double range = 255;
+	
+	/**
+	 * Wheel speeds.
+	 */
+	double left = 0;
+	double right = 0;
+	/**
+	 * How much longer the wheels should turn for, or less than 0 if until told otherwise.
+	 */
+	long moving = -1;
+	
+	/**
+	 * Simulated time.
+	 */
+	long time = 0;
+	
+	/**
+	 * Half the angle of the ultrasonic sensor's beam.
+	 */
+	static final double BEAM = Math.toRadians(15);
+	
+	/**
+	 * The longest step taken when integrating motion.
+	 */
+	static final long STEP = 10;
+	
+	/**
+	 * Colour samples for the table, lines and water.
+	 */
+	static final float[] TABLE = {0.25f, 0.25f, 0.2f};
+	static final float[] LINE = {0.02f, 0.03f, 0.02f};
+	static final float[] WATER = {0.04f, 0.075f, 0.12f};
+	
+	/**
+	 * Create a brick on an empty table.
+	 */
+	public SimulatedBrick() {
+	}
+	
+	/**
+	 * Create a brick on the default table, which has a line round it, a patch of water
+	 * and two obstacles, one just in front of the robot.
+	 * @return
+	 */
+	public static SimulatedBrick defaultTable() {
+		SimulatedBrick brick = new SimulatedBrick();
+		brick.addLine(20, 100, 220, 100);
+		brick.addLine(220, 100, 220, 20);
+		brick.addLine(220, 20, 20, 20);
+		brick.addWater(160, 50, 15);
+		brick.addObstacle(60, 60, 8);
+		brick.addObstacle(200, 70, 10);
+		return brick;
+	}
+	
+	/**
+	 * Add a line to the table.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 */
+	public void addLine(double x1, double y1, double x2, double y2) {
+		lines.add(new double[] {x1, y1, x2, y2});
+	}
+	
+	/**
+	 * Add a patch of water to the table.
+	 * @param cx
+	 * @param cy
+	 * @param r
+	 */
+	public void addWater(double cx, double cy, double r) {
+		water.add(new double[] {cx, cy, r});
+	}
+	
+	/**
+	 * Add an obstacle to the table.
+	 * @param cx
+	 * @param cy
+	 * @param r
+	 */
+	public void addObstacle(double cx, double cy, double r) {
+		obstacles.add(new double[] {cx, cy, r});
+	}
+	
+	/**
+	 * Put the robot somewhere.
+	 * @param px
+	 * @param py
+	 * @param degrees the heading, anticlockwise from the x axis.
+	 */
+	public synchronized void setPose(double px, double py, double degrees) {
+		x = px;
+		y = py;
+		heading = Math.toRadians(degrees);
+	}
+	
+	/**
+	 * Turn the wheels at these speeds until told otherwise.
+	 * @param l
+	 * @param r
+	 */
+	public synchronized void drive(double l, double r) {
+		drive(l, r, -1);
+	}
+	
+	/**
+	 * Turn the wheels at these speeds for a while and then stop.
+	 * @param l
+	 * @param r
+	 * @param duration
+	 */
+	public synchronized void drive(double l, double r, long duration) {
+		left = l;
+		right = r;
+		moving = duration;
+	}
+	
+	/**
+	 * Stop both wheels.
+	 */
+	public synchronized void stop() {
+		drive(0, 0);
+	}
+	
+	/**
+	 * Convert a motor speed in degrees per second to the speed the wheel moves over the table.
+	 * @param degrees
+	 * @return
+	 */
+	public double wheelSpeed(double degrees) {
+		return degrees * Math.PI * wheeldiameter / 360;
+	}
+	
+	/**
+	 * Let some simulated time pass, moving the robot.  It can't drive through walls or obstacles
+	 * but slides along them.
+	 * @param ms
+	 */
+	public synchronized void advance(long ms) {
+		while (ms > 0) {
+			long dt = Math.min(ms, STEP);
+			if (moving >= 0 && moving < dt) {
+				dt = Math.max(moving, 1);
+			}
+			move(dt / 1000.0);
+			time += dt;
+			ms -= dt;
+			if (moving >= 0) {
+				moving -= dt;
+				if (moving <= 0) {
+					left = 0;
+					right = 0;
+					moving = -1;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Integrate the wheel speeds over dt seconds.
+	 * @param dt
+	 */
+	private void move(double dt) {
+		double v = (left + right) / 2;
+		double w = (right - left) / track;
+		double nx = x + v * Math.cos(heading) * dt;
+		double ny = y + v * Math.sin(heading) * dt;
+		heading += w * dt;
+		// If the way is blocked try sliding along whatever is in the way.
+		if (free(nx, ny)) {
+			x = nx;
+			y = ny;
+		} else if (free(x, ny)) {
+			y = ny;
+		} else if (free(nx, y)) {
+			x = nx;
+		}
+	}
+	
+	/**
+	 * Is there room for the robot at (px, py)?
+	 * @param px
+	 * @param py
+	 * @return
+	 */
+	private boolean free(double px, double py) {
+		if (px < radius || py < radius || px > width - radius || py > height - radius) {
+			return false;
+		}
+		for (double[] o: obstacles) {
+			if (Math.hypot(px - o[0], py - o[1]) < o[2] + radius) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * What the ultrasonic sensor would read, in metres.  Infinity if nothing is in range.
+	 * The sensor's beam is modelled as three rays, straight ahead and either side.
+	 * @return
+	 */
+	public synchronized float distance() {
+		double sx = x + sensoroffset * Math.cos(heading);
+		double sy = y + sensoroffset * Math.sin(heading);
+		double nearest = Double.POSITIVE_INFINITY;
+		for (int i = -1; i <= 1; i++) {
+			nearest = Math.min(nearest, ray(sx, sy, heading + i * BEAM));
+		}
+		
+		if (nearest > range) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return (float) (Math.max(nearest, 0) / 100);
+	}
+	
+	/**
+	 * How far a ray from (sx, sy) in direction angle travels before hitting a wall or obstacle.
+	 * @param sx
+	 * @param sy
+	 * @param angle
+	 * @return
+	 */
+	private double ray(double sx, double sy, double angle) {
+		double dx = Math.cos(angle);
+		double dy = Math.sin(angle);
+		double nearest = Double.POSITIVE_INFINITY;
+		
+		// The walls.
+		if (dx > 0) {
+			nearest = Math.min(nearest, (width - sx) / dx);
+		} else if (dx < 0) {
+			nearest = Math.min(nearest, -sx / dx);
+		}
+		if (dy > 0) {
+			nearest = Math.min(nearest, (height - sy) / dy);
+		} else if (dy < 0) {
+			nearest = Math.min(nearest, -sy / dy);
+		}
+		
+		// The obstacles.
+		for (double[] o: obstacles) {
+			double ox = o[0] - sx;
+			double oy = o[1] - sy;
+			double along = ox * dx + oy * dy;
+			double across = ox * ox + oy * oy - along * along;
+			double r2 = o[2] * o[2];
+			if (across <= r2) {
+				double t = along - Math.sqrt(r2 - across);
+				if (t >= 0) {
+					nearest = Math.min(nearest, t);
+				}
+			}
+		}
+		return nearest;
+	}
+	
+	/**
+	 * What the colour sensor would read as {red, green, blue}.
+	 * @return
+	 */
+	public synchronized float[] colour() {
+		double sx = x + sensoroffset * Math.cos(heading);
+		double sy = y + sensoroffset * Math.sin(heading);
+		for (double[] l: lines) {
+			if (toSegment(sx, sy, l) <= linewidth / 2) {
+				return LINE.clone();
+			}
+		}
+		for (double[] p: water) {
+			if (Math.hypot(sx - p[0], sy - p[1]) <= p[2]) {
+				return WATER.clone();
+			}
+		}
+		return TABLE.clone();
+	}
+	
+	/**
+	 * The distance from a point to a line segment.
+	 * @param px
+	 * @param py
+	 * @param l
+	 * @return
+	 */
+	private static double toSegment(double px, double py, double[] l) {
+		double dx = l[2] - l[0];
+		double dy = l[3] - l[1];
+		double len2 = dx * dx + dy * dy;
+		double t = 0;
+		if (len2 > 0) {
+			t = Math.max(0, Math.min(1, ((px - l[0]) * dx + (py - l[1]) * dy) / len2));
+		}
+		return Math.hypot(px - (l[0] + t * dx), py - (l[1] + t * dy));
+	}
+	
+	/**
+	 * A sample provider for the ultrasonic sensor.
+	 * @return
+	 */
+	public SampleProvider ultrasonic() {
+		return new SampleProvider() {
+			public int sampleSize() {
+				return 1;
+			}
+			
+			public void fetchSample(float[] sample, int offset) {
+				sample[offset] = distance();
+			}
+		};
+	}
+	
+	/**
+	 * A sample provider for the colour sensor in RGB mode.
+	 * @return
+	 */
+	public SampleProvider rgb() {
+		return new SampleProvider() {
+			public int sampleSize() {
+				return 3;
+			}
+			
+			public void fetchSample(float[] sample, int offset) {
+				System.arraycopy(colour(), 0, sample, offset, 3);
+			}
+		};
+	}
+	
+	/**
+	 * Simulated time so far.
+	 * @return
+	 */
+	public synchronized long getTime() {
+		return time;
+	}
+	
+	/**
+	 * The robot's position and heading (in degrees).
+	 * @return
+	 */
+	public synchronized double[] getPose() {
+		return new double[] {x, y, Math.toDegrees(heading)};
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return "robot at (" + Math.round(x) + ", " + Math.round(y) + ") heading " + Math.round(Math.toDegrees(heading)) + " at " + time + "ms";
+	}
+}
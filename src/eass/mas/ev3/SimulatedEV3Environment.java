@@ -0,0 +1,186 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package eass.mas.ev3;
+
+import ail.mas.RoundRobinScheduler;
+import ail.syntax.Action;
+import ail.syntax.Literal;
+import ail.syntax.Unifier;
+import ail.util.AILConfig;
+import ail.util.AILexception;
+
+/**
+ * An EV3 environment in which each robot is a SimulatedRobot on the default table, so that
+ * EASS programs for the Dinor3x can be run without any hardware.  Each run of the environment
+ * moves simulated time on by a fixed tick however long it actually took, so simulations run
+ * faster than real time.
+ * 
+ * Configuration:
+ *   ev3.sim.tick - simulated milliseconds per run of the environment (default 50).
+ *   ev3.sim.duration - simulated milliseconds after which the environment is done (default never).
+ *   ev3.sim.pose - the starting "x y heading" of each robot.
+ *   ev3.sim.rule1 ... ev3.sim.rule4 - "context act1 act2 act3" to activate one of the rules
+ *     the Dinor3x reasoning engine can be given from its user interface.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class SimulatedEV3Environment extends EASSEV3Environment {
+	long tick = 50;
+	long duration = -1;
+	double[] pose;
+	String[] rules = new String[4];
+	
+	/**
+	 * Constructor.
+	 */
+	public SimulatedEV3Environment() {
+		super();
+		scheduler_setup(this, new RoundRobinScheduler());
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSEV3Environment#configure(ail.util.AILConfig)
+	 */
+	@Override
+	public void configure(AILConfig config) {
+		super.configure(config);
+		if (config.containsKey("ev3.sim.tick")) {
+			tick = Long.parseLong(config.getProperty("ev3.sim.tick"));
+		}
+		if (config.containsKey("ev3.sim.duration")) {
+			duration = Long.parseLong(config.getProperty("ev3.sim.duration"));
+		}
+		if (config.containsKey("ev3.sim.pose")) {
+			String[] p = config.getProperty("ev3.sim.pose").trim().split("\\s+");
+			pose = new double[] {Double.parseDouble(p[0]), Double.parseDouble(p[1]), Double.parseDouble(p[2])};
+		}
+		for (int i = 0; i < rules.length; i++) {
+			String key = "ev3.sim.rule" + (i + 1);
+			if (config.containsKey(key)) {
+				rules[i] = config.getProperty(key);
+			}
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSEV3Environment#createRobot(java.lang.String)
+	 */
+	@Override
+	public LegoRobot createRobot(String agent) {
+		SimulatedBrick brick = SimulatedBrick.defaultTable();
+		if (pose != null) {
+			brick.setPose(pose[0], pose[1], pose[2]);
+		}
+		for (int i = 0; i < rules.length; i++) {
+			if (rules[i] != null) {
+				addRule(agent, "rule" + (i + 1), rules[i].trim().split("\\s+"));
+			}
+		}
+		return new SimulatedRobot(brick);
+	}
+	
+	/**
+	 * Give the reasoning engine the shared beliefs that activate a rule, as the Dinor3x user interface does.
+	 * @param agent
+	 * @param rule
+	 * @param spec the context followed by up to three actions.
+	 */
+	private void addRule(String agent, String rule, String[] spec) {
+		Literal active = new Literal("active");
+		active.addTerm(new Literal(rule));
+		addSharedBelief(agent, active);
+		Literal context = new Literal("context");
+		context.addTerm(new Literal(rule));
+		context.addTerm(new Literal(spec[0]));
+		addSharedBelief(agent, context);
+		for (int i = 1; i <= 3; i++) {
+			Literal r = new Literal("rule");
+			r.addTerm(new Literal(rule));
+			r.addTerm(new Literal("act" + i));
+			r.addTerm(new Literal(i < spec.length ? spec[i] : "do_nothing"));
+			addSharedBelief(agent, r);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSEV3Environment#eachrun()
+	 */
+	@Override
+	public void eachrun() {
+		for (LegoRobot r: robots.values()) {
+			if (r instanceof SimulatedRobot) {
+				synchronized(r) {
+					SimulatedRobot robot = (SimulatedRobot) r;
+					robot.advance(tick);
+					if (duration >= 0 && robot.getSimulation().getTime() >= duration) {
+						robot.stop();
+						setDone(true);
+					}
+				}
+			}
+		}
+		super.eachrun();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see eass.mas.ev3.EASSEV3Environment#executeAction(java.lang.String, ail.syntax.Action)
+	 */
+	@Override
+	public Unifier executeAction(String agName, Action act) throws AILexception {
+		LegoRobot r = getRobot(rationalName(agName));
+		if (r instanceof SimulatedRobot) {
+			SimulatedRobot robot = (SimulatedRobot) r;
+			String f = act.getFunctor();
+			synchronized(robot) {
+				if (f.equals("forward")) {
+					robot.forward();
+				} else if (f.equals("forward_a_bit")) {
+					robot.short_forward();
+				} else if (f.equals("backward")) {
+					robot.backward();
+				} else if (f.equals("backward_a_bit")) {
+					robot.short_backward();
+				} else if (f.equals("stop")) {
+					robot.stop();
+				} else if (f.equals("left")) {
+					robot.left();
+				} else if (f.equals("left_a_bit")) {
+					robot.short_left();
+				} else if (f.equals("right")) {
+					robot.right();
+				} else if (f.equals("right_a_bit")) {
+					robot.short_right();
+				} else if (f.equals("scare")) {
+					robot.scare();
+				}
+			}
+		}
+		return super.executeAction(agName, act);
+	}
+}
@@ -0,0 +1,201 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+package eass.mas.ev3;
+
+/**
+ * A robot shaped like the Dinor3x (wheeled, with an ultrasonic sensor on port 2 and
+ * a colour sensor on port 3) driven by a SimulatedBrick rather than a real EV3.  The 
+ * motion commands mirror those of the Dinor3x with the same speeds.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class SimulatedRobot extends BasicRobot {
+	SimulatedBrick simulation;
+	
+	int ultra_port = 2;
+	int color_port = 3;
+	
+	/**
+	 * Motor speeds in degrees per second, except travel_speed which is in centimetres per second.
+	 */
+	int slow_turn = 35;
+	int fast_turn = 40;
+	int travel_speed = 10;
+	
+	/**
+	 * Constructor.
+	 * @param brick
+	 */
+	public SimulatedRobot(SimulatedBrick brick) {
+		super();
+		simulation = brick;
+		setSensor(ultra_port, new EASSUltrasonicSensor(brick.ultrasonic()));
+		setSensor(color_port, new EASSRGBColorSensor(brick.rgb()));
+	}
+	
+	/**
+	 * Get the simulation driving this robot.
+	 * @return
+	 */
+	public SimulatedBrick getSimulation() {
+		return simulation;
+	}
+	
+	/**
+	 * Let simulated time pass.
+	 * @param ms
+	 */
+	public void advance(long ms) {
+		simulation.advance(ms);
+	}
+	
+	/**
+	 * Move forward.
+	 */
+	public void forward() {
+		record("forward");
+		simulation.drive(travel_speed, travel_speed);
+	}
+	
+	/**
+	 * Move forward a short distance.
+	 */
+	public void short_forward() {
+		record("short_forward");
+		simulation.drive(travel_speed, travel_speed, 10 * 1000 / travel_speed);
+	}
+	
+	/**
+	 * Move backward.
+	 */
+	public void backward() {
+		record("backward");
+		simulation.drive(-travel_speed, -travel_speed);
+	}
+	
+	/**
+	 * Move backward a short distance.
+	 */
+	public void short_backward() {
+		record("short_backward");
+		simulation.drive(-travel_speed, -travel_speed, 10 * 1000 / travel_speed);
+	}
+	
+	/**
+	 * Stop.
+	 */
+	public void stop() {
+		record("stop");
+		simulation.stop();
+	}
+	
+	/**
+	 * Turn left on the spot.
+	 */
+	public void left() {
+		record("left");
+		double v = simulation.wheelSpeed(fast_turn);
+		simulation.drive(-v, v);
+	}
+	
+	/**
+	 * Turn left through 90 degrees.
+	 */
+	public void short_left() {
+		record("short_left");
+		double v = simulation.wheelSpeed(fast_turn);
+		simulation.drive(-v, v, quarterTurn(v));
+	}
+	
+	/**
+	 * Move left around the stopped left wheel.
+	 */
+	public void forward_left() {
+		record("forward_left");
+		simulation.drive(0, simulation.wheelSpeed(slow_turn));
+	}
+	
+	/**
+	 * Turn right on the spot.
+	 */
+	public void right() {
+		record("right");
+		double v = simulation.wheelSpeed(fast_turn);
+		simulation.drive(v, -v);
+	}
+	
+	/**
+	 * Turn right through 90 degrees.
+	 */
+	public void short_right() {
+		record("short_right");
+		double v = simulation.wheelSpeed(fast_turn);
+		simulation.drive(v, -v, quarterTurn(v));
+	}
+	
+	/**
+	 * Move right around the stopped right wheel.
+	 */
+	public void forward_right() {
+		record("forward_right");
+		simulation.drive(simulation.wheelSpeed(slow_turn), 0);
+	}
+	
+	/**
+	 * Rotate the right wheel through d degrees.
+	 * @param d
+	 */
+	public void turn(int d) {
+		record("turn", d);
+		double v = simulation.wheelSpeed(fast_turn);
+		double distance = simulation.wheelSpeed(d);
+		simulation.drive(0, Math.signum(distance) * v, Math.round(Math.abs(distance) / v * 1000));
+	}
+	
+	/**
+	 * Snap jaws.  This doesn't move the robot.
+	 */
+	public void scare() {
+		record("scare");
+	}
+	
+	/**
+	 * How long turning on the spot with wheel speed v takes to turn 90 degrees.
+	 * @param v
+	 * @return
+	 */
+	private long quarterTurn(double v) {
+		double w = 2 * v / simulation.track;
+		return Math.round(Math.PI / 2 / w * 1000);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return simulation.toString();
+	}
+}
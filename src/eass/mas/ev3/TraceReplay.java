@@ -0,0 +1,231 @@
+// ----------------------------------------------------------------------------
+// Copyright (C) 2015 Strategic Facilities Technology Council 
+//
+// This file is part of the Engineering Autonomous Space Software (EASS) Library.
+// 
+// The EASS Library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 3 of the License, or (at your option) any later version.
+// 
+// The EASS Library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+// Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with the EASS Library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+// 
+// To contact the authors:
+// http://www.csc.liv.ac.uk/~lad
+//
+//----------------------------------------------------------------------------
+
+package eass.mas.ev3;
+
+import ail.util.AILexception;
+import ajpf.util.AJPFLogger;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Plays a SensorTrace back into an EV3 environment in place of its robots' sensors.
+ * Samples are turned into percepts by the same sensor classes that made them and actions
+ * from the user interface are passed to the environment's executeAction when they were
+ * originally given, so an environment which interprets those actions does so on replay.
+ * 
+ * Motor commands are not fed in, since the agents decide them afresh, but robots being
+ * replayed report the commands they are given and these are compared, robot by robot and
+ * in order, with those in the trace.  Differences are logged as they are found and a
+ * summary is printed when the trace runs out.
+ * 
+ * Replaying at the original speed feeds each record in once as much time has passed as had
+ * when it was recorded.  Replaying fast feeds in, on each run of the environment, everything
+ * recorded on the next run of the recording environment that recorded anything, so it takes
+ * no account of time and, with the round robin scheduler, repeats exactly.
+ * 
+ * @author louiseadennis
+ *
+ */
+public class TraceReplay {
+	private static String logname = "eass.mas.ev3.TraceReplay";
+	// How many differences in motor commands to log.
+	private static int maxdifferences = 10;
+	
+	SensorTrace.Reader trace;
+	boolean fast;
+	// The next record to feed in.
+	SensorTrace.Record next;
+	// When (System.nanoTime) replay started, and the run of the recording environment reached.
+	long start = -1;
+	long tick = 0;
+	int replayed = 0;
+	boolean reported = false;
+	
+	// A second pass over the trace for the motor commands, read as far as comparisons need.
+	SensorTrace.Reader commands;
+	HashMap<String, LinkedList<SensorTrace.Record>> expected = new HashMap<String, LinkedList<SensorTrace.Record>>();
+	int matched = 0;
+	int differed = 0;
+	int extra = 0;
+	
+	// Sensors to turn the samples into percepts.  They are never asked for samples themselves.
+	EASSUltrasonicSensor ultrasonic = new EASSUltrasonicSensor(new FakeSampleProvider(0));
+	EASSRGBColorSensor rgb = new EASSRGBColorSensor(new FakeSampleProvider(0, 0, 0));
+	
+	/**
+	 * Constructor.
+	 * @param file the trace.
+	 * @param fast whether to replay as fast as possible rather than at the original speed.
+	 * @throws IOException
+	 */
+	public TraceReplay(String file, boolean fast) throws IOException {
+		trace = SensorTrace.read(file);
+		commands = SensorTrace.read(file);
+		this.fast = fast;
+		next = trace.next();
+	}
+	
+	/**
+	 * Feed everything that is now due into env.  Called on each run of the environment.
+	 * @param env
+	 * @return false once the trace has run out.
+	 */
+	public boolean feed(EASSEV3Environment env) {
+		if (start < 0) {
+			start = System.nanoTime();
+		}
+		if (next != null) {
+			if (fast) {
+				tick = Math.max(tick, next.getTick());
+				while (next != null && next.getTick() <= tick) {
+					feed(env, next);
+					next = trace.next();
+				}
+				tick++;
+			} else {
+				long now = (System.nanoTime() - start) / 1000;
+				while (next != null && next.getTime() <= now) {
+					feed(env, next);
+					next = trace.next();
+				}
+			}
+		}
+		return next != null;
+	}
+	
+	/**
+	 * Feed one record of the trace into env.
+	 * @param env
+	 * @param r
+	 */
+	private void feed(EASSEV3Environment env, SensorTrace.Record r) {
+		replayed++;
+		if (r.kind == SensorTrace.SAMPLE) {
+			if (r.sensor == SensorTrace.DISTANCE) {
+				ultrasonic.addPercept(env, r.sample);
+			} else if (r.sensor == SensorTrace.RGB) {
+				rgb.addPercept(env, r.sample);
+			}
+		} else if (r.kind == SensorTrace.ACTION) {
+			try {
+				env.executeAction(r.agent, r.action);
+			} catch (AILexception e) {
+				System.err.println(e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Compare a motor command given to a robot during replay with the next one given to it
+	 * in the trace.
+	 * @param robot
+	 * @param command
+	 * @param arg
+	 */
+	public synchronized void command(String robot, String command, int arg) {
+		SensorTrace.Record r = nextCommand(robot);
+		if (r == null) {
+			extra++;
+			difference(robot + " was given " + show(command, arg) + " after all its recorded commands");
+		} else if (r.command.equals(command) && r.arg == arg) {
+			matched++;
+		} else {
+			differed++;
+			difference(robot + " was given " + show(command, arg) + " where " + show(r.command, r.arg) + " was recorded at " + r.getTime() + "us");
+		}
+	}
+	
+	/**
+	 * Print how the replay went.  Only the first call does anything.
+	 */
+	public synchronized void report() {
+		if (! reported) {
+			reported = true;
+			int missing = 0;
+			for (LinkedList<SensorTrace.Record> rs: expected.values()) {
+				missing += rs.size();
+			}
+			SensorTrace.Record r = commands.next();
+			while (r != null) {
+				if (r.kind == SensorTrace.COMMAND) {
+					missing++;
+				}
+				r = commands.next();
+			}
+			System.err.println("Replayed " + replayed + " records in " + (System.nanoTime() - start) / 1000000 + "ms");
+			System.err.println("   Motor commands: matched " + matched + ", differed " + differed + ", extra " + extra + ", missing " + missing);
+		}
+	}
+	
+	/**
+	 * The next motor command recorded for robot, reading on through the trace as needed.
+	 * @param robot
+	 * @return null if there are no more.
+	 */
+	private SensorTrace.Record nextCommand(String robot) {
+		LinkedList<SensorTrace.Record> rs = expected.get(robot);
+		if (rs != null && ! rs.isEmpty()) {
+			return rs.poll();
+		}
+		SensorTrace.Record r = commands.next();
+		while (r != null) {
+			if (r.kind == SensorTrace.COMMAND) {
+				if (r.robot.equals(robot)) {
+					return r;
+				}
+				LinkedList<SensorTrace.Record> others = expected.get(r.robot);
+				if (others == null) {
+					others = new LinkedList<SensorTrace.Record>();
+					expected.put(r.robot, others);
+				}
+				others.add(r);
+			}
+			r = commands.next();
+		}
+		return null;
+	}
+	
+	/**
+	 * Log one of the first few differences.
+	 * @param s
+	 */
+	private void difference(String s) {
+		if (differed + extra <= maxdifferences) {
+			AJPFLogger.warning(logname, s);
+		}
+	}
+	
+	/**
+	 * A command as it would be printed from the trace.
+	 * @param command
+	 * @param arg
+	 * @return
+	 */
+	private static String show(String command, int arg) {
+		return arg == 0 ? command : command + " " + arg;
+	}
+}
@@ -55,6 +55,12 @@ public class Abstract_EASSAgent extends Abstract_Agent {
 	
 	Abstract_Capability[] caps = new Abstract_Capability[0];
 
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_EASSAgent() {
+	}
+	
 	/**
 	 * Construct a Gwendolen agent from an architecture and a name.
 	 * 
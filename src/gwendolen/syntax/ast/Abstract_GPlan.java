@@ -40,6 +40,12 @@ import ail.syntax.ast.Abstract_Plan;
  */
 public class Abstract_GPlan extends Abstract_Plan { 
 	
+	/**
+	 * Constructor.  All the fields are set afterwards, e.g. when loading an image.
+	 */
+	public Abstract_GPlan() {
+	}
+	
 	/**
 	 * Construct a plan from an event, a guard and a stack of deeds.
 	 * @param e